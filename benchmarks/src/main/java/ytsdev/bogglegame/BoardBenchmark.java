@@ -0,0 +1,128 @@
+package ytsdev.bogglegame;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BoardBenchmark class. Measures the board operations a client and the server use every round: finding a word on
+ * the board, checking a whole submission of words at once, shaking a new board, rotating it and writing it out.
+ * Run from the directory with BoggleWords.dawg and cubes.txt, like the server.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+    //a board with a Q, so there are words with "qu" to find
+    private static final String LETTERS = "QEATRSNILODPCEMU";
+
+    private BoggleBoard board;
+    private BoggleBoard cubes;
+    private SplittableRandom random;
+
+    private String hit;
+    private String quHit;
+    private String miss;
+    private List<String> submission;
+
+    @Setup
+    public void setUp() throws IOException {
+        BoggleDictionary dictionary = BoggleDictionary.map("BoggleWords.dawg");
+        board = new BoggleBoard();
+        board.setBoard(LETTERS);
+        cubes = new BoggleBoard("cubes.txt");
+        random = new SplittableRandom(42);
+
+        //the longest words make the search go deepest
+        for (FoundWord word : board.solveAll(dictionary)) {
+            String found = word.getWord();
+            if (found.contains("qu")) {
+                if (quHit == null || found.length() > quHit.length()) {
+                    quHit = found;
+                }
+            } else if (hit == null || found.length() > hit.length()) {
+                hit = found;
+            }
+        }
+        if (hit == null || quHit == null) {
+            throw new IllegalStateException("The dictionary has too few words on " + LETTERS);
+        }
+        miss = "straint"; //starts like words on the board, but can't be finished
+
+        //every word on the board, and as many that aren't, like a player who tries everything
+        submission = new ArrayList<>();
+        for (FoundWord word : board.solveAll(dictionary)) {
+            submission.add(word.getWord());
+            submission.add(word.getWord() + "s");
+        }
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return board.contains(hit);
+    }
+
+    @Benchmark
+    public boolean containsQuHit() {
+        return board.contains(quHit);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return board.contains(miss);
+    }
+
+    @Benchmark
+    public int containsEach() {
+        int found = 0;
+        for (String word : submission) {
+            if (board.contains(word)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<String> containsAll() {
+        return board.containsAll(submission);
+    }
+
+    @Benchmark
+    public String newBoard() {
+        cubes.newBoard(random);
+        return cubes.getBoardString();
+    }
+
+    @Benchmark
+    public BoggleBoard rotateLeft() {
+        board.rotateLeft();
+        return board;
+    }
+
+    @Benchmark
+    public BoggleBoard rotateRight() {
+        board.rotateRight();
+        return board;
+    }
+
+    @Benchmark
+    public String getBoardString() {
+        return board.getBoardString();
+    }
+
+    @Benchmark
+    public String getCanonicalString() {
+        return board.getCanonicalString();
+    }
+}
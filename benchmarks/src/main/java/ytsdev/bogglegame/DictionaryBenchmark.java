@@ -0,0 +1,65 @@
+package ytsdev.bogglegame;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DictionaryBenchmark class. Measures looking words up in the mapped dictionary, which is what the client does
+ * for every word the player types (Game.inDictionary).
+ * Run from the directory with BoggleWords.dawg, like the client.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryBenchmark {
+    private static final int WORDS = 1024; //a power of two
+
+    private BoggleDictionary dictionary;
+    private String[] hits;
+    private String[] misses;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dictionary = BoggleDictionary.map("BoggleWords.dawg");
+
+        //words from boards, which is what players type
+        List<String> found = new ArrayList<>();
+        BoggleBoard board = new BoggleBoard("cubes.txt");
+        while (found.size() < WORDS) {
+            board.newBoard();
+            for (FoundWord word : board.solveAll(dictionary)) {
+                found.add(word.getWord());
+            }
+        }
+
+        hits = new String[WORDS];
+        misses = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            hits[i] = found.get(i);
+            misses[i] = found.get(i) + "xq"; //the start of a word, but not a word
+        }
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        next = (next + 1) & (WORDS - 1);
+        return dictionary.contains(hits[next]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        next = (next + 1) & (WORDS - 1);
+        return dictionary.contains(misses[next]);
+    }
+}
@@ -0,0 +1,57 @@
+package ytsdev.bogglegame;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SolveBenchmark class. Measures finding every word on a board, which the server does for each new board,
+ * for the standard board and the larger ones.
+ * Run from the directory with BoggleWords.dawg, like the server.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark {
+    private static final int BOARDS = 64; //a power of two
+    //how often each letter comes up on the standard cubes, out of 96 sides
+    private static final String LETTERS = "AAAAAABBCCDDDEEEEEEEEEEEFFGGHHHHHIIIIIIJKLLLLMMNNNNNNOOOOOOOPPQRRRRRSSSSSSTTTTTTTTTUUUVVWWWXYYYZ";
+
+    @Param({"4", "5", "6"})
+    private int size;
+
+    private BoggleDictionary dictionary;
+    private BoggleBoard[] boards;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dictionary = BoggleDictionary.map("BoggleWords.dawg");
+
+        SplittableRandom random = new SplittableRandom(42);
+        boards = new BoggleBoard[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            char[] letters = new char[size * size];
+            for (int j = 0; j < letters.length; j++) {
+                letters[j] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+            }
+            boards[i] = new BoggleBoard(size);
+            boards[i].setBoard(new String(letters));
+        }
+    }
+
+    @Benchmark
+    public List<FoundWord> solveAll() {
+        next = (next + 1) & (BOARDS - 1);
+        return boards[next].solveAll(dictionary);
+    }
+}
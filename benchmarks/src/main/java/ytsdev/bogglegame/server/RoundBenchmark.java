@@ -0,0 +1,147 @@
+package ytsdev.bogglegame.server;
+
+import org.openjdk.jmh.annotations.*;
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RoundBenchmark class. Measures the server's side of a whole round for rooms from 2 to 1,000 players: reading
+ * every player's words, taking the words more than one player found, adding up the points, sending everyone the
+ * standings, and handing the round to the score store and the round journal. The players are text clients whose
+ * connections throw away what is sent, so only the game is measured.
+ * Run from the directory with BoggleWords.dawg and cubes.txt, like the server.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundBenchmark {
+    private static final String LETTERS = "SERSPATGLINESERS"; //a board with plenty of words
+    private static final int WORDS_EACH = 20;
+
+    @Param({"2", "10", "100", "1000"})
+    private int players;
+
+    private EventLoop loop;
+    private ScoreStore scores;
+    private RoundJournal journal;
+    private File scoresDir;
+    private Connection.Handler[] clients;
+    private String[] submissions; //each player's words, as the text protocol sends them
+
+    /**
+     * A connection that sends nothing anywhere
+     */
+    private static class QuietConnection extends Connection {
+        private Connection.Handler handler;
+
+        QuietConnection() {
+            super(null);
+        }
+
+        @Override
+        void setHandler(Handler handler) {
+            super.setHandler(handler);
+            this.handler = handler;
+        }
+
+        @Override
+        void send(String message) {
+        }
+
+        @Override
+        void finish() {
+        }
+    }
+
+    /**
+     * A supply that always has the same board ready
+     */
+    private static class SameBoard extends BoardSupply {
+        private final Board board;
+
+        SameBoard(SolutionCache solutions) throws IOException {
+            super(solutions, BoggleBoard.STANDARD_SIZE, 1, 0, 0);
+            BoggleBoard letters = new BoggleBoard();
+            letters.setBoard(LETTERS);
+            board = new Board(letters.getSize(), LETTERS, solutions.solve(letters));
+        }
+
+        @Override
+        public Board take() {
+            return board;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        BoggleDictionary dictionary = BoggleDictionary.map("BoggleWords.dawg");
+        SameBoard boards = new SameBoard(new SolutionCache(dictionary, 16));
+        List<String> words = new ArrayList<>(boards.take().getWords());
+
+        //each player finds some of the words, so the bigger the room the more they have in common
+        SplittableRandom random = new SplittableRandom(42);
+        submissions = new String[players];
+        for (int i = 0; i < players; i++) {
+            StringBuilder line = new StringBuilder().append(WORDS_EACH);
+            for (int j = 0; j < WORDS_EACH; j++) {
+                line.append(' ').append(words.get(random.nextInt(words.size())));
+            }
+            submissions[i] = line.toString();
+        }
+
+        loop = new EventLoop(); //never run, only holds the game's deadlines
+        QuietConnection[] connections = new QuietConnection[players];
+        for (int i = 0; i < players; i++) {
+            connections[i] = new QuietConnection();
+        }
+        scoresDir = Files.createTempDirectory("scores").toFile();
+        scores = ScoreStore.open(new File(scoresDir, "scores").getPath());
+        journal = new RoundJournal(new File(scoresDir, "rounds.journal").getPath(), RoundJournal.Sync.NONE);
+        new BoggleThread(loop, connections, boards, scores, journal, new ConcurrentSkipListMap<Long, BoggleThread>());
+
+        clients = new Connection.Handler[players];
+        for (int i = 0; i < players; i++) {
+            clients[i] = connections[i].handler;
+            clients[i].onLine("player" + i); //the first round starts once everyone has a name
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scores.close();
+        journal.close();
+        for (File file : scoresDir.listFiles()) {
+            file.delete();
+        }
+        scoresDir.delete();
+    }
+
+    /**
+     * Plays one round: everyone sends their words, which ends the round, and everyone asks for another
+     */
+    @Benchmark
+    public void round() {
+        for (int i = 0; i < players; i++) {
+            clients[i].onLine(submissions[i]);
+        }
+        for (int i = 0; i < players; i++) {
+            clients[i].onLine("AGAIN");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ytsdev.bogglegame;
+
+/**
+ * The BoardGrid class. Holds the tables for a square board that never change: which positions touch each other and
+ * where each position moves when the board is rotated or flipped. Positions are numbered row by row, as row * size + column.
+ * The tables for each size are made once and shared by every board of that size.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class BoardGrid {
+    static final int MAX_SIZE = 8; //a path is tracked with one bit per position in a long
+
+    private static final BoardGrid[] GRIDS = new BoardGrid[MAX_SIZE + 1];
+
+    static {
+        for (int size = 1; size <= MAX_SIZE; size++) {
+            GRIDS[size] = new BoardGrid(size);
+        }
+    }
+
+    final int size;
+    final int cells;
+
+    final int[][] neighbours; //the positions touching each position
+    final int[] rotateRight; //the position each new position is taken from when rotating clockwise
+    final int[] rotateLeft; //the position each new position is taken from when rotating counter-clockwise
+    final int[][] symmetries; //the same, for each of the 8 ways to rotate or flip the board, starting with unchanged
+
+    /**
+     * Creates the tables for a board of the given size
+     *
+     * @param size the number of rows and columns
+     */
+    private BoardGrid(int size) {
+        this.size = size;
+        this.cells = size * size;
+
+        neighbours = new int[cells][];
+        rotateRight = new int[cells];
+        rotateLeft = new int[cells];
+        symmetries = new int[8][cells];
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int cell = (row * size) + col;
+
+                //count the surrounding positions that are on the board
+                int count = 0;
+                for (int i = row - 1; i <= row + 1; i++) {
+                    for (int j = col - 1; j <= col + 1; j++) {
+                        if (onBoard(i, j) && !(i == row && j == col)) {
+                            count++;
+                        }
+                    }
+                }
+
+                neighbours[cell] = new int[count];
+                count = 0;
+                for (int i = row - 1; i <= row + 1; i++) {
+                    for (int j = col - 1; j <= col + 1; j++) {
+                        if (onBoard(i, j) && !(i == row && j == col)) {
+                            neighbours[cell][count++] = (i * size) + j;
+                        }
+                    }
+                }
+
+                //the columns from right to left become the rows when rotating clockwise, and the reverse for counter-clockwise
+                rotateRight[cell] = ((size - 1 - col) * size) + row;
+                rotateLeft[cell] = (col * size) + (size - 1 - row);
+
+                //every rotation, and every rotation of the mirror image
+                int last = size - 1;
+                symmetries[0][cell] = cell;
+                symmetries[1][cell] = rotateRight[cell];
+                symmetries[2][cell] = ((last - row) * size) + (last - col);
+                symmetries[3][cell] = rotateLeft[cell];
+                symmetries[4][cell] = (row * size) + (last - col);
+                symmetries[5][cell] = (col * size) + row;
+                symmetries[6][cell] = ((last - row) * size) + col;
+                symmetries[7][cell] = ((last - col) * size) + (last - row);
+            }
+        }
+    }
+
+    /**
+     * Gets the tables for a board of the given size
+     *
+     * @param size the number of rows and columns
+     * @return the tables
+     */
+    static BoardGrid of(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be from 1 to " + MAX_SIZE + ": " + size);
+        }
+        return GRIDS[size];
+    }
+
+    /**
+     * Gets the tables for a board with the given number of positions
+     *
+     * @param cells the number of positions on the board
+     * @return the tables
+     */
+    static BoardGrid ofCells(int cells) {
+        int size = (int) Math.round(Math.sqrt(cells));
+        if (size * size != cells) {
+            throw new IllegalArgumentException("A board must be square: " + cells);
+        }
+        return of(size);
+    }
+
+    /**
+     * Determines whether a row and column are on the board
+     *
+     * @param row the row
+     * @param col the column
+     * @return true if the position is on the board
+     */
+    private boolean onBoard(int row, int col) {
+        return row >= 0 && col >= 0 && row < size && col < size;
+    }
+}
@@ -0,0 +1,229 @@
+package ytsdev.bogglegame;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves many boards at once for studying how boards come out, using every processor. The boards are either read from
+ * a file, one board string per line of any size, or shaken from the cubes. Lines in the file that aren't a square
+ * board of letters are reported and skipped. Each board's number of words, the points for finding all of them, and
+ * its longest word are written out as the boards are solved, and the number of boards solved a second is reported at
+ * the end. All the threads share the one dictionary.
+ * <p>
+ * The results are CSV with a header line, or binary when the output file doesn't end in .csv: for each board its size
+ * as a byte, its letters, the number of words and the points as ints, and the longest word as a length byte and
+ * UTF-8, as in {@link BoggleProtocol}.
+ * <p>
+ * Usage: BoggleBatchSolver [boards file | -generate count] [output file] [board size] [cubes file]
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleBatchSolver {
+    private static final int CHUNK = 16384; //boards solved between writes
+    private static final int LEAF = 64; //boards solved by one task without splitting it further
+
+    /**
+     * A chunk of boards and their results, in the order they are written
+     */
+    private static class Chunk {
+        final String[] boards = new String[CHUNK];
+        final int[] words = new int[CHUNK];
+        final int[] points = new int[CHUNK];
+        final String[] longest = new String[CHUNK];
+        int count;
+    }
+
+    /**
+     * Solves part of a chunk, splitting it in half until the parts are small enough
+     */
+    private static class SolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; //never serialized, a RecursiveAction only to be forked
+
+        private final Chunk chunk;
+        private final int start;
+        private final int end;
+        private final BoggleDictionary dictionary;
+        private final BoggleBoard cubes; //null when the boards are read instead of shaken
+        private final SplittableRandom random;
+
+        SolveTask(Chunk chunk, int start, int end, BoggleDictionary dictionary, BoggleBoard cubes,
+                  SplittableRandom random) {
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+            this.dictionary = dictionary;
+            this.cubes = cubes;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > LEAF) {
+                int middle = (start + end) >>> 1;
+                SplittableRandom other = random == null ? null : random.split();
+                invokeAll(new SolveTask(chunk, start, middle, dictionary, cubes, random),
+                        new SolveTask(chunk, middle, end, dictionary, cubes, other));
+                return;
+            }
+
+            BoggleBoard board = cubes == null ? new BoggleBoard(BoggleBoard.STANDARD_SIZE) : new BoggleBoard(cubes);
+            for (int i = start; i < end; i++) {
+                if (cubes == null) {
+                    String letters = chunk.boards[i];
+                    board.setBoard(BoardGrid.ofCells(letters.length()).size, letters);
+                } else {
+                    board.newBoard(random);
+                    chunk.boards[i] = board.getBoardString();
+                }
+
+                int points = 0;
+                String longest = "";
+                List<FoundWord> found = board.solveAll(dictionary);
+                for (FoundWord word : found) {
+                    points += word.getPoints();
+                    if (word.getWord().length() > longest.length()) {
+                        longest = word.getWord();
+                    }
+                }
+                chunk.words[i] = found.size();
+                chunk.points[i] = points;
+                chunk.longest[i] = longest;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean generate = args.length > 0 && args[0].equals("-generate");
+        if (args.length < (generate ? 3 : 2)) { //the boards and the output file
+            System.out.println("Usage: BoggleBatchSolver [boards file | -generate count] [output file] [board size]"
+                    + " [cubes file]");
+            return;
+        }
+        long count = generate ? Long.parseLong(args[1]) : 0;
+        String outputFile = generate ? args[2] : args[1];
+        int next = generate ? 3 : 2;
+        int size = args.length > next ? Integer.parseInt(args[next]) : BoggleBoard.STANDARD_SIZE;
+        String cubesFile = args.length > next + 1 ? args[next + 1]
+                : size == BoggleBoard.STANDARD_SIZE ? "cubes.txt" : "cubes" + size + "x" + size + ".txt";
+        boolean csv = outputFile.endsWith(".csv");
+
+        BoggleDictionary dictionary = BoggleDictionary.map("BoggleWords.dawg");
+        BoggleBoard cubes = generate ? new BoggleBoard(cubesFile, size) : null;
+        SplittableRandom random = generate ? new SplittableRandom() : null;
+        ForkJoinPool pool = new ForkJoinPool(); //one thread for each processor
+
+        BufferedReader in = generate ? null : new BufferedReader(new FileReader(args[0]));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile),
+                1 << 16));
+        Writer text = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        if (csv) {
+            text.write("board,words,points,longest\n");
+        }
+
+        long start = System.nanoTime();
+        long solved = 0;
+        long lines = 0;
+        long skipped = 0;
+        Chunk chunk = new Chunk();
+        while (true) {
+            //fill the chunk
+            chunk.count = 0;
+            if (generate) {
+                chunk.count = (int) Math.min(CHUNK, count - solved);
+            } else {
+                String line;
+                while (chunk.count < CHUNK && (line = in.readLine()) != null) {
+                    lines++;
+                    line = line.trim().toUpperCase();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (!isBoard(line)) { //one bad line shouldn't stop the whole batch
+                        System.err.println("Skipping line " + lines + ", not a square board of letters: " + line);
+                        skipped++;
+                        continue;
+                    }
+                    chunk.boards[chunk.count++] = line;
+                }
+            }
+            if (chunk.count == 0) {
+                break;
+            }
+
+            pool.invoke(new SolveTask(chunk, 0, chunk.count, dictionary, cubes,
+                    random == null ? null : random.split()));
+            solved += chunk.count;
+
+            //write the results in the order of the boards
+            for (int i = 0; i < chunk.count; i++) {
+                if (csv) {
+                    text.write(chunk.boards[i]);
+                    text.write(',');
+                    text.write(Integer.toString(chunk.words[i]));
+                    text.write(',');
+                    text.write(Integer.toString(chunk.points[i]));
+                    text.write(',');
+                    text.write(chunk.longest[i]);
+                    text.write('\n');
+                } else {
+                    String board = chunk.boards[i];
+                    out.writeByte(BoardGrid.ofCells(board.length()).size);
+                    out.writeBytes(board);
+                    out.writeInt(chunk.words[i]);
+                    out.writeInt(chunk.points[i]);
+                    byte[] longest = chunk.longest[i].getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(longest.length);
+                    out.write(longest);
+                }
+            }
+        }
+
+        text.flush();
+        out.close();
+        if (in != null) {
+            in.close();
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Solved %d boards in %.1f seconds on %d threads, %.0f boards/sec%n", solved, seconds,
+                pool.getParallelism(), solved / seconds);
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " lines that weren't boards");
+        }
+    }
+
+    /**
+     * Determines whether a line from the boards file is a board that can be solved: a square number of letters, from
+     * 1x1 to the largest board size
+     *
+     * @param line the line, in upper case
+     * @return true if it is a board
+     */
+    static boolean isBoard(String line) {
+        int size = (int) Math.round(Math.sqrt(line.length()));
+        if (size * size != line.length() || size < 1 || size > BoardGrid.MAX_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < line.length(); i++) {
+            char letter = line.charAt(i);
+            if (letter < 'A' || letter > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -4,55 +4,134 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
- * The BoggleBoard class.
+ * The BoggleBoard class. The letters are kept in a single array, one per position, numbered row by row.
+ * Searching the board never changes it, so one board can be searched by several threads at once.
+ * Boards can be any size from 1x1 to 8x8; the standard game is 4x4 and Big Boggle is 5x5.
  *
  * @author Y. Stitzer
  *         version 6/2/2013
  */
 public class BoggleBoard {
-    private final int CUBES = 16;
-    private final int SIZE = 4;
+    public static final int STANDARD_SIZE = 4;
 
+    private BoardGrid grid;
     private char[][] cubes;
-    private char[][] board;
+    private int[] order; //the cubes in the order they were last used, shuffled in place for each new board
+    private SplittableRandom random;
+    private char[] board;
+    private char[] spare; //reused by the rotations
 
     /**
-     * Creates an empty boggle board
+     * Creates an empty standard size boggle board
      *
      * @throws java.io.FileNotFoundException
      */
     public BoggleBoard() throws FileNotFoundException {
-        board = new char[SIZE][SIZE];
+        this(STANDARD_SIZE);
+    }
+
+    /**
+     * Creates an empty boggle board of the given size
+     *
+     * @param size the number of rows and columns
+     */
+    public BoggleBoard(int size) {
+        grid = BoardGrid.of(size);
+        board = new char[grid.cells];
+        spare = new char[grid.cells];
         cubes = null;
     }
 
     /**
-     * Creates a new boggle board with cubes using the the filename containing the cubes' values
+     * Creates a new standard size boggle board with cubes using the the filename containing the cubes' values
      *
      * @param cubesFile the filename of the text file with the cubes
      * @throws java.io.FileNotFoundException
      */
     public BoggleBoard(String cubesFile) throws FileNotFoundException {
+        this(cubesFile, STANDARD_SIZE);
+    }
+
+    /**
+     * Creates a new boggle board of the given size with cubes using the the filename containing the cubes' values
+     *
+     * @param cubesFile the filename of the text file with the cubes, at least one for each position on the board
+     * @param size      the number of rows and columns
+     * @throws java.io.FileNotFoundException
+     */
+    public BoggleBoard(String cubesFile, int size) throws FileNotFoundException {
+        grid = BoardGrid.of(size);
         cubes = getCubes(cubesFile);
-        board = new char[SIZE][SIZE];
+        order = new int[cubes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        board = new char[grid.cells];
+        spare = new char[grid.cells];
+    }
+
+    /**
+     * Creates a boggle board with the same size, cubes and letters as another, so boards can be made on several
+     * threads without reading the cubes file for each
+     *
+     * @param other the board to copy
+     */
+    public BoggleBoard(BoggleBoard other) {
+        grid = other.grid;
+        cubes = other.cubes; //never changed, so they can be shared
+        if (cubes != null) {
+            order = other.order.clone();
+        }
+        board = other.board.clone();
+        spare = new char[grid.cells];
+    }
+
+    /**
+     * Gets the number of rows and columns on the board
+     *
+     * @return the size
+     */
+    public int getSize() {
+        return grid.size;
     }
 
     /**
-     * Set the board using a one-line string with the values
+     * Set the board using a one-line string with the values, changing the size of the board to match the number of
+     * letters if needed
      *
-     * @param boardStr the board string
+     * @param boardStr the board string, with a square number of letters
      */
     public void setBoard(String boardStr) {
-        //loop through the board array
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                board[i][j] = boardStr.charAt((i * SIZE) + j);
-            }
+        setBoard(BoardGrid.ofCells(boardStr.length()).size, boardStr);
+    }
+
+    /**
+     * Set the board using its size and a one-line string with the values, changing the size of the board if needed
+     *
+     * @param size     the number of rows and columns
+     * @param boardStr the board string, with size * size letters
+     */
+    public void setBoard(int size, String boardStr) {
+        BoardGrid grid = BoardGrid.of(size);
+        if (boardStr.length() != grid.cells) {
+            throw new IllegalArgumentException("A " + size + "x" + size + " board needs " + grid.cells + " letters: " + boardStr);
         }
+
+        char[] board = new char[grid.cells];
+        boardStr.getChars(0, grid.cells, board, 0);
+        if (grid != this.grid) {
+            spare = new char[grid.cells];
+            this.grid = grid;
+        }
+        this.board = board;
     }
 
     /**
@@ -63,43 +142,55 @@ public class BoggleBoard {
      * @throws java.io.FileNotFoundException
      */
     private char[][] getCubes(String filename) throws FileNotFoundException {
-
-        final int SIDES = 6;
-        char[][] cubes = new char[CUBES][SIDES];
+        ArrayList<char[]> cubes = new ArrayList<>();
 
         Scanner in = new Scanner(new File(filename));
 
-        for (int i = 0; i < cubes.length; i++) {
-            String line = in.nextLine(); //next cube
-            for (int j = 0; j < cubes[i].length; j++) {
-                cubes[i][j] = line.charAt(j); //each side of cube
+        while (in.hasNextLine()) {
+            String line = in.nextLine().trim(); //next cube, one letter for each side
+            if (!line.isEmpty()) {
+                cubes.add(line.toCharArray());
             }
         }
 
         in.close();
 
-        return cubes;
+        if (cubes.size() < grid.cells) {
+            throw new IllegalArgumentException(filename + " has " + cubes.size() + " cubes, a " + grid.size + "x"
+                    + grid.size + " board needs " + grid.cells);
+        }
+
+        return cubes.toArray(new char[cubes.size()][]);
     }
 
     /**
      * Creates a new random board of letters using the cubes
      */
     public void newBoard() {
-        char[][] board = new char[SIZE][SIZE];
-
-        //copy the cubes to an array list to allow for removal in the next loop
-        ArrayList<char[]> tempCubes = new ArrayList<>();
-        for (char[] cube : this.cubes) {
-            tempCubes.add(cube);
+        if (random == null) {
+            random = new SplittableRandom();
         }
+        newBoard(random);
+    }
+
+    /**
+     * Creates a new random board of letters using the cubes and the given random numbers. Each thread making boards
+     * should have its own generator, split from a shared one.
+     *
+     * @param random the random number generator
+     */
+    public void newBoard(SplittableRandom random) {
+        char[] board = new char[grid.cells];
+        int[] order = this.order;
 
-        Random rand = new Random();
         //loop through each space on the board
         for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                char[] cube = tempCubes.remove(rand.nextInt(tempCubes.size())); //select a random cube to use and then remove it
-                board[i][j] = cube[rand.nextInt(cube.length)]; //select a random side of the cube to use
-            }
+            int pick = i + random.nextInt(order.length - i); //select a random cube from the ones not used yet
+            int cube = order[pick];
+            order[pick] = order[i];
+            order[i] = cube;
+            char[] sides = cubes[cube];
+            board[i] = sides[random.nextInt(sides.length)]; //select a random side of the cube to use
         }
 
         this.board = board;
@@ -109,32 +200,30 @@ public class BoggleBoard {
      * Rotates the board clockwise for user's convenience
      */
     public void rotateRight() {
-        char[][] newBoard = new char[SIZE][SIZE];
-
-        //goes down the rows, assigning the values to the columns from right to left
-        for (int i = 0; i < newBoard.length; i++) {
-            for (int j = 0; j < newBoard[i].length; j++) {
-                newBoard[j][(SIZE - 1) - i] = board[i][j];
-            }
-        }
-
-        board = newBoard;
+        rotate(grid.rotateRight);
     }
 
     /**
      * Rotates the board counter-clockwise for user's convenience
      */
     public void rotateLeft() {
-        char[][] newBoard = new char[SIZE][SIZE];
+        rotate(grid.rotateLeft);
+    }
 
-        //moves down the rows, assigning the values to the columns from left to right
-        for (int i = 0; i < newBoard.length; i++) {
-            for (int j = 0; j < newBoard[i].length; j++) {
-                newBoard[(SIZE - 1) - j][i] = board[i][j];
-            }
+    /**
+     * Moves every letter to a new position, reusing the spare array instead of creating a new one
+     *
+     * @param from the position each new position takes its letter from
+     */
+    private void rotate(int[] from) {
+        char[] board = this.board;
+        char[] rotated = spare;
+        for (int i = 0; i < rotated.length; i++) {
+            rotated[i] = board[from[i]];
         }
 
-        board = newBoard;
+        spare = board;
+        this.board = rotated;
     }
 
     /**
@@ -143,14 +232,39 @@ public class BoggleBoard {
      * @return
      */
     public String getBoardString() {
-        String str = "";
-        for (char[] row : board) {
-            for (char letter : row) {
-                str += letter;
+        return new String(board);
+    }
+
+    /**
+     * Gets a string that is the same for the board and every rotation and mirror image of it, all of which have the
+     * same words. It is whichever of the eight ways of writing the board in a line comes first alphabetically.
+     *
+     * @return the board string
+     */
+    public String getCanonicalString() {
+        char[] board = this.board;
+        int[][] symmetries = BoardGrid.ofCells(board.length).symmetries;
+
+        int[] best = symmetries[0];
+        for (int s = 1; s < symmetries.length; s++) {
+            int[] from = symmetries[s];
+            for (int i = 0; i < board.length; i++) {
+                char c = board[from[i]];
+                char b = board[best[i]];
+                if (c != b) {
+                    if (c < b) {
+                        best = from;
+                    }
+                    break;
+                }
             }
         }
 
-        return str;
+        char[] canonical = new char[board.length];
+        for (int i = 0; i < canonical.length; i++) {
+            canonical[i] = board[best[i]];
+        }
+        return new String(canonical);
     }
 
     /**
@@ -160,25 +274,17 @@ public class BoggleBoard {
      * @return true if the word can be spelled, false if not
      */
     public boolean contains(String word) {
-        word = word.toUpperCase();
-
-        //If word contains a QU, remove the U to test against the board (the board array uses a 'Q' for Qu)
-        int QIndex = word.indexOf('Q');
-        if (QIndex != -1) {
-            if (QIndex + 2 < word.length()) {
-                word = word.substring(0, QIndex + 1) + word.substring(QIndex + 2); //remove the u
-            } else {
-                //impossible to not have two letters after a Q in boggle
-                return false;
-            }
+        if (word.isEmpty()) {
+            return false;
         }
 
+        char[] board = this.board;
+        int[][] neighbours = BoardGrid.ofCells(board.length).neighbours;
+
         //starting from every cube, try to find the word
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
-                if (canSpell(row, col, word)) {
-                    return true;
-                }
+        for (int cell = 0; cell < board.length; cell++) {
+            if (canSpell(board, neighbours, cell, word, 0, 0L)) {
+                return true;
             }
         }
         //never found it
@@ -186,42 +292,339 @@ public class BoggleBoard {
     }
 
     /**
-     * Determines whether a word can be spelled on the current boggle board, starting from a specified location
+     * Determines which of a set of words can be spelled using the current letters on the board. The words are put in a
+     * prefix tree first, so all of them are looked for in a single search of the board, which follows the letters
+     * they start with only once, and stops following a path as soon as every word through it has been found.
      *
-     * @param row  the row position to start from
-     * @param col  the column position to start from
-     * @param word the word to find
+     * @param words the words to find
+     * @return the words that can be spelled, in the order given
+     */
+    public List<String> containsAll(Collection<String> words) {
+        char[] board = this.board;
+        int[][] neighbours = BoardGrid.ofCells(board.length).neighbours;
+        WordTree tree = new WordTree(words.size() * 4);
+        int[] ends = new int[words.size()]; //the node each word ends at, or 0 if it can't be on a board
+        int i = 0;
+        for (String word : words) {
+            ends[i++] = tree.add(word);
+        }
+
+        //starting from every cube, follow every path that is the start of a word not found yet
+        for (int cell = 0; cell < board.length && tree.missing[0] > 0; cell++) {
+            search(board, neighbours, cell, tree, 0, 0L);
+        }
+
+        List<String> found = new ArrayList<>();
+        i = 0;
+        for (String word : words) {
+            int end = ends[i++];
+            if (end != 0 && tree.found[end]) {
+                found.add(word);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the words in a prefix tree that continue a path on the board through a specified location
+     *
+     * @param board      the letters on the board
+     * @param neighbours the positions touching each position
+     * @param cell       the position to move to
+     * @param tree       the words to find
+     * @param node       the tree node for the letters of the path so far
+     * @param used       a bit for each position already in the path
+     */
+    private void search(char[] board, int[][] neighbours, int cell, WordTree tree, int node, long used) {
+        int child = tree.child(node, board[cell]);
+        if (child == 0 || tree.missing[child] == 0) { //no word left to find continues with this letter
+            return;
+        }
+
+        if (tree.ends[child] && !tree.found[child]) {
+            tree.found(child);
+            if (tree.missing[child] == 0) { //no longer words left to find
+                return;
+            }
+        }
+
+        used |= 1L << cell; //avoid using the same letter twice
+        for (int next : neighbours[cell]) {
+            if ((used & (1L << next)) == 0) {
+                search(board, neighbours, next, tree, child, used);
+                if (tree.missing[child] == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A prefix tree of the words looked for by {@link #containsAll(Collection)}, kept in arrays indexed by node, with
+     * node 0 the root. Each node links to its first child and its next sibling, and counts the words under it not
+     * found yet, so finished branches are skipped.
+     */
+    private static final class WordTree {
+        char[] letters; //the board letter of each node
+        int[] first; //the first child, 0 for none
+        int[] next; //the next child of the same parent, 0 for none
+        int[] parents;
+        int[] missing; //words ending at or under the node not found yet
+        boolean[] ends; //a word ends at the node
+        boolean[] found;
+        int nodes = 1;
+
+        WordTree(int capacity) {
+            capacity = Math.max(capacity, 16);
+            letters = new char[capacity];
+            first = new int[capacity];
+            next = new int[capacity];
+            parents = new int[capacity];
+            missing = new int[capacity];
+            ends = new boolean[capacity];
+            found = new boolean[capacity];
+        }
+
+        /**
+         * Gets the child of a node for a letter
+         *
+         * @param node   the node
+         * @param letter the board letter
+         * @return the child, or 0 if no word continues with the letter
+         */
+        int child(int node, char letter) {
+            int child = first[node];
+            while (child != 0 && letters[child] != letter) {
+                child = next[child];
+            }
+            return child;
+        }
+
+        /**
+         * Adds a word, unless it is there already, as the letters used on the board: upper case, with each QU as a
+         * single 'Q'
+         *
+         * @param word the word
+         * @return the node the word ends at, or 0 if the word can never be spelled on a board
+         */
+        int add(String word) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char letter = Character.toUpperCase(word.charAt(i));
+                if (letter < 'A' || letter > 'Z') {
+                    return 0;
+                }
+                if (letter == 'Q') { //impossible to have a Q without a U after it in boggle
+                    if (i + 1 >= word.length() || Character.toUpperCase(word.charAt(i + 1)) != 'U') {
+                        return 0;
+                    }
+                    i++; //skip the u
+                }
+
+                int child = child(node, letter);
+                if (child == 0) {
+                    if (nodes == parents.length) {
+                        grow();
+                    }
+                    child = nodes++;
+                    letters[child] = letter;
+                    parents[child] = node;
+                    next[child] = first[node];
+                    first[node] = child;
+                }
+                node = child;
+            }
+
+            if (node != 0 && !ends[node]) {
+                ends[node] = true;
+                for (int n = node; ; n = parents[n]) {
+                    missing[n]++;
+                    if (n == 0) {
+                        break;
+                    }
+                }
+            }
+            return node;
+        }
+
+        /**
+         * Marks the word ending at a node as found
+         *
+         * @param node the node
+         */
+        void found(int node) {
+            found[node] = true;
+            for (int n = node; ; n = parents[n]) {
+                missing[n]--;
+                if (n == 0) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Doubles the room for nodes
+         */
+        private void grow() {
+            int capacity = parents.length * 2;
+            letters = Arrays.copyOf(letters, capacity);
+            first = Arrays.copyOf(first, capacity);
+            next = Arrays.copyOf(next, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            missing = Arrays.copyOf(missing, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            found = Arrays.copyOf(found, capacity);
+        }
+    }
+
+    /**
+     * Finds every word from the dictionary that can be spelled on the current board. All the words are found in a
+     * single search of the board, which stops following a path as soon as no word starts with its letters.
+     *
+     * @param dictionary the dictionary of valid words
+     * @return the words found, each with the board positions used to spell it
+     */
+    public List<FoundWord> solveAll(BoggleDictionary dictionary) {
+        char[] board = this.board;
+        int[][] neighbours = BoardGrid.ofCells(board.length).neighbours;
+        List<FoundWord> found = new ArrayList<>();
+        Set<String> seen = new HashSet<>(); //a word may be spelled more than one way, only keep the first
+        int[] path = new int[board.length];
+
+        //starting from every cube, follow every path that is the start of a word
+        for (int cell = 0; cell < board.length; cell++) {
+            solve(board, neighbours, cell, dictionary, dictionary.root(), path, 0, 0L, found, seen);
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds all the words that continue a path on the board through a specified location
+     *
+     * @param board      the letters on the board
+     * @param neighbours the positions touching each position
+     * @param cell       the position to move to
+     * @param dictionary the dictionary of valid words
+     * @param node       the dictionary node for the letters of the path so far
+     * @param path       the positions of the path so far
+     * @param length     the length of the path so far
+     * @param used       a bit for each position already in the path
+     * @param found      the list to add found words to
+     * @param seen       the words found so far
+     */
+    private void solve(char[] board, int[][] neighbours, int cell, BoggleDictionary dictionary, int node, int[] path,
+                       int length, long used, List<FoundWord> found, Set<String> seen) {
+        int edge = dictionary.find(node, board[cell]);
+        if (edge == -1) { //no word continues with this letter
+            return;
+        }
+
+        path[length++] = cell;
+
+        if (dictionary.endsWord(edge)) {
+            String word = pathWord(board, path, length);
+            if (seen.add(word)) {
+                found.add(new FoundWord(word, Arrays.copyOf(path, length)));
+            }
+        }
+
+        if (!dictionary.hasChildren(edge)) { //no longer words
+            return;
+        }
+
+        used |= 1L << cell; //avoid using the same letter twice
+        for (int next : neighbours[cell]) {
+            if ((used & (1L << next)) == 0) {
+                solve(board, neighbours, next, dictionary, dictionary.child(edge), path, length, used, found, seen);
+            }
+        }
+    }
+
+    /**
+     * Gets the word spelled by a path, with the U put back after each Q
+     *
+     * @param board  the letters on the board
+     * @param path   the positions of the path
+     * @param length the length of the path
+     * @return the word in lower case
+     */
+    private String pathWord(char[] board, int[] path, int length) {
+        StringBuilder word = new StringBuilder(length + 1);
+        for (int i = 0; i < length; i++) {
+            char letter = board[path[i]];
+            word.append(Character.toLowerCase(letter));
+            if (letter == 'Q') {
+                word.append('u');
+            }
+        }
+        return word.toString();
+    }
+
+    /**
+     * Converts a word to the letters used on the board: upper case, with each QU as a single 'Q' since the board uses
+     * one cube for Qu
+     *
+     * @param word the word
+     * @return the board letters, or null if the word can never be spelled on a board
+     */
+    static String toBoardWord(String word) {
+        StringBuilder letters = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char letter = Character.toUpperCase(word.charAt(i));
+            if (letter < 'A' || letter > 'Z') {
+                return null;
+            }
+            letters.append(letter);
+            if (letter == 'Q') {
+                //impossible to have a Q without a U after it in boggle
+                if (i + 1 >= word.length() || Character.toUpperCase(word.charAt(i + 1)) != 'U') {
+                    return null;
+                }
+                i++; //skip the u
+            }
+        }
+        return letters.toString();
+    }
+
+    /**
+     * Determines whether the rest of a word can be spelled on the current boggle board, starting from a specified location
+     *
+     * @param board      the letters on the board
+     * @param neighbours the positions touching each position
+     * @param cell       the position to start from
+     * @param word       the word to find
+     * @param index      the position in the word of the next letter to find
+     * @param used       a bit for each position already used for earlier letters
      * @return true if the word can be spelled, false if not
      */
-    private boolean canSpell(int row, int col, String word) {
-        if (board[row][col] != word.charAt(0)) //wrong letter or marked with '?'
-        {
+    private boolean canSpell(char[] board, int[][] neighbours, int cell, String word, int index, long used) {
+        char letter = Character.toUpperCase(word.charAt(index));
+        if (board[cell] != letter) { //wrong letter
             return false; //count go this way
         }
 
-        if (word.length() <= 1) //this is the correct letter and this is the last
-        {
+        index++;
+        if (letter == 'Q') { //the board uses a 'Q' for Qu, so the U must come next in the word
+            if (index >= word.length() || Character.toUpperCase(word.charAt(index)) != 'U') {
+                return false;
+            }
+            index++;
+        }
+
+        if (index >= word.length()) { //this is the correct letter and this is the last
             return true;
         }
 
-        //temporarily remove character to avoid using the same letter twice
-        char value = board[row][col];
-        board[row][col] = '?';
+        used |= 1L << cell; //avoid using the same letter twice
 
         //moves to all the surrounding cubes on the board to find next characters in the word
-        for (int i = row - 1; i <= row + 1; i++) {
-            for (int j = col - 1; j <= col + 1; j++) {
-                if (i >= 0 && j >= 0 && //prevent out of bounds
-                    i < board.length && j < board[row].length && //prevent out of bounds
-                    !(i == row && j == col) && //don't test itself
-                    canSpell(i, j, word.substring(1))) {
-                        board[row][col] = value; //put the letter back on the board
-                        return true;
-                }
+        for (int next : neighbours[cell]) {
+            if ((used & (1L << next)) == 0 && canSpell(board, neighbours, next, word, index, used)) {
+                return true;
             }
         }
 
-        board[row][col] = value;
         return false; //canSpell never returned true
     }
 
@@ -229,21 +632,26 @@ public class BoggleBoard {
      * Gets a string displaying the board
      */
     public String toString() {
-        String str = "";
-        for (char[] row : board) {
-            String rowStr = Arrays.toString(row);
+        char[] board = this.board;
+        int size = BoardGrid.ofCells(board.length).size;
+        StringBuilder str = new StringBuilder(board.length * 4);
+        for (int row = 0; row < size; row++) {
+            str.append('[');
+            for (int col = 0; col < size; col++) {
+                if (col > 0) {
+                    str.append(", ");
+                }
 
-            //display U's with the Q's on the board
-            int QIndex = rowStr.indexOf('Q');
-            if (QIndex != -1) {
-                rowStr = rowStr.substring(0, QIndex + 1) + "U" + rowStr.substring(QIndex + 1);
-                ;
+                char letter = board[(row * size) + col];
+                str.append(letter);
+                if (letter == 'Q') { //display U's with the Q's on the board
+                    str.append('U');
+                }
             }
-
-            str += rowStr + "\n";
+            str.append("]\n");
         }
 
-        return str;
+        return str.toString();
     }
 
 }
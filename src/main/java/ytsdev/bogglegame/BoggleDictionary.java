@@ -0,0 +1,398 @@
+package ytsdev.bogglegame;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The BoggleDictionary class. Holds the boggle words as a minimized letter graph (a DAWG) packed into ints, so that a
+ * whole board can be searched at once and abandoned as soon as a path is not the start of any word.
+ * Words are stored the way they appear on the board: upper case, with "QU" stored as the single 'Q' cube.
+ * <p>
+ * The packed graph can be written to a binary file with {@link #write(String)} and opened again with
+ * {@link #map(String)}, which maps the file read-only instead of reading it into the heap.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleDictionary {
+    //each edge is one int: the letter, a flag if a word ends here, a flag for the last sibling and the child node
+    private static final int LETTER_MASK = 0x1F;
+    private static final int WORD_FLAG = 1 << 5;
+    private static final int LAST_FLAG = 1 << 6;
+    private static final int CHILD_SHIFT = 7;
+
+    //the binary file is a header of ints followed by the edges
+    private static final int MAGIC = 0x42474C44; //"BGLD"
+    private static final int VERSION = 1;
+    private static final int HEADER = 5; //magic, version, words, root, edges
+
+    private final IntBuffer edges;
+    private final int base; //index of the first edge in the buffer
+    private final int length;
+    private final int root;
+    private final int size;
+
+    /**
+     * Creates a dictionary from an already packed graph
+     *
+     * @param edges  the buffer holding the packed edges
+     * @param base   the index of the first edge in the buffer
+     * @param length the number of edges
+     * @param root   the node whose children are the first letters of every word
+     * @param size   the number of words in the graph
+     */
+    private BoggleDictionary(IntBuffer edges, int base, int length, int root, int size) {
+        this.edges = edges;
+        this.base = base;
+        this.length = length;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Loads a dictionary from a text file with one word per line
+     *
+     * @param filename the name of the word list file
+     * @return the dictionary
+     * @throws java.io.IOException
+     */
+    public static BoggleDictionary load(String filename) throws IOException {
+        List<String> words = new ArrayList<>();
+        BufferedReader file = new BufferedReader(new FileReader(new File(filename)));
+        try {
+            String line;
+            while ((line = file.readLine()) != null) {
+                words.add(line.trim());
+            }
+        } finally {
+            file.close();
+        }
+
+        return build(words);
+    }
+
+    /**
+     * Builds a dictionary from a collection of words. Words that can never be spelled on a board are left out.
+     *
+     * @param words the words
+     * @return the dictionary
+     */
+    public static BoggleDictionary build(Collection<String> words) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String word : words) {
+            String boardWord = BoggleBoard.toBoardWord(word);
+            if (boardWord != null && !boardWord.isEmpty()) {
+                sorted.add(boardWord);
+            }
+        }
+
+        Builder builder = new Builder(sorted.toArray(new String[sorted.size()]));
+        int root = sorted.isEmpty() ? 0 : builder.addNode(0, sorted.size(), 0);
+
+        int[] edges = Arrays.copyOf(builder.edges, builder.count);
+        return new BoggleDictionary(IntBuffer.wrap(edges), 0, edges.length, root, sorted.size());
+    }
+
+    /**
+     * Opens a dictionary file written by {@link #write(String)}. The file is mapped read-only, so it is shared with
+     * other processes through the page cache and takes no room on the heap.
+     *
+     * @param filename the name of the binary dictionary file
+     * @return the dictionary
+     * @throws java.io.IOException if the file cannot be read or is not a dictionary file
+     */
+    public static BoggleDictionary map(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = mapped.asIntBuffer();
+
+            if (ints.limit() < HEADER || ints.get(0) != MAGIC) {
+                throw new IOException(filename + " is not a boggle dictionary file");
+            }
+            if (ints.get(1) != VERSION) {
+                throw new IOException(filename + " has unsupported version " + ints.get(1));
+            }
+
+            int size = ints.get(2);
+            int root = ints.get(3);
+            int length = ints.get(4);
+            if (HEADER + length != ints.limit()) {
+                throw new IOException(filename + " is truncated");
+            }
+
+            return new BoggleDictionary(ints, HEADER, length, root, size);
+        } finally {
+            file.close(); //the mapping stays valid after the file is closed
+        }
+    }
+
+    /**
+     * Gets the SHA-256 of a dictionary file, which tells dictionaries apart without comparing them word by word
+     *
+     * @param file the contents of the file
+     * @return the hash, {@link BoggleProtocol#HASH_SIZE} bytes
+     */
+    public static byte[] contentHash(byte[] file) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(file);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //every Java platform has SHA-256
+        }
+    }
+
+    /**
+     * Writes the dictionary to a binary file that can be opened with {@link #map(String)}
+     *
+     * @param filename the name of the file to write
+     * @throws java.io.IOException
+     */
+    public void write(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(root);
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                out.writeInt(edges.get(base + i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Gets the number of words in the dictionary
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of edges in the packed graph
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return length;
+    }
+
+    /**
+     * Determines if a word is in the dictionary or not
+     *
+     * @param word the word to look for
+     * @return true if it is found, false if not
+     */
+    public boolean contains(String word) {
+        word = BoggleBoard.toBoardWord(word);
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+
+        int node = root();
+        for (int i = 0; i < word.length(); i++) {
+            int edge = find(node, word.charAt(i));
+            if (edge == -1) {
+                return false;
+            }
+            if (i == word.length() - 1) {
+                return endsWord(edge);
+            }
+            if (!hasChildren(edge)) {
+                return false;
+            }
+            node = child(edge);
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the root node, whose children are the first letters of every word
+     *
+     * @return the root node
+     */
+    int root() {
+        return root;
+    }
+
+    /**
+     * Finds the edge leaving a node with the given board letter
+     *
+     * @param node   the node to look in
+     * @param letter the upper case board letter
+     * @return the edge, or -1 if no word continues with that letter
+     */
+    int find(int node, char letter) {
+        int value = letter - 'A';
+        for (int i = node; i < length; i++) {
+            int edge = edges.get(base + i);
+            if ((edge & LETTER_MASK) == value) {
+                return i;
+            }
+            if ((edge & LAST_FLAG) != 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determines whether a word ends with the given edge
+     *
+     * @param edge the edge
+     * @return true if the letters up to and including this edge are a word
+     */
+    boolean endsWord(int edge) {
+        return (edges.get(base + edge) & WORD_FLAG) != 0;
+    }
+
+    /**
+     * Determines whether any longer word continues past the given edge
+     *
+     * @param edge the edge
+     * @return true if the edge leads to another node
+     */
+    boolean hasChildren(int edge) {
+        return (edges.get(base + edge) >>> CHILD_SHIFT) != 0;
+    }
+
+    /**
+     * Gets the node an edge leads to
+     *
+     * @param edge the edge
+     * @return the child node
+     */
+    int child(int edge) {
+        return edges.get(base + edge) >>> CHILD_SHIFT;
+    }
+
+    /**
+     * Lays out a sorted word list as a packed graph. The children of each node are stored next to each other, and
+     * nodes with exactly the same children are stored only once, so common endings like "-ING" are shared.
+     */
+    private static class Builder {
+        private final String[] words;
+        private final Map<EdgeList, Integer> nodes;
+        private int[] edges;
+        private int count;
+
+        Builder(String[] words) {
+            this.words = words;
+            this.nodes = new HashMap<>();
+            this.edges = new int[Math.max(16, words.length)];
+            //index 0 is never used by a node, so a child of 0 can mean "no children"
+            this.edges[0] = LAST_FLAG | LETTER_MASK;
+            this.count = 1;
+        }
+
+        /**
+         * Adds the node for a range of words sharing their first letters. Children are added before their parent,
+         * so that a node can be compared with the ones already added.
+         *
+         * @param lo    the first word in the range
+         * @param hi    one past the last word in the range
+         * @param depth the number of letters the words share
+         * @return the index of the node's first edge
+         */
+        int addNode(int lo, int hi, int depth) {
+            //count the different letters that follow the shared prefix
+            int letters = 0;
+            for (int i = lo; i < hi; i++) {
+                if (i == lo || words[i].charAt(depth) != words[i - 1].charAt(depth)) {
+                    letters++;
+                }
+            }
+
+            int[] list = new int[letters];
+            int slot = 0;
+            int i = lo;
+            while (i < hi) {
+                char letter = words[i].charAt(depth);
+                int j = i;
+                while (j < hi && words[j].charAt(depth) == letter) {
+                    j++;
+                }
+
+                //the list is sorted, so a word ending here comes before the longer ones
+                boolean word = words[i].length() == depth + 1;
+                int first = word ? i + 1 : i;
+                int child = first < j ? addNode(first, j, depth + 1) : 0;
+
+                int edge = (letter - 'A') | (child << CHILD_SHIFT);
+                if (word) {
+                    edge |= WORD_FLAG;
+                }
+                if (slot == letters - 1) {
+                    edge |= LAST_FLAG;
+                }
+                list[slot++] = edge;
+
+                i = j;
+            }
+
+            //reuse an identical node if there is one
+            EdgeList key = new EdgeList(list);
+            Integer existing = nodes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            int node = count;
+            if (count + letters > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(count + letters, edges.length * 2));
+            }
+            System.arraycopy(list, 0, edges, node, letters);
+            count += letters;
+            nodes.put(key, node);
+
+            return node;
+        }
+    }
+
+    /**
+     * The edges of one node, compared by value
+     */
+    private static class EdgeList {
+        private final int[] edges;
+        private final int hash;
+
+        EdgeList(int[] edges) {
+            this.edges = edges;
+            this.hash = Arrays.hashCode(edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof EdgeList && Arrays.equals(edges, ((EdgeList) other).edges);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ytsdev.bogglegame;
+
+import java.io.IOException;
+
+/**
+ * Compiles the boggle word list into the binary dictionary file opened by the game and the server.
+ * Usage: BoggleDictionaryCompiler [words file] [dictionary file]
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleDictionaryCompiler {
+    public static void main(String[] args) throws IOException {
+        String wordsFile = args.length > 0 ? args[0] : "BoggleWords.txt";
+        String dictionaryFile = args.length > 1 ? args[1] : "BoggleWords.dawg";
+
+        BoggleDictionary dictionary = BoggleDictionary.load(wordsFile);
+        dictionary.write(dictionaryFile);
+
+        System.out.println("Wrote " + dictionary.size() + " words as " + dictionary.edgeCount() + " edges to " + dictionaryFile);
+    }
+
+}
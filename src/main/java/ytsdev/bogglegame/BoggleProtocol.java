@@ -0,0 +1,191 @@
+package ytsdev.bogglegame;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The BoggleProtocol class. Describes the binary protocol between the client and the server.
+ * <p>
+ * A binary client starts by sending the three {@link #MAGIC} bytes, which can never start a line of the old text
+ * protocol, so the server can tell the two apart. After that, everything is sent in frames: the length of the rest of
+ * the frame as an int, one byte for the message type, and then the message. Numbers are big-endian, and strings are
+ * a length byte followed by that many bytes of UTF-8.
+ * <p>
+ * The client's first frame is {@link #HELLO} with the newest version it speaks, and the server answers with
+ * {@link #WELCOME} and the version both will use, or {@link #ERROR} if it can't serve the client.
+ * <p>
+ * From version 2, a client sends each word with {@link #WORD} as soon as the player finds it, and ends the round with
+ * an empty {@link #WORDS}. Version 1 clients send all their words in {@link #WORDS} when the time is up.
+ * <p>
+ * From version 3, the server keeps the time: {@link #ROUND} says how long the round lasts, and the server sends
+ * {@link #TIME_UP} when it is over, after which only the last {@link #WORDS} is accepted. Older clients keep their own
+ * clock, but the server still stops waiting for their words soon after its own time is up.
+ * <p>
+ * From version 4, the server hands out its dictionary, so every player checks words against the same list. The client
+ * says in {@link #HELLO} which dictionary it has cached, by the SHA-256 of the file, and {@link #WELCOME} says which
+ * one the server uses. If they differ, the server follows {@link #WELCOME} with the file, deflated and split into
+ * {@link #DICTIONARY} frames, and an empty {@link #DICTIONARY} to end it.
+ * <p>
+ * From version 5, a client can watch a room instead of playing, by sending {@link #WATCH} in place of {@link #HELLO}.
+ * The server answers with {@link #WATCHING}, or {@link #ERROR} if there is no such room, and then sends the spectator
+ * what the room's players see: {@link #ROUND}, {@link #TIME_UP}, {@link #RESULTS} with no words of their own, and
+ * {@link #DONE} when the game is over. A spectator who joins during a round is sent its board with the time left. A
+ * spectator who falls too far behind is disconnected rather than holding up the room.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public final class BoggleProtocol {
+    public static final byte[] MAGIC = {(byte) 0xB6, 'B', 'G'};
+    public static final int VERSION = 5;
+    public static final int MAX_FRAME = 1 << 20;
+    public static final int MAX_STRING = 255;
+    public static final int HASH_SIZE = 32; //the SHA-256 of a dictionary file
+
+    //client to server
+    public static final int HELLO = 1; //version byte, players wanted in the room (short, 0 for the default), then the
+                                       //hash of the dictionary the client has, all zeros for none (version 4)
+    public static final int NAME = 2; //the player's name
+    public static final int WORDS = 3; //number of words (short), then the words not sent yet, ends the player's round
+    public static final int CONFIRM = 4; //1 to play again, 0 to stop
+    public static final int WORD = 5; //one word, sent during the round as soon as it is found (version 2)
+    public static final int WATCH = 6; //version byte, the id of the game to watch (long, 0 for the newest) (version 5)
+
+    //server to client
+    public static final int WELCOME = 10; //the version to use, then the hash of the server's dictionary and its size
+                                          //in bytes (int, version 4)
+    public static final int PLAYERS = 11; //the number of players in the room (short)
+    public static final int ROUND = 12; //board size byte, the board letters, then the milliseconds the round lasts
+                                        //(int, version 3)
+    public static final int RESULTS = 13; //number of removed words (short) and the words, number of winners (short),
+                                          //number of players (short), then each player's name and points (int)
+    public static final int DONE = 14; //no more rounds
+    public static final int ERROR = 15; //the reason the connection is being closed
+    public static final int TIME_UP = 16; //the round is over, send the last words (version 3)
+    public static final int DICTIONARY = 17; //the next piece of the deflated dictionary, empty at the end (version 4)
+    public static final int WATCHING = 18; //the version to use, the game's id (long), the round (int), the number of
+                                           //players (short) and their names (version 5)
+
+    private BoggleProtocol() {
+    }
+
+    /**
+     * A frame read from a stream
+     */
+    public static class Frame {
+        private final int type;
+        private final ByteBuffer payload;
+
+        Frame(int type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        /**
+         * Gets the message type
+         *
+         * @return the type
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Gets the message, positioned at its start
+         *
+         * @return the message
+         */
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Writes a frame to a stream and flushes it
+     *
+     * @param out     the stream
+     * @param type    the message type
+     * @param payload the message, from its position to its limit
+     * @throws java.io.IOException
+     */
+    public static void writeFrame(DataOutputStream out, int type, ByteBuffer payload) throws IOException {
+        out.writeInt(1 + payload.remaining());
+        out.writeByte(type);
+        out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        out.flush();
+    }
+
+    /**
+     * Reads a frame from a stream, waiting until it has all arrived
+     *
+     * @param in the stream
+     * @return the frame
+     * @throws java.io.IOException if the stream ends or the frame is not valid
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+        int type = in.readUnsignedByte();
+        byte[] payload = new byte[length - 1];
+        in.readFully(payload);
+        return new Frame(type, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Gets the most bytes a string takes up in a message
+     *
+     * @param str the string
+     * @return the number of bytes
+     */
+    public static int stringSize(String str) {
+        return 1 + Math.min(MAX_STRING, str.length() * 3);
+    }
+
+    /**
+     * Puts a string in a message. Strings longer than {@link #MAX_STRING} bytes are cut short, at the end of a
+     * character.
+     *
+     * @param buffer the message
+     * @param str    the string
+     */
+    public static void putString(ByteBuffer buffer, String str) {
+        int length = str.length();
+        boolean ascii = length <= MAX_STRING;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = str.charAt(i) < 0x80;
+        }
+
+        if (ascii) { //the usual case, no need to encode to a separate array
+            buffer.put((byte) length);
+            for (int i = 0; i < length; i++) {
+                buffer.put((byte) str.charAt(i));
+            }
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            int count = Math.min(MAX_STRING, bytes.length);
+            while (count < bytes.length && count > 0 && (bytes[count] & 0xC0) == 0x80) {
+                count--; //the cut would split a character, so it goes before it
+            }
+            buffer.put((byte) count);
+            buffer.put(bytes, 0, count);
+        }
+    }
+
+    /**
+     * Gets a string from a message
+     *
+     * @param buffer the message, positioned at the string
+     * @return the string
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.get() & 0xFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
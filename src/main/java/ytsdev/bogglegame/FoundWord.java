@@ -0,0 +1,86 @@
+package ytsdev.bogglegame;
+
+import java.util.Arrays;
+
+/**
+ * The FoundWord class. A word found on a boggle board together with the cubes used to spell it.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class FoundWord {
+    private final String word;
+    private final int[] path;
+
+    /**
+     * Creates a found word
+     *
+     * @param word the word, in lower case with the U after each Q
+     * @param path the board positions of the cubes, in order, each as row * size + column
+     */
+    public FoundWord(String word, int[] path) {
+        this.word = word;
+        this.path = path;
+    }
+
+    /**
+     * Gets the word
+     *
+     * @return the word
+     */
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * Gets how many points the word is worth
+     *
+     * @return the points
+     */
+    public int getPoints() {
+        return pointsFor(word);
+    }
+
+    /**
+     * Gets how many points a word is worth, which depends only on its length
+     *
+     * @param word the word
+     * @return the points
+     */
+    public static int pointsFor(String word) {
+        final int FIRST_REWARD = 1;
+        final int SECOND_REWARD = 2;
+        final int THIRD_REWARD = 3;
+        final int FOURTH_REWARD = 5;
+        final int FIFTH_REWARD = 11;
+
+        int length = word.length();
+        if (length <= 4) {
+            return FIRST_REWARD;
+        } else if (length == 5) {
+            return SECOND_REWARD;
+        } else if (length == 6) {
+            return THIRD_REWARD;
+        } else if (length == 7) {
+            return FOURTH_REWARD;
+        } else {
+            return FIFTH_REWARD;
+        }
+    }
+
+    /**
+     * Gets the board positions used to spell the word
+     *
+     * @return a copy of the positions, each as row * size + column
+     */
+    public int[] getPath() {
+        return path.clone();
+    }
+
+    /**
+     * Gets a string with the word and its path
+     */
+    public String toString() {
+        return word + " " + Arrays.toString(path);
+    }
+}
@@ -0,0 +1,242 @@
+package ytsdev.bogglegame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SolutionCache class. Remembers the words on recently solved boards, so a board that comes up again is not
+ * solved again. A board rotated or flipped has the same words, so all eight versions of a board share one entry,
+ * found by {@link BoggleBoard#getCanonicalString()}.
+ * <p>
+ * The cache holds a fixed number of boards, dropping the one used least recently to make room. It is split into
+ * segments, each locked on its own, so threads looking up different boards rarely wait for each other.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class SolutionCache implements SolutionCacheMXBean {
+    private static final int SEGMENTS = 16;
+
+    private final BoggleDictionary dictionary;
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The words on a board and what they are worth. Each word is numbered from 0, so the words a player finds can be
+     * kept as one bit for each word, and the points for each number are worked out once.
+     */
+    public static class Solution {
+        private final String[] words; //by number
+        private final int[] scores; //the points for each word
+        private final Map<String, Integer> ids;
+        private final int points;
+
+        Solution(List<String> words) {
+            this.words = words.toArray(new String[words.size()]);
+            scores = new int[this.words.length];
+            ids = new HashMap<>();
+            int points = 0;
+            for (int id = 0; id < this.words.length; id++) {
+                scores[id] = FoundWord.pointsFor(this.words[id]);
+                points += scores[id];
+                ids.put(this.words[id], id);
+            }
+            this.points = points;
+        }
+
+        /**
+         * Gets every word that can be spelled on the board
+         *
+         * @return the words in lower case, which can't be changed
+         */
+        public Set<String> getWords() {
+            return Collections.unmodifiableSet(ids.keySet());
+        }
+
+        /**
+         * Gets the number of words on the board
+         *
+         * @return the number of words
+         */
+        public int size() {
+            return words.length;
+        }
+
+        /**
+         * Gets the number of a word
+         *
+         * @param word the word in lower case
+         * @return the number, or -1 if the word isn't on the board
+         */
+        public int getId(String word) {
+            Integer id = ids.get(word);
+            return id == null ? -1 : id;
+        }
+
+        /**
+         * Gets a word by its number
+         *
+         * @param id the number
+         * @return the word in lower case
+         */
+        public String getWord(int id) {
+            return words[id];
+        }
+
+        /**
+         * Gets the points a word is worth by its number
+         *
+         * @param id the number
+         * @return the points
+         */
+        public int getPoints(int id) {
+            return scores[id];
+        }
+
+        /**
+         * Gets the points a player would earn by finding every word alone
+         *
+         * @return the points
+         */
+        public int getPoints() {
+            return points;
+        }
+    }
+
+    /**
+     * One part of the cache, holding its boards in the order they were last used
+     */
+    private class Segment extends LinkedHashMap<String, Solution> {
+        private static final long serialVersionUID = 1L; //never serialized, a LinkedHashMap only for its eviction
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Solution> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates an empty cache
+     *
+     * @param dictionary the dictionary of valid words
+     * @param capacity   the most boards to remember
+     */
+    public SolutionCache(BoggleDictionary dictionary, int capacity) {
+        this.dictionary = dictionary;
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+        }
+    }
+
+    /**
+     * Gets the words on a board, solving it only if neither it nor any rotation or mirror image of it is in the
+     * cache. Can be called from any thread.
+     *
+     * @param board the board
+     * @return the board's words
+     */
+    public Solution solve(BoggleBoard board) {
+        String key = board.getCanonicalString();
+        Segment segment = segments[(key.hashCode() & 0x7FFFFFFF) % segments.length];
+
+        Solution solution;
+        synchronized (segment) {
+            solution = segment.get(key);
+        }
+        if (solution != null) {
+            hits.incrementAndGet();
+            return solution;
+        }
+
+        //solve without holding the lock, the other boards in the segment shouldn't wait for this one
+        misses.incrementAndGet();
+        List<String> words = new ArrayList<>();
+        for (FoundWord word : board.solveAll(dictionary)) {
+            words.add(word.getWord()); //each word is only found once
+        }
+        solution = new Solution(words);
+
+        synchronized (segment) {
+            segment.put(key, solution);
+        }
+        return solution;
+    }
+
+    /**
+     * Gets the number of boards in the cache
+     *
+     * @return the number of boards
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of boards found in the cache
+     *
+     * @return the number of lookups
+     */
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of boards that had to be solved
+     *
+     * @return the number of lookups
+     */
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of boards dropped to make room for others
+     *
+     * @return the number of boards
+     */
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the share of lookups found in the cache
+     *
+     * @return the hit rate, from 0 to 1
+     */
+    @Override
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,19 @@
+package ytsdev.bogglegame;
+
+/**
+ * The SolutionCacheMXBean interface. What a solution cache shows through JMX, under
+ * ytsdev.bogglegame:type=SolutionCache on the server: how often boards are found in it, and how often they are
+ * dropped to make room.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface SolutionCacheMXBean {
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    double getHitRate();
+}
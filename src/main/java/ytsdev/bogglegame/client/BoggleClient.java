@@ -16,7 +16,7 @@ public class BoggleClient {
     static long startTime;
 
     /**
-     * @param args
+     * @param args optionally, the number of players wanted in the room
      * @throws java.io.IOException
      * @throws java.net.UnknownHostException
      * @throws InterruptedException
@@ -28,7 +28,8 @@ public class BoggleClient {
 
         System.out.println("_-_-_-_-WELCOME TO BOGGLE!-_-_-_-_");
         System.out.println("When the board is displayed, type in your words and hit ENTER.\nTo rotate the board to the left, type \"1\", and to the right with \"2.\"");
-        Game game = new Game(server);
+        int roomPlayers = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Game game = new Game(server, roomPlayers);
         game.newGame();
         server.close();
     }
@@ -0,0 +1,100 @@
+package ytsdev.bogglegame.client;
+
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * The spectator program. Watches a room being played, and shows each board, the end of each round and the standings
+ * as the players see them, until the game is over.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleSpectator {
+
+    /**
+     * @param args optionally, the id of the game to watch, or the newest game is watched
+     * @throws java.io.IOException
+     */
+    public static void main(String[] args) throws IOException {
+        final String HOSTNAME = "localhost";
+        final int PORT = 2983;
+        long game = args.length > 0 ? Long.parseLong(args[0]) : 0;
+
+        Socket server = new Socket(HOSTNAME, PORT);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+
+            out.write(BoggleProtocol.MAGIC);
+            ByteBuffer watch = ByteBuffer.allocate(1 + 8);
+            watch.put((byte) BoggleProtocol.VERSION);
+            watch.putLong(game);
+            watch.flip();
+            BoggleProtocol.writeFrame(out, BoggleProtocol.WATCH, watch);
+
+            BoggleProtocol.Frame frame = BoggleProtocol.readFrame(in);
+            if (frame.getType() == BoggleProtocol.ERROR) {
+                System.out.println("The server refused: " + BoggleProtocol.getString(frame.getPayload()));
+                return;
+            }
+            ByteBuffer watching = frame.getPayload();
+            watching.get(); //the version
+            long id = watching.getLong();
+            int round = watching.getInt();
+            int players = watching.getShort() & 0xFFFF;
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < players; i++) {
+                String name = BoggleProtocol.getString(watching);
+                names.append(i == 0 ? "" : ", ").append(name.isEmpty() ? "(joining)" : name);
+            }
+            System.out.println("Watching game " + id + ", round " + round + ", with " + players + " players: " + names);
+
+            BoggleBoard board = new BoggleBoard();
+            while (true) {
+                frame = BoggleProtocol.readFrame(in);
+                ByteBuffer payload = frame.getPayload();
+                switch (frame.getType()) {
+                    case BoggleProtocol.ROUND:
+                        int size = payload.get();
+                        byte[] letters = new byte[size * size];
+                        payload.get(letters);
+                        board.setBoard(size, new String(letters, "US-ASCII"));
+                        System.out.println("New round, " + payload.getInt() / 1000 + " seconds left:");
+                        System.out.println(board);
+                        break;
+                    case BoggleProtocol.TIME_UP:
+                        System.out.println("Time up!");
+                        break;
+                    case BoggleProtocol.RESULTS:
+                        for (int i = payload.getShort() & 0xFFFF; i > 0; i--) {
+                            BoggleProtocol.getString(payload); //spectators have no words of their own
+                        }
+                        int winners = payload.getShort() & 0xFFFF;
+                        int count = payload.getShort() & 0xFFFF;
+                        for (int i = 0; i < count; i++) {
+                            String name = BoggleProtocol.getString(payload);
+                            System.out.println((i < winners ? "* " : "  ") + name + " with " + payload.getInt()
+                                    + " points");
+                        }
+                        break;
+                    case BoggleProtocol.DONE:
+                        System.out.println("The game is over.");
+                        return;
+                    default:
+                        break; //not a message spectators use
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ytsdev.bogglegame.client;
+
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The DictionaryCache class. Keeps the dictionaries the client has been sent by servers, each in a file named by its
+ * SHA-256, so a client that has played before only tells the server which one it has and opens it straight from the
+ * file. A dictionary is only downloaded when the server uses one the client hasn't seen, see
+ * {@link BoggleProtocol#DICTIONARY}.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class DictionaryCache {
+    private static final String SUFFIX = ".dawg";
+
+    private final File directory;
+
+    /**
+     * Creates a cache in the user's home directory
+     */
+    public DictionaryCache() {
+        this(new File(System.getProperty("user.home"), ".boggle" + File.separator + "dictionaries"));
+    }
+
+    /**
+     * Creates a cache in the given directory
+     *
+     * @param directory the directory to keep the dictionaries in, made when the first one is saved
+     */
+    public DictionaryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the hash of the dictionary used last, which is most likely the one the server uses
+     *
+     * @return the hash, or all zeros if nothing is cached
+     */
+    public byte[] getLatest() {
+        File latest = null;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX) && toHash(file.getName()) != null
+                        && (latest == null || file.lastModified() > latest.lastModified())) {
+                    latest = file;
+                }
+            }
+        }
+        return latest == null ? new byte[BoggleProtocol.HASH_SIZE] : toHash(latest.getName());
+    }
+
+    /**
+     * Opens a cached dictionary, and marks it as the one used last
+     *
+     * @param hash the dictionary's hash
+     * @return the dictionary, or null if it isn't cached
+     * @throws java.io.IOException if the file cannot be read
+     */
+    public BoggleDictionary open(byte[] hash) throws IOException {
+        File file = fileFor(hash);
+        if (!file.isFile()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return BoggleDictionary.map(file.getPath());
+    }
+
+    /**
+     * Reads a dictionary sent by the server, checks it against its hash, saves it and opens it
+     *
+     * @param hash the hash the server gave for the dictionary
+     * @param size the size of the file the server gave
+     * @param in   the stream from the server, at the first {@link BoggleProtocol#DICTIONARY} frame
+     * @return the dictionary
+     * @throws java.io.IOException if the dictionary is not what the server said it would be
+     */
+    public BoggleDictionary download(byte[] hash, int size, DataInputStream in) throws IOException {
+        if (size < 0) {
+            throw new IOException("The dictionary's size was given as " + size);
+        }
+        ByteArrayOutputStream file = new ByteArrayOutputStream(size);
+        Inflater inflater = new Inflater();
+        byte[] buffer = new byte[1 << 16];
+        try {
+            while (true) {
+                BoggleProtocol.Frame frame = BoggleProtocol.readFrame(in);
+                if (frame.getType() != BoggleProtocol.DICTIONARY) {
+                    throw new IOException("Expected the dictionary, got message " + frame.getType());
+                }
+                ByteBuffer payload = frame.getPayload();
+                if (!payload.hasRemaining()) { //the end of the file
+                    break;
+                }
+                byte[] chunk = new byte[payload.remaining()];
+                payload.get(chunk);
+                inflater.setInput(chunk);
+                while (!inflater.needsInput() && !inflater.finished()) {
+                    if (inflater.needsDictionary()) { //never sent, so it would wait for it forever
+                        throw new IOException("The dictionary sent was damaged");
+                    }
+                    file.write(buffer, 0, inflater.inflate(buffer));
+                    if (file.size() > size) { //no more is kept than the server said there would be
+                        throw new IOException("The dictionary sent is larger than its size");
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("The dictionary sent was damaged", e);
+        } finally {
+            inflater.end();
+        }
+
+        byte[] contents = file.toByteArray();
+        if (contents.length != size || !Arrays.equals(BoggleDictionary.contentHash(contents), hash)) {
+            throw new IOException("The dictionary sent does not match its hash");
+        }
+
+        //written under another name first, so a dictionary in the cache is never only partly there
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot make " + directory);
+        }
+        File target = fileFor(hash);
+        File temp = File.createTempFile("download", ".tmp", directory);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(contents);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete(); //only still there if the move failed
+        }
+        return BoggleDictionary.map(target.getPath());
+    }
+
+    /**
+     * Gets the file a dictionary is kept in
+     *
+     * @param hash the dictionary's hash
+     * @return the file
+     */
+    private File fileFor(byte[] hash) {
+        StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new File(directory, name.append(SUFFIX).toString());
+    }
+
+    /**
+     * Reads the hash back from the name of a cached dictionary
+     *
+     * @param name the file name
+     * @return the hash, or null if the file is not a cached dictionary
+     */
+    private static byte[] toHash(String name) {
+        if (name.length() != BoggleProtocol.HASH_SIZE * 2 + SUFFIX.length()) {
+            return null;
+        }
+        byte[] hash = new byte[BoggleProtocol.HASH_SIZE];
+        for (int i = 0; i < hash.length; i++) {
+            int high = Character.digit(name.charAt(2 * i), 16);
+            int low = Character.digit(name.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            hash[i] = (byte) (high << 4 | low);
+        }
+        return hash;
+    }
+}
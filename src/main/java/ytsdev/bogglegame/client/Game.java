@@ -1,40 +1,92 @@
 package ytsdev.bogglegame.client;
 
 import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.BoggleProtocol;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The Game class. This class interacts with the server and user to play the game of boggle.
+ * It talks to the server with the binary protocol described in {@link BoggleProtocol}.
  *
  * @author Y. Stitzer
  *         version 6/2/2013
  */
 public class Game {
-    private PrintWriter out;
-    private Scanner in;
+    private DataOutputStream out;
+    private DataInputStream in;
     private Scanner userIn;
 
     private int players;
+    private int version; //the protocol version agreed with the server
     private Lock lock;
     private boolean isTime; //true if game is still in play
     private String name;
 
     private BoggleBoard board;
-    private String[] dictionary;
+    private BoggleDictionary dictionary;
     private Set<String> words;
 
+    /**
+     * Creates a game in a room of the server's default size
+     *
+     * @param server the socket connected to the server
+     * @throws java.io.IOException
+     */
     public Game(Socket server) throws IOException {
-        out = new PrintWriter(server.getOutputStream());
-        in = new Scanner(server.getInputStream());
+        this(server, 0);
+    }
+
+    /**
+     * Creates a game, asking the server for a room with the given number of players
+     *
+     * @param server      the socket connected to the server
+     * @param roomPlayers the number of players wanted, or 0 for the server's default
+     * @throws java.io.IOException
+     */
+    public Game(Socket server, int roomPlayers) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+
+        //say which protocol and version this client speaks, ask for a room, and say which dictionary is cached
+        DictionaryCache cache = new DictionaryCache();
+        byte[] cached = cache.getLatest();
+        out.write(BoggleProtocol.MAGIC);
+        ByteBuffer hello = ByteBuffer.allocate(3 + BoggleProtocol.HASH_SIZE);
+        hello.put((byte) BoggleProtocol.VERSION);
+        hello.putShort((short) roomPlayers);
+        hello.put(cached);
+        hello.flip();
+        send(BoggleProtocol.HELLO, hello);
+
+        BoggleProtocol.Frame welcome = BoggleProtocol.readFrame(in);
+        if (welcome.getType() == BoggleProtocol.ERROR) {
+            throw new IOException("The server refused the connection: " + BoggleProtocol.getString(welcome.getPayload()));
+        }
+        ByteBuffer payload = welcome.getPayload();
+        version = payload.get() & 0xFF;
         userIn = new Scanner(System.in);
 
         board = new BoggleBoard();
-        dictionary = getDictionary();
+        if (version >= 4) {
+            //the server's dictionary, from the cache if it is the one this client sent, or else as the server sends it
+            byte[] hash = new byte[BoggleProtocol.HASH_SIZE];
+            payload.get(hash);
+            int size = payload.getInt();
+            dictionary = Arrays.equals(hash, cached) ? cache.open(hash) : null;
+            if (dictionary == null) {
+                System.out.println("Downloading the server's dictionary...");
+                dictionary = cache.download(hash, size, in);
+            }
+        } else {
+            dictionary = BoggleDictionary.map("BoggleWords.dawg"); //an older server, which doesn't send it
+        }
         words = new HashSet<String>();
         isTime = true;
         lock = new ReentrantLock();
@@ -44,22 +96,45 @@ public class Game {
         name = nameTok.nextToken();
         System.out.println("Thank you, " + name + ". Waiting for players to connect...");
 
-        players = in.nextInt();
-        out.println(name);
-        out.flush();
-
-        in.next(); //get rid of extra "AGAIN"
+        players = BoggleProtocol.readFrame(in).getPayload().getShort();
+        ByteBuffer nameMessage = ByteBuffer.allocate(BoggleProtocol.stringSize(name));
+        BoggleProtocol.putString(nameMessage, name);
+        nameMessage.flip();
+        send(BoggleProtocol.NAME, nameMessage);
     }
 
     /**
      * Gets the board from the server and starts a new round of boggle
+     *
+     * @throws java.io.IOException
      */
-    public void newGame() {
-        board.setBoard(in.next()); //get board string from server
+    public void newGame() throws IOException {
+        BoggleProtocol.Frame frame = BoggleProtocol.readFrame(in);
+        if (frame.getType() == BoggleProtocol.ROUND) {
+            play(frame.getPayload());
+        } else {
+            System.out.println("Another user ended the game. Thank you for playing!");
+        }
+    }
 
-        System.out.println("Your new game will start momentarily. Get ready! You have three minutes to get your words in!");
-        //pause to give users time
+    /**
+     * Plays a round of boggle
+     *
+     * @param round the message from the server with the board
+     * @throws java.io.IOException
+     */
+    private void play(ByteBuffer round) throws IOException {
+        int size = round.get(); //get board size and letters from server
+        byte[] letters = new byte[size * size];
+        round.get(letters);
+        board.setBoard(size, new String(letters, "US-ASCII"));
+        //the pause, and then the round
         final int PAUSE = 2000;
+        long time = version >= 3 ? round.getInt() : PAUSE + 180000;
+
+        System.out.println("Your new game will start momentarily. Get ready! You have " + (time - PAUSE) / 1000
+                + " seconds to get your words in!");
+        //pause to give users time
         try {
             Thread.sleep(PAUSE);
         } catch (InterruptedException e) {
@@ -69,7 +144,7 @@ public class Game {
 
         System.out.println(board);
 
-        startTimer();
+        startTimer(time - PAUSE);
 
         while (isTime) {
             String input = userIn.next();
@@ -79,19 +154,24 @@ public class Game {
     }
 
     /**
-     * Starts the boggle timer which will stop the game when the time runs out.
+     * Starts the boggle timer which will stop the game when the time runs out. The server keeps the time, and says
+     * when it is up; only an older server leaves it to the client.
+     *
+     * @param time how long the round lasts in milliseconds
      */
-    private void startTimer() {
+    private void startTimer(final long time) {
         class Timer implements Runnable {
             @Override
             /**
              * Stops the game when the time runs out.
              */
             public void run() {
-                final int TIME = 180000;
-
                 try {
-                    Thread.sleep(TIME);
+                    if (version >= 3) {
+                        waitForTimeUp();
+                    } else {
+                        Thread.sleep(time);
+                    }
                     stopGame();
                 } catch (InterruptedException e) {
                     e.printStackTrace();
@@ -106,12 +186,24 @@ public class Game {
         timer.start();
     }
 
+    /**
+     * Waits for the server to say the round is over
+     *
+     * @throws java.io.IOException
+     */
+    private void waitForTimeUp() throws IOException {
+        while (BoggleProtocol.readFrame(in).getType() != BoggleProtocol.TIME_UP) {
+            //nothing else is sent during a round
+        }
+    }
+
     /**
      * Processes input from the user during the game (rotating, adding words) and gets user's response to being prompt for a new game.
      *
      * @param input the user's input
+     * @throws java.io.IOException
      */
-    private void processInput(String input) {
+    private void processInput(String input) throws IOException {
         lock.lock();
         if (isTime) {
             if (input.equals("1")) {
@@ -125,7 +217,9 @@ public class Game {
                 {
                     if (board.contains(input)) //confirm that it's found on this board
                     {
-                        words.add(input);
+                        if (words.add(input) && version >= 2) {
+                            sendWord(input); //the server scores it now, instead of when the time is up
+                        }
                     } else {
                         System.out.println(input + " cannot be spelled on this board.");
                     }
@@ -158,42 +252,67 @@ public class Game {
     }
 
     /**
-     * Sends the list of words found to the server. The format is: number of words, and then the words
+     * Sends a word to the server as soon as it is found
+     *
+     * @param word the word
+     * @throws java.io.IOException
      */
-    private void submitWords() {
-        String message = "";
+    private void sendWord(String word) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(BoggleProtocol.stringSize(word));
+        BoggleProtocol.putString(message, word);
+        message.flip();
+        send(BoggleProtocol.WORD, message);
+    }
 
-        message += words.size();
+    /**
+     * Tells the server the round is over for this player. The format is: number of words, and then the words, which
+     * is only the words not already sent one at a time.
+     *
+     * @throws java.io.IOException
+     */
+    private void submitWords() throws IOException {
+        Collection<String> unsent = version >= 2 ? Collections.<String>emptySet() : words;
+        int length = 2;
+        for (String word : unsent) {
+            length += BoggleProtocol.stringSize(word);
+        }
 
-        for (String word : words) {
-            message += " " + word;
+        ByteBuffer message = ByteBuffer.allocate(length);
+        message.putShort((short) unsent.size());
+        for (String word : unsent) {
+            BoggleProtocol.putString(message, word);
         }
+        message.flip();
 
-        out.println(message);
-        out.flush();
+        send(BoggleProtocol.WORDS, message);
     }
 
     /**
      * Gets the results of the last round and displays it. This includes the words found by other users and the accumulated scores for all the users.
+     *
+     * @throws java.io.IOException
      */
-    private void getResults() {
-        int same = in.nextInt(); //number of words found by other users
+    private void getResults() throws IOException {
+        ByteBuffer results = BoggleProtocol.readFrame(in).getPayload();
+
+        int same = results.getShort(); //number of words found by other users
         if (same != 0) {
             System.out.println("Other players also had the following " + same + " word(s), so no one is rewarded points for them:");
             for (int i = 0; i < same; i++) {
-                System.out.println(in.next());
+                System.out.println(BoggleProtocol.getString(results));
             }
         }
 
         System.out.println("The highest points are rewarded to:");
-        int winners = in.nextInt(); //number of players with the highest achieved points
+        int winners = results.getShort(); //number of players with the highest achieved points
+        players = results.getShort();
         for (int i = 0; i < winners; i++) //display the winners' names and scores
         {
-            String name = in.next();
+            String name = BoggleProtocol.getString(results);
             if (name.equals(this.name)) {
                 name = "You";
             }
-            System.out.println(name + " with " + in.next() + " points!");
+            System.out.println(name + " with " + results.getInt() + " points!");
         }
 
         if (players - winners != 0) //if there are players with lower scores
@@ -201,38 +320,37 @@ public class Game {
             System.out.println("Here are the other scores:");
             for (int i = 0; i < (players - winners); i++) //display the other scores
             {
-                String name = in.next();
+                String name = BoggleProtocol.getString(results);
                 if (name.equals(this.name)) {
                     name = "You";
                 }
-                System.out.println(name + " with " + in.next() + " points.");
+                System.out.println(name + " with " + results.getInt() + " points.");
             }
         }
     }
 
     /**
      * Determines based on the user's and server's response whether to start a new round or not.
-     * Sends the message "AGAIN" to the server if a new game is requested. Expects "AGAIN" from server for a new game, or "DONE" if no more games are to be played.
+     * Tells the server whether a new game is requested. Expects a new round from server for a new game, or "DONE" if no more games are to be played.
      *
      * @param input the user's response after being prompted for a new game.
+     * @throws java.io.IOException
      */
-    private void requestNewGame(String input) {
+    private void requestNewGame(String input) throws IOException {
         if (input.equalsIgnoreCase("Y")) {
-            out.println("AGAIN");
-            out.flush();
+            confirm(true);
 
-            String response = in.next();
-            if (response.equals("AGAIN")) //all other users agreed
+            BoggleProtocol.Frame response = BoggleProtocol.readFrame(in);
+            if (response.getType() == BoggleProtocol.ROUND) //all other users agreed
             {
                 words.clear();
                 isTime = true;
-                newGame();
+                play(response.getPayload());
             } else {
                 System.out.println("Another user ended the game. Thank you for playing!");
             }
         } else if (input.equalsIgnoreCase("N")) {
-            out.println("DONE");
-            out.flush();
+            confirm(false);
             System.out.println("Thank you for playing!");
         } else //invalid input
         {
@@ -242,26 +360,27 @@ public class Game {
     }
 
     /**
-     * Gets an array with all the words in the boggle dictionary text file.
+     * Tells the server whether to play again
      *
-     * @return the String array with the dictionary words.
+     * @param again true to play another round
+     * @throws java.io.IOException
      */
-    private String[] getDictionary() {
-        final int WORDS = 81090;
-        String[] dict = new String[WORDS];
-        try {
-            BufferedReader file = new BufferedReader(new FileReader(new File("BoggleWords.txt")));
-            for (int i = 0; i < WORDS; i++) {
-                dict[i] = file.readLine();
-            }
-
-            file.close();
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void confirm(boolean again) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(1);
+        message.put((byte) (again ? 1 : 0));
+        message.flip();
+        send(BoggleProtocol.CONFIRM, message);
+    }
 
-        return dict;
+    /**
+     * Sends a message to the server
+     *
+     * @param type    the message type
+     * @param payload the message
+     * @throws java.io.IOException
+     */
+    private void send(int type, ByteBuffer payload) throws IOException {
+        BoggleProtocol.writeFrame(out, type, payload);
     }
 
     /**
@@ -271,9 +390,7 @@ public class Game {
      * @return true if it is found, false if not.
      */
     private boolean inDictionary(String word) {
-        word = word.toLowerCase();
-
-        return Arrays.binarySearch(dictionary, word) >= 0;
+        return dictionary.contains(word);
     }
 
 
@@ -0,0 +1,618 @@
+package ytsdev.bogglegame.client;
+
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.BoggleProtocol;
+import ytsdev.bogglegame.SolutionCache;
+import ytsdev.bogglegame.server.LatencyHistogram;
+import ytsdev.bogglegame.server.LatencySnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays thousands of games against a server at once, to find how far the server scales. Each bot speaks the same
+ * binary protocol as {@link Game}, but without a person: it finds a share of the words on the board set by its skill,
+ * sends them one at a time spread over a short think time instead of the full three minutes, and asks for another
+ * round right away. Bots that finish their game connect again, so the load keeps up until the time is over.
+ * <p>
+ * The bots are shared out between a few threads, each serving its bots' sockets with one selector. Every second the
+ * number of bots playing, the rounds and words a second, and the latencies seen by the bots are printed: the
+ * handshake, from connecting to the server's welcome; the round transition, from asking for another round to getting
+ * the board; and the results, from sending the last words to getting the standings, which includes waiting for the
+ * slowest bot in the room.
+ * Run from the directory with BoggleWords.dawg, like the server. The bots say they have its dictionary, so they are
+ * only sent the server's if it is a different one, and then they ignore it.
+ * Usage: LoadGenerator [host] [bots] [room size] [skill from 0 to 1] [think time in ms] [rounds a game] [seconds]
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class LoadGenerator {
+    private static final int PORT = 2983;
+    private static final int CONNECTS_PER_SECOND = 1000; //so the server's accept backlog isn't overrun
+    private static final long REPORT_INTERVAL = 1000;
+    private static final long RETRY_DELAY = 1000; //before a bot that was disconnected connects again
+    private static final int BUFFER_SIZE = 8192;
+    private static final long DRAIN_TIME = 15000; //for the bots to finish their games once the time is over
+
+    private final InetSocketAddress server;
+    private final int roomSize;
+    private final double skill;
+    private final long think;
+    private final int rounds;
+    private final SolutionCache solutions;
+    private final byte[] dictionaryHash;
+    private volatile boolean running;
+    private volatile long stopAt; //when the bots still in a game are closed
+
+    private final LatencyHistogram handshake = new LatencyHistogram();
+    private final LatencyHistogram transition = new LatencyHistogram();
+    private final LatencyHistogram results = new LatencyHistogram();
+    private final LongAdder playing = new LongAdder();
+    private final LongAdder roundsPlayed = new LongAdder();
+    private final LongAdder wordsSent = new LongAdder();
+    private final LongAdder gamesPlayed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * What a bot is waiting for
+     */
+    private enum State {
+        CONNECTING, WELCOME, PLAYERS, ROUND, WORDS, RESULTS, CLOSED
+    }
+
+    /**
+     * A simulated player, served by one driver
+     */
+    private class Bot {
+        private final int id;
+        private final Driver driver;
+        private final SplittableRandom random;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private int frameStart; //where the frame being put in the outgoing buffer starts
+        private State state;
+
+        private long wakeAt; //when the bot's timer goes off
+        private boolean scheduled;
+        private long since; //when the latency being timed started, from System.nanoTime()
+        private int round; //rounds played in this game
+        private final List<String> words = new ArrayList<>(); //the words the bot will send this round
+        private int next;
+        private long gap; //the time between words
+
+        Bot(int id, Driver driver, long seed) {
+            this.id = id;
+            this.driver = driver;
+            this.random = new SplittableRandom(seed);
+            state = State.CLOSED;
+        }
+
+        /**
+         * Connects to the server and asks for a room
+         */
+        void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                in.clear();
+                out.clear();
+                round = 0;
+                since = System.nanoTime();
+                state = State.CONNECTING;
+                key = channel.register(driver.selector, SelectionKey.OP_CONNECT, this);
+                if (channel.connect(server)) {
+                    connected();
+                }
+            } catch (IOException e) {
+                failed();
+            }
+        }
+
+        /**
+         * Sends the handshake once the connection is made
+         *
+         * @throws java.io.IOException
+         */
+        void connected() throws IOException {
+            channel.finishConnect();
+            key.interestOps(SelectionKey.OP_READ);
+            out.put(BoggleProtocol.MAGIC);
+            ByteBuffer hello = startFrame(BoggleProtocol.HELLO, 3 + BoggleProtocol.HASH_SIZE);
+            hello.put((byte) BoggleProtocol.VERSION);
+            hello.putShort((short) roomSize);
+            hello.put(dictionaryHash);
+            endFrame();
+            state = State.WELCOME;
+        }
+
+        /**
+         * Reads what the server has sent and handles each whole frame
+         *
+         * @throws java.io.IOException
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                failed();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < 1 || length > BoggleProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                int end = in.position() + 4 + length;
+                in.position(in.position() + 4);
+                int type = in.get() & 0xFF;
+                ByteBuffer payload = in.slice();
+                payload.limit(length - 1);
+                in.position(end);
+                handle(type, payload);
+                if (state == State.CLOSED) {
+                    return;
+                }
+            }
+            in.compact();
+            if (in.position() >= 4 && 4 + in.getInt(0) > in.capacity()) { //such as the results of a big room
+                ByteBuffer bigger = ByteBuffer.allocate(4 + in.getInt(0));
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+        }
+
+        /**
+         * Handles a message from the server
+         *
+         * @param type    the message type
+         * @param payload the message
+         * @throws java.io.IOException
+         */
+        void handle(int type, ByteBuffer payload) throws IOException {
+            long now = System.nanoTime();
+            switch (type) {
+                case BoggleProtocol.WELCOME:
+                    handshake.record(now - since);
+                    playing.increment();
+                    state = State.PLAYERS;
+                    break;
+                case BoggleProtocol.PLAYERS:
+                    ByteBuffer name = startFrame(BoggleProtocol.NAME, BoggleProtocol.MAX_STRING + 1);
+                    BoggleProtocol.putString(name, "bot" + id);
+                    endFrame();
+                    state = State.ROUND;
+                    break;
+                case BoggleProtocol.ROUND:
+                    if (round > 0) {
+                        transition.record(now - since);
+                    }
+                    startRound(payload);
+                    break;
+                case BoggleProtocol.TIME_UP:
+                    if (state == State.WORDS) { //thinking for longer than the server's round, send the rest now
+                        sendWords(words.subList(next, words.size()));
+                    }
+                    break;
+                case BoggleProtocol.RESULTS:
+                    results.record(now - since);
+                    roundsPlayed.increment();
+                    round++;
+                    ByteBuffer confirm = startFrame(BoggleProtocol.CONFIRM, 1);
+                    confirm.put((byte) (round < rounds && running ? 1 : 0));
+                    endFrame();
+                    since = System.nanoTime();
+                    state = State.ROUND;
+                    break;
+                case BoggleProtocol.DONE:
+                    gamesPlayed.increment();
+                    close();
+                    driver.schedule(this, System.currentTimeMillis()); //play another game
+                    break;
+                case BoggleProtocol.ERROR:
+                    errors.increment();
+                    close();
+                    driver.schedule(this, System.currentTimeMillis() + RETRY_DELAY);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Picks the words the bot will find on the board, and starts sending them
+         *
+         * @param payload the ROUND message
+         */
+        void startRound(ByteBuffer payload) {
+            int size = payload.get();
+            byte[] letters = new byte[size * size];
+            payload.get(letters);
+            BoggleBoard board = new BoggleBoard(size);
+            board.setBoard(size, new String(letters, StandardCharsets.US_ASCII));
+            SolutionCache.Solution solution = solutions.solve(board); //the room's bots share one solve
+
+            words.clear();
+            for (int word = 0; word < solution.size(); word++) {
+                if (random.nextDouble() < skill) {
+                    words.add(solution.getWord(word));
+                }
+            }
+            next = 0;
+            gap = think / (words.size() + 1);
+            state = State.WORDS;
+            driver.schedule(this, System.currentTimeMillis() + gap);
+        }
+
+        /**
+         * Sends the next word when the bot's timer goes off, or ends the round once they are all sent. A bot that was
+         * closed connects again.
+         */
+        void wake() {
+            try {
+                if (state == State.CLOSED) {
+                    if (running) {
+                        connect();
+                    }
+                } else if (state == State.WORDS) {
+                    if (next < words.size()) {
+                        ByteBuffer word = startFrame(BoggleProtocol.WORD, BoggleProtocol.MAX_STRING + 1);
+                        BoggleProtocol.putString(word, words.get(next++));
+                        endFrame();
+                        wordsSent.increment();
+                        driver.schedule(this, System.currentTimeMillis() + gap);
+                    } else {
+                        sendWords(words.subList(0, 0));
+                    }
+                }
+            } catch (IOException e) {
+                failed();
+            }
+        }
+
+        /**
+         * Sends the last words, which ends the bot's round
+         *
+         * @param last the words not sent yet
+         * @throws java.io.IOException
+         */
+        void sendWords(List<String> last) throws IOException {
+            int length = 2;
+            for (String word : last) {
+                length += BoggleProtocol.stringSize(word);
+            }
+            ByteBuffer message = startFrame(BoggleProtocol.WORDS, length);
+            message.putShort((short) last.size());
+            for (String word : last) {
+                BoggleProtocol.putString(message, word);
+            }
+            endFrame();
+            wordsSent.add(last.size());
+            next = words.size();
+            since = System.nanoTime();
+            state = State.RESULTS;
+        }
+
+        /**
+         * Starts a frame in the outgoing buffer
+         *
+         * @param type the message type
+         * @param max  the most bytes the message can take
+         * @return the buffer to put the message in
+         */
+        ByteBuffer startFrame(int type, int max) {
+            if (out.remaining() < 5 + max) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + 5 + max));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            frameStart = out.position();
+            out.putInt(0); //the length, filled in by endFrame
+            out.put((byte) type);
+            return out;
+        }
+
+        /**
+         * Fills in the length of the frame just put in the outgoing buffer, and sends what can be sent
+         *
+         * @throws java.io.IOException
+         */
+        void endFrame() throws IOException {
+            out.putInt(frameStart, out.position() - frameStart - 4);
+            flush();
+        }
+
+        /**
+         * Writes as much of the outgoing buffer as the socket takes, and waits to write the rest
+         *
+         * @throws java.io.IOException
+         */
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int ops = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Closes the connection after an error, and tries again later
+         */
+        void failed() {
+            if (state != State.CLOSED) {
+                errors.increment();
+                close();
+                driver.schedule(this, System.currentTimeMillis() + RETRY_DELAY);
+            }
+        }
+
+        /**
+         * Closes the connection
+         */
+        void close() {
+            if (state != State.CONNECTING && state != State.WELCOME && state != State.CLOSED) {
+                playing.decrement();
+            }
+            state = State.CLOSED;
+            driver.cancel(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+
+    /**
+     * A thread serving a share of the bots with one selector, and their timers
+     */
+    private class Driver implements Runnable {
+        private final Selector selector;
+        private final PriorityQueue<Bot> timers;
+        private final List<Bot> bots = new ArrayList<>();
+
+        Driver() throws IOException {
+            selector = Selector.open();
+            timers = new PriorityQueue<>(64, new Comparator<Bot>() {
+                @Override
+                public int compare(Bot a, Bot b) {
+                    return Long.compare(a.wakeAt, b.wakeAt);
+                }
+            });
+        }
+
+        /**
+         * Sets a bot's timer, replacing the one it has
+         *
+         * @param bot the bot
+         * @param at  when to wake it, in milliseconds
+         */
+        void schedule(Bot bot, long at) {
+            cancel(bot);
+            bot.wakeAt = at;
+            bot.scheduled = true;
+            timers.add(bot);
+        }
+
+        /**
+         * Stops a bot's timer
+         *
+         * @param bot the bot
+         */
+        void cancel(Bot bot) {
+            if (bot.scheduled) {
+                timers.remove(bot);
+                bot.scheduled = false;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running || System.currentTimeMillis() < stopAt && hasOpenBots()) {
+                    long now = System.currentTimeMillis();
+                    while (!timers.isEmpty() && timers.peek().wakeAt <= now) {
+                        Bot bot = timers.poll();
+                        bot.scheduled = false;
+                        bot.wake();
+                    }
+
+                    long wait = timers.isEmpty() ? 100 : Math.max(1, Math.min(100, timers.peek().wakeAt - now));
+                    selector.select(wait);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        Bot bot = (Bot) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                continue;
+                            }
+                            if (key.isConnectable()) {
+                                bot.connected();
+                            } else {
+                                if (key.isWritable()) {
+                                    bot.flush();
+                                }
+                                if (key.isValid() && key.isReadable()) {
+                                    bot.read();
+                                }
+                            }
+                        } catch (IOException e) {
+                            bot.failed();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+
+                for (Bot bot : bots) { //waiting for a room that won't fill, or stuck
+                    bot.close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Determines whether any of the driver's bots are still connected, to finish their games after the time is over
+         *
+         * @return true if a bot is still connected
+         */
+        private boolean hasOpenBots() {
+            for (Bot bot : bots) {
+                if (bot.state != State.CLOSED) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates a load generator
+     *
+     * @param host       the server's host
+     * @param roomSize   the number of players in each room
+     * @param skill      the share of each board's words a bot finds, from 0 to 1
+     * @param think      how long a bot takes to send its words, in milliseconds
+     * @param rounds     the rounds each game lasts
+     * @param dictionary the dictionary for the bots to find words with
+     * @param hash       the SHA-256 of the dictionary's file, which the bots say they have
+     */
+    public LoadGenerator(String host, int roomSize, double skill, long think, int rounds,
+                         BoggleDictionary dictionary, byte[] hash) {
+        this.server = new InetSocketAddress(host, PORT);
+        this.roomSize = roomSize;
+        this.skill = skill;
+        this.think = think;
+        this.rounds = rounds;
+        this.solutions = new SolutionCache(dictionary, 4096);
+        this.dictionaryHash = hash;
+    }
+
+    /**
+     * Runs the bots for a while, printing what they see every second, then lets them finish their games
+     *
+     * @param bots    the number of bots
+     * @param threads the number of threads to serve them
+     * @param seconds how long to keep starting games
+     * @throws java.io.IOException
+     * @throws InterruptedException
+     */
+    public void run(int bots, int threads, long seconds) throws IOException, InterruptedException {
+        running = true;
+        Driver[] drivers = new Driver[threads];
+        for (int i = 0; i < drivers.length; i++) {
+            drivers[i] = new Driver();
+        }
+        long start = System.currentTimeMillis();
+        SplittableRandom seeds = new SplittableRandom();
+        for (int i = 0; i < bots; i++) {
+            Driver driver = drivers[i % drivers.length];
+            Bot bot = new Bot(i, driver, seeds.nextLong());
+            driver.bots.add(bot);
+            driver.schedule(bot, start + i * 1000L / CONNECTS_PER_SECOND);
+        }
+        Thread[] threadsRunning = new Thread[drivers.length];
+        for (int i = 0; i < drivers.length; i++) {
+            threadsRunning[i] = new Thread(drivers[i], "bots-" + i);
+            threadsRunning[i].start();
+        }
+
+        long lastRounds = 0;
+        long lastWords = 0;
+        long end = start + seconds * 1000;
+        for (long next = start + REPORT_INTERVAL; next <= end; next += REPORT_INTERVAL) {
+            Thread.sleep(Math.max(0, next - System.currentTimeMillis()));
+            long rounds = roundsPlayed.sum();
+            long words = wordsSent.sum();
+            System.out.printf("%4ds  playing %6d  rounds/s %8.1f  words/s %9.1f  handshake %s  transition %s"
+                            + "  results %s%n", (next - start) / 1000, playing.sum(),
+                    (rounds - lastRounds) * 1000.0 / REPORT_INTERVAL, (words - lastWords) * 1000.0 / REPORT_INTERVAL,
+                    brief(handshake.snapshot()), brief(transition.snapshot()), brief(results.snapshot()));
+            lastRounds = rounds;
+            lastWords = words;
+        }
+
+        stopAt = System.currentTimeMillis() + think + DRAIN_TIME;
+        running = false; //bots finish the round they are in, and their game ends
+        for (Thread thread : threadsRunning) {
+            thread.join();
+        }
+
+        double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.println();
+        System.out.printf("%d player rounds (%.1f a second, %.1f room rounds a second), %d words, %d games, %d errors%n",
+                roundsPlayed.sum(), roundsPlayed.sum() / elapsed, roundsPlayed.sum() / elapsed / roomSize,
+                wordsSent.sum(), gamesPlayed.sum(), errors.sum());
+        System.out.println("latency in ms      count     mean      p50      p90      p99    p99.9      max");
+        print("handshake", handshake.snapshot());
+        print("transition", transition.snapshot());
+        print("results", results.snapshot());
+    }
+
+    /**
+     * Sums up a histogram in a few characters
+     *
+     * @param snapshot the histogram
+     * @return the median and 99th percentile in milliseconds
+     */
+    private static String brief(LatencySnapshot snapshot) {
+        return String.format("%.1f/%.1f", snapshot.getP50Micros() / 1000.0, snapshot.getP99Micros() / 1000.0);
+    }
+
+    /**
+     * Prints a histogram as a line of the summary table
+     *
+     * @param name     what was timed
+     * @param snapshot the histogram
+     */
+    private static void print(String name, LatencySnapshot snapshot) {
+        System.out.printf("%-12s %10d %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f%n", name, snapshot.getCount(),
+                snapshot.getMeanMicros() / 1000.0, snapshot.getP50Micros() / 1000.0,
+                snapshot.getP90Micros() / 1000.0, snapshot.getP99Micros() / 1000.0,
+                snapshot.getP999Micros() / 1000.0, snapshot.getMaxMicros() / 1000.0);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int bots = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int roomSize = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        double skill = args.length > 3 ? Double.parseDouble(args[3]) : 0.3;
+        long think = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+        int rounds = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+        long seconds = args.length > 6 ? Long.parseLong(args[6]) : 60;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        LoadGenerator load = new LoadGenerator(host, roomSize, skill, think, rounds,
+                BoggleDictionary.map("BoggleWords.dawg"),
+                BoggleDictionary.contentHash(Files.readAllBytes(Paths.get("BoggleWords.dawg"))));
+        load.run(bots, threads, seconds);
+    }
+}
@@ -0,0 +1,109 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The BinaryCodec class. Speaks the framed binary protocol described in {@link BoggleProtocol}. Messages are read
+ * straight from the received data and written straight into the buffers that are sent.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class BinaryCodec extends PlayerCodec {
+
+    BinaryCodec(Player player, Connection connection) {
+        super(player, connection);
+    }
+
+    @Override
+    public void onLine(String line) {
+        //binary clients don't send lines
+    }
+
+    @Override
+    public void onFrame(int type, ByteBuffer payload) {
+        switch (type) {
+            case BoggleProtocol.NAME:
+                player.onName(BoggleProtocol.getString(payload));
+                break;
+            case BoggleProtocol.WORDS:
+                int count = payload.getShort() & 0xFFFF;
+                List<String> words = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    words.add(BoggleProtocol.getString(payload));
+                }
+                player.onWords(words);
+                break;
+            case BoggleProtocol.WORD:
+                player.onWord(BoggleProtocol.getString(payload));
+                break;
+            case BoggleProtocol.CONFIRM:
+                player.onConfirm(payload.get() != 0);
+                break;
+            default:
+                break; //not a message the game uses
+        }
+    }
+
+    @Override
+    void sendPlayers(int players) {
+        ByteBuffer message = connection.startFrame(BoggleProtocol.PLAYERS, 2);
+        message.putShort((short) players);
+        connection.endFrame();
+    }
+
+    @Override
+    void sendRound(int size, String board, long time) {
+        ByteBuffer message = connection.startFrame(BoggleProtocol.ROUND, 1 + board.length() + 4);
+        message.put((byte) size);
+        for (int i = 0; i < board.length(); i++) {
+            message.put((byte) board.charAt(i));
+        }
+        if (connection.getVersion() >= 3) {
+            message.putInt((int) time);
+        }
+        connection.endFrame();
+    }
+
+    @Override
+    void sendTimeUp() {
+        if (connection.getVersion() >= 3) { //older clients keep their own time
+            connection.sendFrame(BoggleProtocol.TIME_UP);
+        }
+    }
+
+    @Override
+    void sendResults(Collection<String> removed, Standings standings) {
+        int length = 2 + 2 + 2;
+        for (String word : removed) {
+            length += BoggleProtocol.stringSize(word);
+        }
+        for (int i = 0; i < standings.size(); i++) {
+            length += BoggleProtocol.stringSize(standings.get(i).getName()) + 4;
+        }
+
+        ByteBuffer message = connection.startFrame(BoggleProtocol.RESULTS, length);
+        message.putShort((short) removed.size());
+        for (String word : removed) {
+            BoggleProtocol.putString(message, word);
+        }
+        message.putShort((short) standings.getWinners());
+        message.putShort((short) standings.size());
+        for (int i = 0; i < standings.size(); i++) {
+            Player other = standings.get(i);
+            BoggleProtocol.putString(message, other.getName());
+            message.putInt(other.getPoints());
+        }
+        connection.endFrame();
+    }
+
+    @Override
+    void sendDone() {
+        connection.sendFrame(BoggleProtocol.DONE);
+    }
+}
@@ -0,0 +1,259 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.FileNotFoundException;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The BoardSupply class. Makes boards ahead of time on background threads, so a game can take one at the start of a
+ * round without waiting. Each board is solved as it is made, and only boards with enough words and points are kept,
+ * so rooms don't get boards with almost nothing on them. The solution goes with the board, which saves the game
+ * solving it again, and boards that have been solved before are looked up in a {@link SolutionCache}.
+ * <p>
+ * Up to a fixed number of boards are kept ready; the threads wait while the supply is full. If the games ever use
+ * boards faster than they are made, a board is made on the spot and played whatever is on it, since the game that
+ * wants it is waiting on a thread that other games share. Only the boards made ahead of time are filtered.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoardSupply implements BoardSupplyMXBean {
+    private final SolutionCache solutions;
+    private final String cubesFile;
+    private final int size;
+    private final int minWords;
+    private final int minPoints;
+
+    private final BlockingQueue<Board> ready;
+    private final SplittableRandom seed; //split for each thread, so they never share a generator
+    private final BoggleBoard spare; //for boards made on the spot
+    private final SplittableRandom spareRandom;
+
+    //read by other threads for monitoring
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A board and everything that can be found on it
+     */
+    public static class Board {
+        private final int size;
+        private final String letters;
+        private final SolutionCache.Solution solution;
+
+        Board(int size, String letters, SolutionCache.Solution solution) {
+            this.size = size;
+            this.letters = letters;
+            this.solution = solution;
+        }
+
+        /**
+         * Gets the number of rows and columns on the board
+         *
+         * @return the size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the board letters, row by row
+         *
+         * @return the letters
+         */
+        public String getLetters() {
+            return letters;
+        }
+
+        /**
+         * Gets every word that can be spelled on the board
+         *
+         * @return the words in lower case, which can't be changed
+         */
+        public Set<String> getWords() {
+            return solution.getWords();
+        }
+
+        /**
+         * Gets the words on the board, numbered, with their points
+         *
+         * @return the solution
+         */
+        public SolutionCache.Solution getSolution() {
+            return solution;
+        }
+
+        /**
+         * Gets the points a player would earn by finding every word alone
+         *
+         * @return the points
+         */
+        public int getPoints() {
+            return solution.getPoints();
+        }
+    }
+
+    /**
+     * Creates a supply of boards. Boards are only made ahead of time once it is started.
+     *
+     * @param solutions  the words on boards solved before, and the dictionary to solve new ones
+     * @param size       the number of rows and columns on the boards
+     * @param capacity   the most boards to keep ready
+     * @param minWords   the fewest words a board must have
+     * @param minPoints  the fewest points a board must be worth
+     * @throws java.io.FileNotFoundException if there is no cubes file for the size
+     */
+    public BoardSupply(SolutionCache solutions, int size, int capacity, int minWords, int minPoints)
+            throws FileNotFoundException {
+        this.solutions = solutions;
+        this.cubesFile = getCubesFile(size);
+        this.size = size;
+        this.minWords = minWords;
+        this.minPoints = minPoints;
+
+        ready = new ArrayBlockingQueue<>(capacity);
+        seed = new SplittableRandom();
+        spare = new BoggleBoard(cubesFile, size);
+        spareRandom = seed.split();
+    }
+
+    /**
+     * Starts the threads that make boards ahead of time
+     *
+     * @param threads the number of threads
+     * @throws java.io.FileNotFoundException if there is no cubes file for the size
+     */
+    public void start(int threads) throws FileNotFoundException {
+        for (int i = 0; i < threads; i++) {
+            final BoggleBoard board = new BoggleBoard(cubesFile, size);
+            final SplittableRandom random;
+            synchronized (seed) {
+                random = seed.split();
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            Board next = make(board, random);
+                            if (isGoodEnough(next)) {
+                                ready.put(next); //waits while the supply is full
+                            } else {
+                                rejected.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        //stopped
+                    }
+                }
+            }, "boggle-boards-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); //the games come first
+            thread.start();
+        }
+    }
+
+    /**
+     * Takes a board for a new round. Can be called from any thread.
+     *
+     * @return the board
+     */
+    public Board take() {
+        Board next = ready.poll();
+        if (next != null) {
+            return next;
+        }
+
+        misses.incrementAndGet();
+        synchronized (spare) {
+            return make(spare, spareRandom); //one board at most, so the loop isn't held up trying for a better one
+        }
+    }
+
+    /**
+     * Gets the number of boards ready to be taken
+     *
+     * @return the number of boards
+     */
+    @Override
+    public int getReadyBoards() {
+        return ready.size();
+    }
+
+    /**
+     * Gets the number of boards made so far, including the ones that weren't good enough
+     *
+     * @return the number of boards
+     */
+    @Override
+    public long getBoardsGenerated() {
+        return generated.get();
+    }
+
+    /**
+     * Gets the number of boards thrown away for having too few words or points
+     *
+     * @return the number of boards
+     */
+    @Override
+    public long getBoardsRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of times a board was wanted and none were ready
+     *
+     * @return the number of times
+     */
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Makes a random board and solves it
+     *
+     * @param board  the board to shake
+     * @param random the random number generator for the calling thread
+     * @return the board with its words
+     */
+    private Board make(BoggleBoard board, SplittableRandom random) {
+        board.newBoard(random);
+        SolutionCache.Solution solution = solutions.solve(board);
+
+        generated.incrementAndGet();
+        return new Board(size, board.getBoardString(), solution);
+    }
+
+    /**
+     * Determines whether a board has enough on it to play
+     *
+     * @param board the board
+     * @return true if it has enough words and points
+     */
+    private boolean isGoodEnough(Board board) {
+        return board.getSolution().size() >= minWords && board.getPoints() >= minPoints;
+    }
+
+    /**
+     * Gets the name of the file with the cubes for a board size: cubes.txt for the standard board, or cubes5x5.txt
+     * and so on for the larger ones
+     *
+     * @param size the number of rows and columns on the board
+     * @return the filename
+     */
+    private static String getCubesFile(int size) {
+        if (size == BoggleBoard.STANDARD_SIZE) {
+            return "cubes.txt";
+        }
+        return "cubes" + size + "x" + size + ".txt";
+    }
+}
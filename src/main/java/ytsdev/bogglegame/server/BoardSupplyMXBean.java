@@ -0,0 +1,18 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The BoardSupplyMXBean interface. What the board supply shows through JMX, under ytsdev.bogglegame:type=BoardSupply:
+ * how many boards are ready, how many have been made and thrown away, and how often a game found none ready.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface BoardSupplyMXBean {
+    int getReadyBoards();
+
+    long getBoardsGenerated();
+
+    long getBoardsRejected();
+
+    long getMisses();
+}
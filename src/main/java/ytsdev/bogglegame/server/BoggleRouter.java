@@ -0,0 +1,62 @@
+package ytsdev.bogglegame.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The BoggleRouter class. Listens for players on the server's port and places their rooms on a pool of backend
+ * servers, each a {@link BoggleServer} of its own, see {@link Router}. The backends can be on the same machine, each
+ * in its own JVM, so the rooms are spread over more than one heap and garbage collector.
+ * Backends join by connecting to the control port, which they are given on their command line, and are taken out
+ * through JMX, with the drain operation of ytsdev.bogglegame:type=Router.
+ * Usage: BoggleRouter [port] [control port] [default players]
+ * For example, a router and two backends on one machine:
+ * BoggleRouter 2983 2984 2, then BoggleServer 4 2 30 30 40 batch 2991 localhost:2984, and the same with 2992
+ *
+ * @author Y. Stitzer
+ * @version 6/2/2013
+ */
+public class BoggleRouter {
+    public static void main(String[] args) throws IOException {
+        final int PORT = args.length > 0 ? Integer.parseInt(args[0]) : 2983;
+        final int CONTROL_PORT = args.length > 1 ? Integer.parseInt(args[1]) : 2984;
+        //the number of players for clients that don't ask for a room size, which must be the backends' too
+        final int PLAYERS = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        final int LOOPS = Runtime.getRuntime().availableProcessors();
+        final int BACKLOG = 1024; //connections the system holds until they are accepted, so a burst isn't refused
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(PORT), BACKLOG);
+        ServerSocketChannel control = ServerSocketChannel.open();
+        control.socket().bind(new InetSocketAddress(CONTROL_PORT));
+
+        EventLoop[] loops = new EventLoop[LOOPS];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            new Thread(loops[i], "boggle-pipe-" + i).start();
+        }
+        EventLoop routerLoop = new EventLoop();
+        new Thread(routerLoop, "boggle-router").start();
+
+        Router router = new Router(routerLoop, loops, PLAYERS);
+        router.start(control);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(router,
+                    new ObjectName("ytsdev.bogglegame:type=Router"));
+        } catch (JMException e) {
+            e.printStackTrace(); //the router works without it, but backends can't be drained
+        }
+
+        boolean listening = true;
+        while (listening) {
+            router.accept(server.accept());
+        }
+
+        server.close();
+    }
+}
@@ -1,33 +1,151 @@
 package ytsdev.bogglegame.server;
 
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.SolutionCache;
+
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
- * The BoggleServer class. Listens for connections and starts games when enough players join
+ * The BoggleServer class. Listens for connections and passes them to the lobby, which starts games when enough
+ * players join. The games are shared out between a few event loops, one for each processor, instead of having a
+ * thread each.
+ * Boards are made and solved ahead of time by a few background threads, which keep only boards with enough on them.
+ * Every player's results are kept in a score store, so their totals and the leaderboard carry over between games and
+ * restarts, and every round is recorded in a journal, which can be read back with {@link RoundJournalReader}.
+ * Clients are handed the server's dictionary when they don't have it, see {@link DictionaryFile}.
+ * What the server is doing can be watched through JMX, see {@link ServerMetrics}.
+ * A server can also be one of the backends of a {@link BoggleRouter}, on a port of its own, in which case its scores
+ * and journal are kept in files named for the port, and it runs until the router drains it.
+ * Usage: BoggleServer [board size] [default players] [fill timeout in seconds] [min words] [min points]
+ * [journal sync: none, interval or batch] [port] [router's control address, as host:port]
  *
  * @author Y. Stitzer
  * @version 6/2/2013
  */
 public class BoggleServer {
-    public static void main(String[] args) throws IOException {
-        final int PORT = 2983;
-        ServerSocket server = new ServerSocket(PORT);
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int DEFAULT_PORT = 2983;
+        //the board size can be given on the command line, such as 5 for Big Boggle
+        final int SIZE = args.length > 0 ? Integer.parseInt(args[0]) : BoggleBoard.STANDARD_SIZE;
+        //the number of players for clients that don't ask for a room size
+        final int PLAYERS = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        //how long a room waits to fill before starting with the players it has
+        final long FILL_TIMEOUT = (args.length > 2 ? Long.parseLong(args[2]) : 30) * 1000;
+        //the least a board must have to be played
+        final int MIN_WORDS = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        final int MIN_POINTS = args.length > 4 ? Integer.parseInt(args[4]) : 40;
+        //how often the round journal is synced to the disk
+        final RoundJournal.Sync SYNC = args.length > 5 ? RoundJournal.Sync.valueOf(args[5].toUpperCase())
+                : RoundJournal.Sync.BATCH;
+        final int PORT = args.length > 6 ? Integer.parseInt(args[6]) : DEFAULT_PORT;
+        //the router to report to, if the server is one of its backends
+        final String ROUTER = args.length > 7 ? args[7] : null;
+        //backends on one machine each keep their own files
+        final String FILES = PORT == DEFAULT_PORT ? "" : "-" + PORT;
+        final int LOOPS = Runtime.getRuntime().availableProcessors();
+        final int BOARD_THREADS = Math.max(1, LOOPS / 4);
+        final int READY_BOARDS = 256;
+        final int CACHED_SOLUTIONS = 4096;
+        final int BACKLOG = 1024; //connections the system holds until they are accepted, so a burst isn't refused
+
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(PORT), BACKLOG);
+
+        //one dictionary is shared by every game on this server
+        BoggleDictionary dictionary = BoggleDictionary.map("BoggleWords.dawg");
+        DictionaryFile dictionaryFile = new DictionaryFile("BoggleWords.dawg"); //for clients that don't have it
+        SolutionCache solutions = new SolutionCache(dictionary, CACHED_SOLUTIONS);
+        BoardSupply boards = new BoardSupply(solutions, SIZE, READY_BOARDS, MIN_WORDS, MIN_POINTS);
+        boards.start(BOARD_THREADS);
+        final ScoreStore scores = ScoreStore.open("scores" + FILES);
+        final RoundJournal journal = new RoundJournal("rounds" + FILES + ".journal", SYNC);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    scores.close(); //so the index doesn't have to be rebuilt from the log next time
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        EventLoop[] loops = new EventLoop[LOOPS];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            start(loops[i], "boggle-loop-" + i);
+        }
+        EventLoop lobbyLoop = new EventLoop();
+        start(lobbyLoop, "boggle-lobby");
+
+        Lobby lobby = new Lobby(lobbyLoop, loops, boards, scores, journal, dictionaryFile, PLAYERS, FILL_TIMEOUT);
+
+        try {
+            ServerMetrics.get().start(lobbyLoop);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(scores,
+                    new ObjectName("ytsdev.bogglegame:type=ScoreStore"));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(lobby,
+                    new ObjectName("ytsdev.bogglegame:type=Lobby"));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(boards,
+                    new ObjectName("ytsdev.bogglegame:type=BoardSupply"));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(solutions,
+                    new ObjectName("ytsdev.bogglegame:type=SolutionCache"));
+        } catch (JMException e) {
+            e.printStackTrace(); //the game doesn't need the metrics
+        }
+
+        RouterLink link = null;
+        if (ROUTER != null) {
+            int colon = ROUTER.lastIndexOf(':');
+            link = new RouterLink(new InetSocketAddress(ROUTER.substring(0, colon),
+                    Integer.parseInt(ROUTER.substring(colon + 1))), PORT, lobby, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        server.close(); //stops the accept below
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            Thread thread = new Thread(link, "boggle-router-link");
+            thread.setDaemon(true);
+            thread.start();
+        }
 
         boolean listening = true;
         while (listening) {
-            final int PLAYERS = 2; //change this to adjust the number of players in the game
-            Socket[] players = new Socket[PLAYERS];
-            for (int i = 0; i < PLAYERS; i++) {
-                players[i] = server.accept();
+            try {
+                lobby.accept(server.accept());
+            } catch (ClosedChannelException e) {
+                listening = false; //drained by the router
             }
-            BoggleThread game = new BoggleThread(players);
-            Thread thread = new Thread(game);
-            thread.start();
         }
 
         server.close();
+        if (link != null) {
+            link.awaitDrained();
+            System.exit(0); //the scores and the journal are closed on the way out
+        }
+    }
+
+    /**
+     * Starts a thread to run an event loop
+     *
+     * @param loop the event loop
+     * @param name the name of the thread
+     */
+    private static void start(EventLoop loop, String name) {
+        Thread thread = new Thread(loop, name);
+        thread.start();
     }
 
 }
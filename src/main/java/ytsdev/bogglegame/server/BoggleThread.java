@@ -1,144 +1,394 @@
 package ytsdev.bogglegame.server;
 
-import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleProtocol;
+import ytsdev.bogglegame.SolutionCache;
 
-import java.io.IOException;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
 
 /**
  * The BoggleThread class. This class is the server side of a game of boggle.
+ * The game does not have a thread of its own: it is run by the event loop serving its players, and moves on to the
+ * next step of the round as soon as the last player it is waiting for has answered. Every step has a deadline, so a
+ * stalled client is dropped instead of holding up the rest of the room.
+ * <p>
+ * The server keeps the time of each round, on its event loop's timer wheel. When it runs out, the players are told to
+ * send their last words, and the round is scored with whatever has arrived a few seconds later.
+ * <p>
+ * Binary clients can watch the game as spectators. They are sent the board, the end of the round's time and the
+ * standings as the players are, through a {@link Broadcast}, and are never waited for.
  *
  * @author Y. Stitzer
  *         version 6/2/2013
  */
-public class BoggleThread implements Runnable {
+public class BoggleThread {
+    private static final long NAME_TIMEOUT = 60000;
+    private static final long ROUND_TIME = 180000 + 2000; //the round and the client's pause before it
+    private static final long SUBMIT_TIMEOUT = 10000; //for the last words after the time is up
+    private static final long CONFIRM_TIMEOUT = 120000;
+
+    private EventLoop loop;
+    private Timeout deadline;
     private Player[] players;
-    private BoggleBoard board;
+    private BoardSupply boards;
+    private ScoreStore scores;
+    private RoundJournal journal;
+    private ConcurrentNavigableMap<Long, BoggleThread> rooms;
+    private Broadcast spectators = new Broadcast();
+    private long id; //the game's id in the journal
+    private int round;
+    private BoardSupply.Board board; //this round's board
+    private SolutionCache.Solution solution; //the words on this round's board
+
+    private int waiting; //the number of players the game is still waiting for
+    private boolean playing;
+    private boolean timing; //the round's time is running
+    private boolean over;
+    private long roundStarted; //from System.nanoTime(), for the time left to tell spectators
+    private long started; //when the step the game is waiting on started, for the metrics
 
     /**
-     * Constructs a new BoggleThread object with the sockets of the connected players
+     * Constructs a new BoggleThread object with the connections of the players, and starts the game
      *
-     * @param sockets the players' sockets
-     * @throws java.io.IOException
+     * @param loop        the event loop serving the players
+     * @param connections the players' connections, all served by the loop
+     * @param boards      the boards to play, shared with the other games
+     * @param scores      where the players' results are kept, shared with the other games
+     * @param journal     where the rounds are recorded, shared with the other games
+     * @param rooms       the games being played by id, for spectators to find, shared with the other games
      */
-    public BoggleThread(Socket[] sockets) throws IOException {
-        players = new Player[sockets.length];
+    public BoggleThread(EventLoop loop, Connection[] connections, BoardSupply boards, ScoreStore scores,
+                        RoundJournal journal, ConcurrentNavigableMap<Long, BoggleThread> rooms) {
+        this.loop = loop;
+        this.boards = boards;
+        this.scores = scores;
+        this.journal = journal;
+        this.rooms = rooms;
+        this.id = journal.nextGame();
+        rooms.put(id, this);
+
+        players = new Player[connections.length];
         for (int i = 0; i < players.length; i++) {
-            players[i] = new Player(sockets[i], sockets.length);
+            players[i] = new Player(this, connections[i]);
         }
 
-        board = new BoggleBoard("cubes.txt");
+        ServerMetrics.get().roomStarted();
+        waiting = players.length;
+        setDeadline(NAME_TIMEOUT);
+        for (int i = 0; i < players.length; i++) {
+            players[i].start(players.length);
+        } //ask the players for their names
     }
 
     /**
-     * Directs the game, interacting with all the players
+     * Called when a player has sent their name. The first round starts once every player has.
+     *
+     * @param player the player
      */
-    @Override
-    public void run() {
-        boolean playing = true;
-        while (playing) {
-            board.newBoard(); //reset the board
+    void playerJoined(Player player) {
+        if (--waiting == 0) {
+            newRound();
+        }
+    }
 
-            for (int i = 0; i < players.length; i++) {
-                players[i].newRound(board.getBoardString());
-            } //notify the players of a new game and send the board
+    /**
+     * Called when a player has sent their words. The round ends once every player has.
+     *
+     * @param player the player
+     */
+    void wordsReceived(Player player) {
+        if (--waiting == 0) {
+            endRound();
+        }
+    }
 
-            for (int i = 0; i < players.length; i++) {
-                players[i].retrieveWords();
-            } //get the words from all the players
+    /**
+     * Called when a player has said whether to play again. Another round starts only if every player wants one.
+     *
+     * @param player the player
+     * @param again  true if the player wants to play again
+     */
+    void confirmed(Player player, boolean again) {
+        if (!again) //if any one player doesn't want to play again
+        {
+            playing = false;
+        }
 
-            removeDuplicates();
+        if (--waiting == 0) {
+            ServerMetrics.get().confirmNew(started);
+            if (playing) {
+                newRound();
+            } else {
+                deadline.cancel();
+                ServerMetrics.get().roomFinished();
+                for (int i = 0; i < players.length; i++) {
+                    players[i].gameOver();
+                } //notify players of end of game
+                over = true;
+                rooms.remove(id);
+                spectators.finish(Broadcast.empty(BoggleProtocol.DONE));
+            }
+        }
+    }
 
-            for (int i = 0; i < players.length; i++) {
-                players[i].calculatePoints();
-            } //each player calculates their points
+    /**
+     * Gets the game's id, which spectators ask for it by
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
 
-            for (int i = 0; i < players.length; i++) {
-                players[i].sendResults(getAllPoints());
-            } //send all players everyone's points
+    /**
+     * Gets the event loop the game is run by, which its spectators must be served by
+     *
+     * @return the event loop
+     */
+    EventLoop getLoop() {
+        return loop;
+    }
 
-            for (int i = 0; i < players.length; i++) {
-                if (!players[i].confirmNew())//if any one player doesn't want to play again
-                {
-                    playing = false;
-                }
-            }
+    /**
+     * Adds a spectator to the game, and tells them who is playing and, during a round, the board and the time left.
+     * Must be called on the game's loop, with the connection already served by it.
+     *
+     * @param connection the spectator's connection
+     */
+    void watch(Connection connection) {
+        if (over) { //finished on the way
+            ByteBuffer message = connection.startFrame(BoggleProtocol.ERROR, BoggleProtocol.MAX_STRING + 1);
+            BoggleProtocol.putString(message, "No such room");
+            connection.endFrame();
+            connection.finish();
+            return;
         }
 
-        for (int i = 0; i < players.length; i++) {
-            players[i].gameOver();
-        } //notify players of end of game
+        int length = 1 + 8 + 4 + 2;
+        for (Player player : players) {
+            length += BoggleProtocol.stringSize(nameOf(player));
+        }
+        ByteBuffer message = connection.startFrame(BoggleProtocol.WATCHING, length);
+        message.put((byte) connection.getVersion());
+        message.putLong(id);
+        message.putInt(round);
+        message.putShort((short) players.length);
+        for (Player player : players) {
+            BoggleProtocol.putString(message, nameOf(player));
+        }
+        connection.endFrame();
+
+        if (timing) {
+            long left = ROUND_TIME - (System.nanoTime() - roundStarted) / 1000000;
+            connection.sendShared(Broadcast.round(board.getSize(), board.getLetters(), Math.max(0, left)));
+        }
+        spectators.add(connection);
     }
 
     /**
-     * Gets a string containing the names and the total points achieved by the players this round, in compliance with the protocol, which is:
-     * number of players with the highest score, name and points of winner(s), names and points of everyone else
+     * Gets a player's name for spectators, who may arrive before every player has sent one
      *
-     * @return the string with the winners and points
-     */
-    private String getAllPoints() {
-        String pointsStr = "";
-
-        ArrayList<Integer> winners = new ArrayList<>(); //to hold the indexes of the winner (or winners in the event of a tie)
-
-        winners.add(0);
-        int maxInd = 0;
-        for (int i = 1; i < players.length; i++) {
-            int max = players[maxInd].getPoints();
-            int current = players[i].getPoints();
-            if (current > max) //found new max
-            {
-                winners.clear(); //remove stored indexes
-                winners.add(i);
-                maxInd = i;
-            } else if (max == current) //same score
-            {
-                winners.add(i); //there is a tie
-            }
+     * @param player the player
+     * @return the name, or an empty string
+     */
+    private static String nameOf(Player player) {
+        return player.getName() == null ? "" : player.getName();
+    }
+
+    /**
+     * Takes a new board, already solved, and sends it to the players
+     */
+    private void newRound() {
+        long start = System.nanoTime();
+        board = boards.take();
+        solution = board.getSolution();
+        round++;
+
+        waiting = players.length;
+        startClock();
+        for (int i = 0; i < players.length; i++) {
+            players[i].newRound(board.getSize(), board.getLetters(), ROUND_TIME, solution);
+        } //notify the players of a new game and send the board
+        spectators.send(Broadcast.round(board.getSize(), board.getLetters(), ROUND_TIME));
+
+        started = System.nanoTime();
+        ServerMetrics.get().newRound(start);
+    }
+
+    /**
+     * Starts timing the round, replacing the last deadline
+     */
+    private void startClock() {
+        if (deadline != null) {
+            deadline.cancel();
         }
+        timing = true;
+        roundStarted = System.nanoTime();
+        deadline = loop.schedule(ROUND_TIME, new Runnable() {
+            @Override
+            public void run() {
+                timeUp();
+            }
+        });
+    }
 
-        int numWinners = winners.size(); //number of winners with highest score
+    /**
+     * Ends the round's time, and gives the players a little longer to send the words they haven't sent yet
+     */
+    private void timeUp() {
+        deadline = loop.schedule(SUBMIT_TIMEOUT, new Runnable() {
+            @Override
+            public void run() {
+                closeSubmissions();
+            }
+        });
+        timing = false;
+        for (int i = 0; i < players.length; i++) {
+            players[i].timeUp();
+        }
+        spectators.send(Broadcast.empty(BoggleProtocol.TIME_UP));
+    }
 
-        pointsStr += winners.size(); //add the number to the return string
+    /**
+     * Scores the round without the players who haven't sent their last words in time. They keep their connections
+     * and the words that have arrived.
+     */
+    private void closeSubmissions() {
+        List<Player> late = new ArrayList<>();
+        for (Player player : players) {
+            if (player.isAnswering()) {
+                late.add(player);
+            }
+        }
 
-        for (int i = 0; i < numWinners; i++) //first add the names and scores of winners
-        {
-            pointsStr += " " + players[winners.get(i)].getName() + " " + players[winners.get(i)].getPoints();
+        for (Player player : late) {
+            player.closeSubmissions();
         }
+    }
 
-        for (int i = 0; i < players.length; i++) //now for everyone else
-        {
-            if (!winners.contains(i)) //don't count the winners again
-            {
-                pointsStr += " " + players[i].getName() + " " + players[i].getPoints();
+    /**
+     * Scores the round once all the words are in and sends everyone the results. Each player's words are a bit for
+     * each word on the board, so the words found more than once are found 64 at a time.
+     */
+    private void endRound() {
+        ServerMetrics metrics = ServerMetrics.get();
+        metrics.retrieveWords(started);
+
+        long start = System.nanoTime();
+        int longs = (solution.size() + 63) >>> 6;
+        long[] seen = new long[longs]; //found by anyone
+        long[] duplicates = new long[longs]; //found by more than one player
+        for (Player player : players) {
+            long[] found = player.getFound();
+            for (int i = 0; i < longs; i++) {
+                duplicates[i] |= seen[i] & found[i];
+                seen[i] |= found[i];
             }
         }
 
-        return pointsStr; //return the final string
+        for (int i = 0; i < players.length; i++) {
+            players[i].calculatePoints(duplicates);
+        } //each player calculates their points
+        metrics.scoring(start);
+
+        start = System.nanoTime();
+        timing = false; //every player may have sent their words before the time was up
+        playing = true;
+        waiting = players.length;
+        setDeadline(CONFIRM_TIMEOUT);
+        Standings standings = getStandings();
+        for (int i = 0; i < players.length; i++) {
+            players[i].sendResults(standings);
+        } //send all players everyone's points
+        spectators.send(Broadcast.results(standings));
+
+        record();
+        journal.record(id, round, board, players, standings);
+        started = System.nanoTime();
+        metrics.sendResults(start);
+        metrics.roundCompleted();
     }
 
     /**
-     * Removes words from all players if they were guessed by another opponent.
+     * Hands the players' results for the round to the score store, which writes them on its own thread
      */
-    private void removeDuplicates() {
-        Set<String> allWords = new HashSet<>();
-        Set<String> duplicateWords = new HashSet<>();  //found in more than one player
+    private void record() {
+        int best = 0;
+        for (Player player : players) {
+            best = Math.max(best, player.getRoundPoints());
+        }
+        for (Player player : players) {
+            if (player.playedRound()) {
+                scores.record(player.getName(), player.getRoundPoints(), best > 0 && player.getRoundPoints() == best);
+            }
+        }
+    }
 
+    /**
+     * Starts the deadline for the players to answer, replacing the last one
+     *
+     * @param timeout the time allowed in milliseconds
+     */
+    private void setDeadline(long timeout) {
+        if (deadline != null) {
+            deadline.cancel();
+        }
+        deadline = loop.schedule(timeout, new Runnable() {
+            @Override
+            public void run() {
+                dropLatePlayers();
+            }
+        });
+    }
+
+    /**
+     * Drops the players who haven't answered in time, which lets the game move on without them
+     */
+    private void dropLatePlayers() {
+        List<Player> late = new ArrayList<>();
         for (Player player : players) {
-            Set<String> playerWords = player.getWords();
-            for (String word : playerWords) {
-                if (!allWords.add(word)) {  //word was guessed by someone else
-                    duplicateWords.add(word);
-                }
+            if (player.isAnswering()) {
+                late.add(player);
             }
         }
 
+        for (Player player : late) {
+            player.drop();
+        }
+    }
+
+    /**
+     * Gets the players in the order their points are announced, in compliance with the protocol, which is:
+     * winner(s) with the highest score, then everyone else
+     *
+     * @return the standings
+     */
+    private Standings getStandings() {
+        int max = 0;
         for (Player player : players) {
-            player.removeWords(duplicateWords);
+            max = Math.max(max, player.getPoints());
         }
+
+        Player[] order = new Player[players.length];
+        int winners = 0;
+        for (Player player : players) //first the winners with the highest score
+        {
+            if (player.getPoints() == max) {
+                order[winners++] = player;
+            }
+        }
+
+        int place = winners;
+        for (Player player : players) //now for everyone else
+        {
+            if (player.getPoints() != max) {
+                order[place++] = player;
+            }
+        }
+
+        return new Standings(order, winners);
     }
 
 }
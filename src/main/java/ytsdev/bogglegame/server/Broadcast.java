@@ -0,0 +1,176 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Broadcast class. Sends a room's spectators what its players see. Each message is encoded once, into a buffer
+ * that every spectator sends from without copying it, so watching costs the room the same however many are watching.
+ * <p>
+ * A spectator never holds up the room: one that has more than {@link #MAX_PENDING} bytes waiting to be sent when the
+ * next message is ready is disconnected. A spectator that leaves stays in the list until the next message, which takes
+ * out everyone who has left as it goes, so leaving never searches the list. All its methods must be called on the
+ * room's event loop.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class Broadcast {
+    private static final int MAX_PENDING = 64 * 1024;
+    private static final int HEADER = 4; //the frame length
+
+    private final List<Connection> spectators = new ArrayList<>();
+    private int left; //spectators still in the list who have closed
+
+    /**
+     * Adds a spectator, who is sent the messages from now on
+     *
+     * @param connection the spectator's connection, served by the room's event loop
+     */
+    void add(final Connection connection) {
+        spectators.add(connection);
+        connection.setHandler(new Connection.Handler() {
+            @Override
+            public void onLine(String line) {
+                //spectators have nothing to say
+            }
+
+            @Override
+            public void onFrame(int type, ByteBuffer payload) {
+                //spectators have nothing to say
+            }
+
+            @Override
+            public void onClose() {
+                left++; //taken out by the next message
+            }
+        });
+    }
+
+    /**
+     * Gets the number of spectators
+     *
+     * @return the number of spectators
+     */
+    int size() {
+        return spectators.size() - left;
+    }
+
+    /**
+     * Encodes the start of a round
+     *
+     * @param size  the number of rows and columns on the board
+     * @param board the board letters, row by row
+     * @param time  how long is left of the round in milliseconds
+     * @return the frame, ready to be sent
+     */
+    static ByteBuffer round(int size, String board, long time) {
+        ByteBuffer frame = startFrame(BoggleProtocol.ROUND, 1 + board.length() + 4);
+        frame.put((byte) size);
+        for (int i = 0; i < board.length(); i++) {
+            frame.put((byte) board.charAt(i));
+        }
+        frame.putInt((int) time);
+        return endFrame(frame);
+    }
+
+    /**
+     * Encodes the results of a round, as the players are sent them, with no words of the spectator's own
+     *
+     * @param standings everyone's points
+     * @return the frame, ready to be sent
+     */
+    static ByteBuffer results(Standings standings) {
+        int length = 2 + 2 + 2;
+        for (int i = 0; i < standings.size(); i++) {
+            length += BoggleProtocol.stringSize(standings.get(i).getName()) + 4;
+        }
+
+        ByteBuffer frame = startFrame(BoggleProtocol.RESULTS, length);
+        frame.putShort((short) 0);
+        frame.putShort((short) standings.getWinners());
+        frame.putShort((short) standings.size());
+        for (int i = 0; i < standings.size(); i++) {
+            Player player = standings.get(i);
+            BoggleProtocol.putString(frame, player.getName());
+            frame.putInt(player.getPoints());
+        }
+        return endFrame(frame);
+    }
+
+    /**
+     * Encodes a message with nothing in it but its type
+     *
+     * @param type the message type
+     * @return the frame, ready to be sent
+     */
+    static ByteBuffer empty(int type) {
+        return endFrame(startFrame(type, 0));
+    }
+
+    /**
+     * Starts a frame in a buffer of its own, which must be followed by {@link #endFrame(ByteBuffer)}
+     *
+     * @param type       the message type
+     * @param maxPayload the most bytes the message will take
+     * @return the buffer to put the message in
+     */
+    private static ByteBuffer startFrame(int type, int maxPayload) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(HEADER + 1 + maxPayload);
+        frame.putInt(0); //filled in when the frame ends
+        frame.put((byte) type);
+        return frame;
+    }
+
+    /**
+     * Fills in the length of a frame, now the message is in it, and readies it to be sent
+     *
+     * @param frame the frame
+     * @return the frame
+     */
+    private static ByteBuffer endFrame(ByteBuffer frame) {
+        frame.putInt(0, frame.position() - HEADER);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Sends a frame to every spectator who is keeping up, and disconnects the ones who aren't
+     *
+     * @param frame the frame, which must not be changed afterwards
+     */
+    void send(ByteBuffer frame) {
+        int kept = 0;
+        for (int i = 0; i < spectators.size(); i++) {
+            Connection spectator = spectators.get(i);
+            if (spectator.isClosed()) {
+                continue;
+            }
+            if (spectator.getPendingBytes() > MAX_PENDING) {
+                spectator.close();
+            } else {
+                spectator.sendShared(frame); //which closes the connection if the socket has failed
+            }
+            if (!spectator.isClosed()) {
+                spectators.set(kept++, spectator);
+            }
+        }
+        spectators.subList(kept, spectators.size()).clear();
+        left = 0;
+    }
+
+    /**
+     * Sends a frame to every spectator, and disconnects them once it has been sent
+     *
+     * @param frame the frame, which must not be changed afterwards
+     */
+    void finish(ByteBuffer frame) {
+        send(frame);
+        for (int i = 0; i < spectators.size(); i++) { //closing only counts, so the list doesn't change
+            spectators.get(i).finish();
+        }
+    }
+}
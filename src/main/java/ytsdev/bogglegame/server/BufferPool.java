@@ -0,0 +1,60 @@
+package ytsdev.bogglegame.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The BufferPool class. Keeps direct buffers for reuse so that connections only hold a buffer while they have data
+ * waiting to be sent. A pool belongs to one event loop and is not thread-safe.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free;
+
+    /**
+     * Creates an empty pool
+     *
+     * @param bufferSize the size of each buffer in bytes
+     * @param maxPooled  the most buffers to keep when they are not in use
+     */
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.free = new ArrayDeque<>();
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, or creates one if the pool is empty. Buffers bigger than the pool's size
+     * are created just for the caller and are not kept when released.
+     *
+     * @param minSize the fewest bytes the buffer must hold
+     * @return the buffer
+     */
+    ByteBuffer acquire(int minSize) {
+        if (minSize > bufferSize) {
+            return ByteBuffer.allocateDirect(minSize);
+        }
+
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool
+     *
+     * @param buffer the buffer, which must not be used again by the caller
+     */
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (buffer.capacity() == bufferSize && free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+}
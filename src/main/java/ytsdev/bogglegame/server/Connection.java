@@ -0,0 +1,545 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The Connection class. A non-blocking socket that speaks either the old text protocol, one line at a time as the
+ * Scanner and PrintWriter clients do, or the framed binary protocol described in {@link BoggleProtocol}. Which one is
+ * decided by the first byte the client sends.
+ * <p>
+ * All its methods must be called on the thread of the event loop that owns it. A connection can be moved to another
+ * event loop, such as from the lobby to the loop running its game.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class Connection implements EventLoop.Endpoint {
+    private static final int MAX_LINE = 64 * 1024; //longer lines are not from a boggle client
+    private static final int HEADER = 4; //the frame length
+
+    /**
+     * Receives the messages sent by the other side of a connection
+     */
+    interface Handler {
+        /**
+         * Called for each line received from a text client, without the line ending
+         *
+         * @param line the line
+         */
+        void onLine(String line);
+
+        /**
+         * Called for each frame received from a binary client. The message is only valid until this returns.
+         *
+         * @param type    the message type
+         * @param payload the message
+         */
+        void onFrame(int type, ByteBuffer payload);
+
+        /**
+         * Called once when the connection is closed, by either side
+         */
+        void onClose();
+    }
+
+    /**
+     * Which protocol the client speaks
+     */
+    private enum Mode {
+        UNKNOWN, //nothing received yet
+        TEXT,
+        BINARY
+    }
+
+    private final SocketChannel channel;
+    private BufferPool pool;
+    private ByteBuffer readBuffer;
+    private final ArrayDeque<ByteBuffer> outgoing; //buffers waiting to be sent, each ready to be filled, except the
+                                                   //read-only views of shared frames, which are ready to be sent
+    private SelectionKey key;
+    private Handler handler;
+    private Mode mode;
+    private int version; //the protocol version agreed with a binary client
+
+    private byte[] line; //the part of a line received so far, only needed while a line is split across reads
+    private int lineLength;
+    private int magicSeen; //the number of magic bytes read so far
+    private ByteBuffer frame; //the part of a frame received so far, only needed while a frame is split across reads
+    private ByteBuffer leftover; //data received before the connection moved to another loop
+    private int frameStart; //where the frame being written starts in the last outgoing buffer
+    private boolean closed;
+    private boolean inRoom; //counted as a connected player, until it closes
+    private boolean finishing; //close once everything waiting has been sent
+
+    /**
+     * Creates a connection for a socket, which is served once it is attached to an event loop
+     *
+     * @param channel the socket
+     */
+    Connection(SocketChannel channel) {
+        this.channel = channel;
+        this.outgoing = new ArrayDeque<>();
+        this.mode = Mode.UNKNOWN;
+    }
+
+    /**
+     * Starts being served by an event loop
+     *
+     * @param key        the socket's registration with the loop's selector
+     * @param pool       the loop's pool to take send buffers from
+     * @param readBuffer the loop's buffer to read into
+     */
+    void attach(SelectionKey key, BufferPool pool, ByteBuffer readBuffer) {
+        this.key = key;
+        this.pool = pool;
+        this.readBuffer = readBuffer;
+        if (!outgoing.isEmpty()) {
+            flush();
+        }
+        if (leftover != null) {
+            ByteBuffer data = leftover;
+            leftover = null;
+            process(data);
+        }
+    }
+
+    /**
+     * Stops being served by the current event loop, so that it can be attached to another one
+     */
+    void detach() {
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+    }
+
+    /**
+     * Gets the socket
+     *
+     * @return the socket
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sets who receives the messages from this connection
+     *
+     * @param handler the handler
+     */
+    void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Determines whether the client speaks the binary protocol
+     *
+     * @return true for a binary client, false for a text client
+     */
+    boolean isBinary() {
+        return mode == Mode.BINARY;
+    }
+
+    /**
+     * Gets the protocol version agreed with a binary client in its handshake
+     *
+     * @return the version, or 0 before the handshake
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the protocol version agreed with a binary client
+     *
+     * @param version the version
+     */
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Counts the connection as a connected player, now it has a place in a room. Spectators and clients that never get
+     * past the handshake aren't counted, so the count only falls to 0 once every game has finished.
+     */
+    void joinedRoom() {
+        if (!closed && !inRoom) {
+            inRoom = true;
+            ServerMetrics.get().playerConnected();
+        }
+    }
+
+    /**
+     * Determines whether the connection has been closed
+     *
+     * @return true if closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sends a line to a text client, followed by a line ending. The line is sent as soon as the socket can take it.
+     *
+     * @param message the line
+     */
+    void send(String message) {
+        if (closed) {
+            return;
+        }
+
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ByteBuffer last = outgoing.peekLast();
+            if (last == null || last.isReadOnly() || !last.hasRemaining()) {
+                last = pool.acquire(0);
+                outgoing.addLast(last);
+            }
+            int count = Math.min(last.remaining(), bytes.length - offset);
+            last.put(bytes, offset, count);
+            offset += count;
+        }
+
+        flush();
+    }
+
+    /**
+     * Starts a frame to a binary client. The message is written straight into the buffer that will be sent, which
+     * must be followed by {@link #endFrame()}.
+     *
+     * @param type       the message type
+     * @param maxPayload the most bytes the message will take
+     * @return the buffer to put the message in
+     */
+    ByteBuffer startFrame(int type, int maxPayload) {
+        int needed = HEADER + 1 + maxPayload;
+        ByteBuffer last = outgoing.peekLast();
+        if (last == null || last.isReadOnly() || last.remaining() < needed) {
+            last = pool.acquire(needed);
+            outgoing.addLast(last);
+        }
+
+        frameStart = last.position();
+        last.putInt(0); //filled in when the frame ends
+        last.put((byte) type);
+        return last;
+    }
+
+    /**
+     * Finishes the frame started by {@link #startFrame(int, int)} and sends it
+     */
+    void endFrame() {
+        ByteBuffer last = outgoing.peekLast();
+        last.putInt(frameStart, last.position() - frameStart - HEADER);
+
+        if (closed) { //nothing more will be sent
+            outgoing.pollLast();
+            pool.release(last);
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * Sends a frame to a binary client that was encoded once for several connections. The frame's bytes are not
+     * copied: the connection keeps a read-only view of them until they are sent, so they must never be changed.
+     *
+     * @param frame the whole frame, ready to be sent
+     */
+    void sendShared(ByteBuffer frame) {
+        if (closed) {
+            return;
+        }
+        outgoing.addLast(frame.asReadOnlyBuffer());
+        flush();
+    }
+
+    /**
+     * Gets how much is waiting to be sent, because the client is reading more slowly than it is sent to
+     *
+     * @return the number of bytes
+     */
+    int getPendingBytes() {
+        int pending = 0;
+        for (ByteBuffer buffer : outgoing) {
+            pending += buffer.isReadOnly() ? buffer.remaining() : buffer.position();
+        }
+        return pending;
+    }
+
+    /**
+     * Sends a frame with no message to a binary client
+     *
+     * @param type the message type
+     */
+    void sendFrame(int type) {
+        startFrame(type, 0);
+        endFrame();
+    }
+
+    /**
+     * Sends waiting data and reads what has arrived, as the socket is ready to
+     *
+     * @param key the socket's registration
+     */
+    @Override
+    public void ready(SelectionKey key) {
+        if (key.isValid() && key.isWritable()) {
+            flush();
+        }
+        if (key.isValid() && key.isReadable()) {
+            read();
+        }
+    }
+
+    /**
+     * Writes as much waiting data as the socket will take, and asks to be told when it can take more
+     */
+    void flush() {
+        if (key == null) { //between event loops, sent once attached
+            return;
+        }
+        try {
+            while (!outgoing.isEmpty()) {
+                ByteBuffer buffer = outgoing.peekFirst();
+                boolean shared = buffer.isReadOnly();
+                if (!shared) {
+                    buffer.flip();
+                }
+                channel.write(buffer);
+                if (buffer.hasRemaining()) { //the socket is full
+                    if (!shared) {
+                        buffer.compact();
+                    }
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outgoing.pollFirst();
+                if (!shared) {
+                    pool.release(buffer);
+                }
+            }
+            if (finishing) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Reads what the socket has received and passes each complete message to the handler
+     */
+    void read() {
+        int count;
+        readBuffer.clear();
+        try {
+            count = channel.read(readBuffer);
+        } catch (IOException e) {
+            count = -1;
+        }
+        if (count == -1) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        process(readBuffer);
+    }
+
+    /**
+     * Passes each complete message in the data to the handler, keeping any incomplete one for later
+     *
+     * @param data the data received
+     */
+    private void process(ByteBuffer data) {
+        if (mode == Mode.UNKNOWN && data.hasRemaining()) {
+            mode = data.get(data.position()) == BoggleProtocol.MAGIC[0] ? Mode.BINARY : Mode.TEXT;
+        }
+
+        while (data.hasRemaining() && !closed) {
+            if (key == null) { //moved off this loop by the handler, finish on the next one
+                leftover = ByteBuffer.allocate(data.remaining());
+                leftover.put(data);
+                leftover.flip();
+                return;
+            }
+
+            if (mode == Mode.TEXT) {
+                readLine(data);
+            } else {
+                readFrame(data);
+            }
+        }
+    }
+
+    /**
+     * Reads up to the end of a line, and passes the line on if it is complete
+     *
+     * @param data the data received
+     */
+    private void readLine(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            if (b == '\n') {
+                String message = new String(line == null ? new byte[0] : line, 0, lineLength, StandardCharsets.UTF_8);
+                lineLength = 0;
+                if (line != null && line.length > 256) {
+                    line = null; //don't keep a big buffer for an idle connection
+                }
+                handler.onLine(message);
+                return;
+            } else if (b != '\r') {
+                if (line == null) {
+                    line = new byte[64];
+                } else if (lineLength == line.length) {
+                    if (line.length >= MAX_LINE) {
+                        close();
+                        return;
+                    }
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame, and passes it on if it is complete. A frame that arrived whole is passed on as a view of
+     * the data, without copying it.
+     *
+     * @param data the data received
+     */
+    private void readFrame(ByteBuffer data) {
+        byte[] magic = BoggleProtocol.MAGIC;
+        while (magicSeen < magic.length) {
+            if (!data.hasRemaining()) {
+                return;
+            }
+            if (data.get() != magic[magicSeen++]) {
+                close();
+                return;
+            }
+        }
+
+        if (frame == null) {
+            if (data.remaining() >= HEADER) {
+                int length = data.getInt(data.position());
+                if (length < 1 || length > BoggleProtocol.MAX_FRAME) {
+                    close();
+                    return;
+                }
+                if (data.remaining() >= HEADER + length) { //the whole frame is here
+                    int start = data.position() + HEADER;
+                    ByteBuffer message = data.duplicate();
+                    message.limit(start + length);
+                    message.position(start);
+                    data.position(start + length);
+                    deliver(message);
+                    return;
+                }
+                frame = ByteBuffer.allocate(HEADER + length);
+            } else {
+                frame = ByteBuffer.allocate(HEADER); //just the length for now
+            }
+        }
+
+        //copy as much of the frame as has arrived
+        int count = Math.min(frame.remaining(), data.remaining());
+        ByteBuffer part = data.duplicate();
+        part.limit(part.position() + count);
+        frame.put(part);
+        data.position(data.position() + count);
+
+        if (!frame.hasRemaining()) {
+            if (frame.capacity() == HEADER) { //now the length is known
+                int length = frame.getInt(0);
+                if (length < 1 || length > BoggleProtocol.MAX_FRAME) {
+                    close();
+                    return;
+                }
+                frame = ByteBuffer.allocate(HEADER + length);
+                frame.putInt(length);
+            } else {
+                ByteBuffer message = frame;
+                frame = null;
+                message.flip();
+                message.position(HEADER);
+                deliver(message);
+            }
+        }
+    }
+
+    /**
+     * Passes a complete frame to the handler
+     *
+     * @param message the frame after its length
+     */
+    private void deliver(ByteBuffer message) {
+        int type = message.get() & 0xFF;
+        try {
+            handler.onFrame(type, message);
+        } catch (RuntimeException e) { //a message too short for its type
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection and tells the handler. Closing more than once does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (inRoom) {
+            ServerMetrics.get().playerDisconnected();
+        }
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (pool != null) {
+            for (ByteBuffer buffer : outgoing) {
+                if (!buffer.isReadOnly()) { //shared frames belong to no pool
+                    pool.release(buffer);
+                }
+            }
+        }
+        outgoing.clear();
+
+        if (handler != null) {
+            handler.onClose();
+        }
+    }
+
+    /**
+     * Closes the connection once all the data waiting to be sent has been sent
+     */
+    void finish() {
+        if (closed) {
+            return;
+        }
+        finishing = true;
+        flush();
+    }
+}
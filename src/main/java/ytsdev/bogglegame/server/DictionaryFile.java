@@ -0,0 +1,90 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+
+/**
+ * The DictionaryFile class. The server's dictionary as it is handed out to clients that don't have it cached, see
+ * {@link BoggleProtocol#DICTIONARY}. The file is hashed and deflated once when the server starts, and cut into the
+ * frames that are sent, so every client is sent the same bytes without their being copied.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class DictionaryFile {
+    private static final int CHUNK = 8000; //of the file in each frame
+    private static final int HEADER = 4 + 1; //the frame length and the type
+
+    private final byte[] hash;
+    private final int size;
+    private final ByteBuffer frames; //every piece of the file, then the empty frame that ends it
+
+    /**
+     * Reads, hashes and deflates a dictionary file
+     *
+     * @param filename the dictionary file, as opened by {@link BoggleDictionary#map(String)}
+     * @throws java.io.IOException if the file cannot be read
+     */
+    public DictionaryFile(String filename) throws IOException {
+        byte[] file = Files.readAllBytes(Paths.get(filename));
+        hash = BoggleDictionary.contentHash(file);
+        size = file.length;
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(file);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(file.length / 2);
+        byte[] buffer = new byte[1 << 16];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        byte[] all = compressed.toByteArray();
+        int pieces = (all.length + CHUNK - 1) / CHUNK;
+        frames = ByteBuffer.allocateDirect(all.length + (pieces + 1) * HEADER);
+        for (int start = 0; start < all.length; start += CHUNK) {
+            int length = Math.min(CHUNK, all.length - start);
+            frames.putInt(1 + length);
+            frames.put((byte) BoggleProtocol.DICTIONARY);
+            frames.put(all, start, length);
+        }
+        frames.putInt(1);
+        frames.put((byte) BoggleProtocol.DICTIONARY);
+        frames.flip();
+    }
+
+    /**
+     * Gets the SHA-256 of the file, which the clients cache it by
+     *
+     * @return the hash
+     */
+    byte[] getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the size of the file before it was deflated
+     *
+     * @return the size in bytes
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Sends the file to a client, followed by an empty frame to end it. Must be called on the connection's loop.
+     *
+     * @param connection the client
+     */
+    void send(Connection connection) {
+        connection.sendShared(frames);
+    }
+}
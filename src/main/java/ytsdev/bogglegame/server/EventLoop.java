@@ -0,0 +1,170 @@
+package ytsdev.bogglegame.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The EventLoop class. One thread that serves many connections with a selector, reading and writing only when a
+ * socket is ready. Every game is run by a single loop, so a game's players are only ever touched by that loop's
+ * thread. Other threads hand work to the loop with {@link #execute(Runnable)}, and timed work is run on the loop with
+ * {@link #schedule(long, Runnable)}, which keeps the timeouts of all the loop's games on one {@link TimerWheel}.
+ * Most sockets are {@link Connection}s, but anything that can be told its socket is ready can be served, see
+ * {@link Endpoint}.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class EventLoop implements Runnable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOLED_BUFFERS = 1024;
+    private static final long TICK = 10; //how precisely timeouts run, in milliseconds
+    private static final int TICKS = 1024; //slots in the timer wheel, about ten seconds a turn
+
+    /**
+     * Something with a socket served by a loop
+     */
+    interface Endpoint {
+        /**
+         * Called on the loop's thread when the socket is ready for what was asked
+         *
+         * @param key the socket's registration, with the operations that are ready
+         */
+        void ready(SelectionKey key);
+
+        /**
+         * Called on the loop's thread if serving the socket failed
+         */
+        void close();
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final BufferPool pool;
+    private final ByteBuffer readBuffer; //shared by every connection, since reads are never interleaved
+    private final TimerWheel timeouts;
+
+    /**
+     * Creates an event loop. It does nothing until it is run by a thread.
+     *
+     * @throws java.io.IOException
+     */
+    public EventLoop() throws IOException {
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>();
+        pool = new BufferPool(BUFFER_SIZE, POOLED_BUFFERS);
+        readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        timeouts = new TimerWheel(TICK, TICKS, System.currentTimeMillis());
+    }
+
+    /**
+     * Runs a task on this loop's thread
+     *
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs a task on this loop's thread after a delay. Must be called on this loop's thread.
+     *
+     * @param delay the delay in milliseconds
+     * @param task  the task
+     * @return the timeout, which can be used to cancel the task
+     */
+    public Timeout schedule(long delay, Runnable task) {
+        Timeout timeout = new Timeout(System.currentTimeMillis() + delay, task);
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Starts serving a connected socket. Must be called on this loop's thread.
+     *
+     * @param channel the socket
+     * @return the connection
+     * @throws java.io.IOException
+     */
+    Connection register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        adopt(connection);
+        return connection;
+    }
+
+    /**
+     * Starts serving a connection that was detached from another loop. Must be called on this loop's thread.
+     *
+     * @param connection the connection
+     * @throws java.io.IOException
+     */
+    void adopt(Connection connection) throws IOException {
+        SelectionKey old = connection.getChannel().keyFor(selector);
+        if (old != null && !old.isValid()) { //back on a loop it was on, such as its handshake's, and still cancelling
+            selector.selectNow();
+        }
+        SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+        connection.attach(key, pool, readBuffer);
+    }
+
+    /**
+     * Starts serving a socket that isn't a connection. Must be called on this loop's thread.
+     *
+     * @param channel  the socket, which must not block
+     * @param ops      the operations to wait for
+     * @param endpoint what to tell when the socket is ready
+     * @return the socket's registration
+     * @throws java.io.IOException
+     */
+    SelectionKey watch(SelectableChannel channel, int ops, Endpoint endpoint) throws IOException {
+        return channel.register(selector, ops, endpoint);
+    }
+
+    /**
+     * Waits for sockets to be ready and serves them, and runs the tasks handed to this loop
+     */
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select(timeouts.untilNext(System.currentTimeMillis()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            timeouts.expire(System.currentTimeMillis());
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); //one broken game must not stop the others
+                }
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                Endpoint endpoint = (Endpoint) key.attachment();
+                try {
+                    endpoint.ready(key);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    endpoint.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ytsdev.bogglegame.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class. Counts how long something takes in buckets that grow with the time, like an HDR
+ * histogram: every power of two is split into 16 buckets, so any time is placed to within about 6%. Times are kept in
+ * microseconds, up to about 12 days.
+ * <p>
+ * Each bucket is a striped counter, so threads recording at once don't fight over it, and recording never allocates.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4; //16 buckets for each power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40; //longer times go in the last bucket
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets;
+    private final LongAdder total; //microseconds, for the mean
+
+    public LatencyHistogram() {
+        buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        total = new LongAdder();
+    }
+
+    /**
+     * Records how long something took
+     *
+     * @param nanos the time in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets[bucket(micros)].increment();
+        total.add(micros);
+    }
+
+    /**
+     * Records how long something took since it started
+     *
+     * @param start when it started, from {@link System#nanoTime()}
+     */
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the bucket for a time. Small times have a bucket each, and larger ones share a bucket with the times that
+     * have the same top five bits.
+     *
+     * @param micros the time in microseconds
+     * @return the bucket
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros); //the highest bit, at least SUB_BITS
+        if (magnitude >= MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((magnitude - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    /**
+     * Gets the longest time that goes in a bucket
+     *
+     * @param bucket the bucket
+     * @return the time in microseconds
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        long sub = bucket & (SUB_BUCKETS - 1);
+        long width = 1L << (magnitude - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (magnitude - SUB_BITS)) + width - 1;
+    }
+
+    /**
+     * Gets the count, mean and percentiles recorded so far. Times recorded while it is being read may or may not be
+     * included.
+     *
+     * @return the summary
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        long max = 0;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                max = highest(i);
+                break;
+            }
+        }
+
+        double mean = count == 0 ? 0 : (double) total.sum() / count;
+        return new LatencySnapshot(count, mean, percentile(counts, count, 0.5), percentile(counts, count, 0.9),
+                percentile(counts, count, 0.99), percentile(counts, count, 0.999), max);
+    }
+
+    /**
+     * Gets the time that a share of the recorded times are no longer than
+     *
+     * @param counts   the count in each bucket
+     * @param count    the total count
+     * @param fraction the share, from 0 to 1
+     * @return the time in microseconds, or 0 if nothing was recorded
+     */
+    private static long percentile(long[] counts, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highest(i);
+            }
+        }
+        return highest(counts.length - 1);
+    }
+}
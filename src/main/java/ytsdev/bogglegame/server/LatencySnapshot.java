@@ -0,0 +1,91 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The LatencySnapshot class. A summary of the times in a latency histogram when it was read, shown as one attribute
+ * in a JMX console.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Gets the number of times recorded
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean time
+     *
+     * @return the time in microseconds
+     */
+    public double getMeanMicros() {
+        return mean;
+    }
+
+    /**
+     * Gets the median time
+     *
+     * @return the time in microseconds
+     */
+    public long getP50Micros() {
+        return p50;
+    }
+
+    /**
+     * Gets the time 90% of the times are no longer than
+     *
+     * @return the time in microseconds
+     */
+    public long getP90Micros() {
+        return p90;
+    }
+
+    /**
+     * Gets the time 99% of the times are no longer than
+     *
+     * @return the time in microseconds
+     */
+    public long getP99Micros() {
+        return p99;
+    }
+
+    /**
+     * Gets the time 99.9% of the times are no longer than
+     *
+     * @return the time in microseconds
+     */
+    public long getP999Micros() {
+        return p999;
+    }
+
+    /**
+     * Gets the longest time
+     *
+     * @return the time in microseconds
+     */
+    public long getMaxMicros() {
+        return max;
+    }
+}
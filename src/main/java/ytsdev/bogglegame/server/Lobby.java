@@ -0,0 +1,573 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Lobby class. Holds connected players until there are enough of them for a game.
+ * A text client asks for a room size by sending "ROOM" and the number of players as its first line, or "ROOM 0" for
+ * the server's default, and a binary client asks in its handshake. Players are queued by the size they asked for, and
+ * a room starts as soon as it is full, or when its fill timeout passes with at least two players waiting.
+ * <p>
+ * A text client that sends any other first line is given the default room at once. Text clients written before room
+ * sizes send nothing until they are told the number of players, so they can't be told apart from a client that is
+ * still to ask: they are given the default room 2 seconds after connecting.
+ * <p>
+ * A new player's handshake is run on one of the game loops, taken in turn, and the player only comes to the lobby's
+ * own event loop once their room size is known, so a slow or silent client, or one being sent the dictionary, never
+ * holds up the players connecting after it. All the queues are kept on the lobby's loop, so they are never locked.
+ * Once a room is formed, its connections are moved to one of the game loops.
+ * <p>
+ * A binary client can ask to watch a room instead of playing, by its game id or the newest room, and is moved
+ * straight from its handshake to the loop running that room.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class Lobby implements LobbyMXBean {
+    public static final int MAX_ROOM_SIZE = 1000;
+    private static final int MIN_PLAYERS = 2; //the fewest players to start a room that isn't full
+    private static final long REQUEST_TIMEOUT = 2000; //clients that don't ask for a size get the default room, which
+                                                      //is how long text clients from before room sizes wait
+
+    private final EventLoop loop;
+    private final EventLoop[] gameLoops;
+    private final BoardSupply boards;
+    private final ScoreStore scores;
+    private final RoundJournal journal;
+    private final DictionaryFile dictionary;
+    private final int defaultPlayers;
+    private final long fillTimeout;
+
+    private final Map<Integer, Queue> queues;
+    private final ConcurrentNavigableMap<Long, BoggleThread> rooms; //the games being played, by id
+    private int nextLoop;
+    private final AtomicInteger nextHandshake = new AtomicInteger(); //the game loop for the next handshake
+    private boolean draining; //rooms start without waiting to fill
+
+    //read by other threads for monitoring
+    private final AtomicInteger handshaking = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong playersMatched = new AtomicLong();
+    private final AtomicLong roomsStarted = new AtomicLong();
+    private final AtomicLong totalWait = new AtomicLong();
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Creates a lobby
+     *
+     * @param loop           the event loop for the lobby, which must not also run games
+     * @param gameLoops      the event loops to run the games on
+     * @param boards         the boards to play, shared by all the games
+     * @param scores         where the players' results are kept, shared by all the games
+     * @param journal        where the rounds are recorded, shared by all the games
+     * @param dictionary     the dictionary handed out to binary clients that don't have it
+     * @param defaultPlayers the room size for players who don't ask for one
+     * @param fillTimeout    how long in milliseconds to wait for a room to fill before starting it anyway
+     */
+    public Lobby(EventLoop loop, EventLoop[] gameLoops, BoardSupply boards, ScoreStore scores, RoundJournal journal,
+                 DictionaryFile dictionary, int defaultPlayers, long fillTimeout) {
+        this.loop = loop;
+        this.gameLoops = gameLoops;
+        this.boards = boards;
+        this.scores = scores;
+        this.journal = journal;
+        this.dictionary = dictionary;
+        this.defaultPlayers = defaultPlayers;
+        this.fillTimeout = fillTimeout;
+        this.queues = new HashMap<>();
+        this.rooms = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Adds a newly connected player to the lobby, starting with their handshake on one of the game loops. Can be
+     * called from any thread, and never waits for the player.
+     *
+     * @param channel the player's socket
+     */
+    public void accept(final SocketChannel channel) {
+        final EventLoop handshakeLoop = gameLoops[Math.floorMod(nextHandshake.getAndIncrement(), gameLoops.length)];
+        handshaking.incrementAndGet(); //counted from now, so a drain never misses a player on the way to a loop
+        handshakeLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new Waiting(handshakeLoop.register(channel), handshakeLoop);
+                } catch (IOException e) {
+                    handshaking.decrementAndGet();
+                    e.printStackTrace();
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops waiting for rooms to fill: every player waiting is put in a room now, with however many others are
+     * waiting for the same size, and so is every player who asks for a room from then on. Used when the server is
+     * leaving a router, so no player is left waiting for players who won't come. Can be called from any thread.
+     */
+    public void drain() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                draining = true;
+                for (Queue queue : queues.values()) {
+                    if (queue.depth > 0) {
+                        startRoom(queue, Math.min(queue.depth, queue.players));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the number of players who have connected and not yet asked for a room, been refused or left. They are
+     * counted until they are queued, so a player is always in this count, the queue or the connected players.
+     *
+     * @return the number of players
+     */
+    @Override
+    public int getHandshakingPlayers() {
+        return handshaking.get();
+    }
+
+    /**
+     * Gets the number of players waiting for a room
+     *
+     * @return the number of players
+     */
+    @Override
+    public int getQueuedPlayers() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of players who have been placed in a room
+     *
+     * @return the number of players
+     */
+    @Override
+    public long getPlayersMatched() {
+        return playersMatched.get();
+    }
+
+    /**
+     * Gets the number of rooms started
+     *
+     * @return the number of rooms
+     */
+    @Override
+    public long getRoomsStarted() {
+        return roomsStarted.get();
+    }
+
+    /**
+     * Gets the average time players waited in the lobby before being placed in a room
+     *
+     * @return the time in milliseconds
+     */
+    @Override
+    public double getAverageWaitMillis() {
+        long matched = playersMatched.get();
+        return matched == 0 ? 0 : (double) totalWait.get() / matched;
+    }
+
+    /**
+     * Gets the longest time a player waited in the lobby before being placed in a room
+     *
+     * @return the time in milliseconds
+     */
+    @Override
+    public long getMaxWaitMillis() {
+        return maxWait.get();
+    }
+
+    /**
+     * Puts a player in the queue for a room size, and starts the room if it is now full
+     *
+     * @param player  the player
+     * @param players the room size
+     */
+    private void enqueue(Waiting player, int players) {
+        Queue queue = queues.get(players);
+        if (queue == null) {
+            queue = new Queue(players);
+            queues.put(players, queue);
+        }
+
+        player.queue = queue;
+        queue.waiting.addLast(player);
+        queue.depth++;
+        queued.incrementAndGet();
+
+        if (queue.depth >= players) {
+            startRoom(queue, players);
+        } else if (draining) {
+            startRoom(queue, queue.depth);
+        } else if (queue.fill == null) {
+            queue.startFillTimeout();
+        }
+    }
+
+    /**
+     * Takes players from the front of a queue and starts their game on one of the game loops
+     *
+     * @param queue   the queue
+     * @param players the number of players to take
+     */
+    private void startRoom(Queue queue, int players) {
+        final Connection[] connections = new Connection[players];
+        long now = System.currentTimeMillis();
+        int count = 0;
+        while (count < players) {
+            Waiting player = queue.waiting.pollFirst();
+            if (player.closed) { //left while waiting
+                continue;
+            }
+            player.matched = true;
+            player.connection.detach();
+            player.connection.joinedRoom(); //before leaving the queue, so the player is never in neither count
+            connections[count++] = player.connection;
+
+            long wait = now - player.since;
+            totalWait.addAndGet(wait);
+            long max;
+            while (wait > (max = maxWait.get()) && !maxWait.compareAndSet(max, wait)) {
+                //retry until the longest wait is recorded
+            }
+        }
+
+        queue.depth -= players;
+        queued.addAndGet(-players);
+        playersMatched.addAndGet(players);
+        roomsStarted.incrementAndGet();
+
+        if (queue.fill != null) {
+            queue.fill.cancel();
+            queue.fill = null;
+        }
+        if (queue.depth > 0) {
+            queue.startFillTimeout();
+        }
+
+        final EventLoop gameLoop = gameLoops[nextLoop];
+        nextLoop = (nextLoop + 1) % gameLoops.length;
+        gameLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                startGame(gameLoop, connections);
+            }
+        });
+    }
+
+    /**
+     * Starts a game with connections that have been moved from the lobby. Runs on the game's loop.
+     *
+     * @param gameLoop    the loop to run the game
+     * @param connections the players' connections
+     */
+    private void startGame(EventLoop gameLoop, Connection[] connections) {
+        for (Connection connection : connections) {
+            try {
+                gameLoop.adopt(connection);
+            } catch (IOException e) {
+                connection.close(); //the player left on the way, the game treats them as gone
+            }
+        }
+        new BoggleThread(gameLoop, connections, boards, scores, journal, rooms);
+    }
+
+    /**
+     * The players waiting for one room size
+     */
+    private class Queue {
+        private final int players;
+        private final ArrayDeque<Waiting> waiting; //may still hold players who left, they are skipped
+        private int depth; //the players waiting who haven't left
+        private Timeout fill;
+
+        Queue(int players) {
+            this.players = players;
+            this.waiting = new ArrayDeque<>();
+        }
+
+        /**
+         * Starts the countdown to start the room without filling it
+         */
+        void startFillTimeout() {
+            fill = loop.schedule(fillTimeout, new Runnable() {
+                @Override
+                public void run() {
+                    fill = null;
+                    if (depth >= MIN_PLAYERS) {
+                        startRoom(Queue.this, Math.min(depth, players));
+                    } else if (depth > 0) {
+                        startFillTimeout(); //not enough players yet, keep waiting
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A player in the lobby, waiting to ask for a room size on the loop running their handshake, or for the room to
+     * fill on the lobby's loop
+     */
+    private class Waiting implements Connection.Handler {
+        private final Connection connection;
+        private final EventLoop handshakeLoop;
+        private final long since;
+        private final long connected; //from System.nanoTime(), for the handshake time
+        private Timeout request; //null once the client has asked, been refused, or been given the default
+        private Queue queue;
+        private boolean closed;
+        private boolean matched;
+        private boolean handshaken; //no longer counted as handshaking
+
+        Waiting(Connection connection, EventLoop handshakeLoop) {
+            this.connection = connection;
+            this.handshakeLoop = handshakeLoop;
+            this.since = System.currentTimeMillis();
+            this.connected = System.nanoTime();
+            connection.setHandler(this);
+
+            request = handshakeLoop.schedule(REQUEST_TIMEOUT, new Runnable() {
+                @Override
+                public void run() {
+                    request = null;
+                    join(defaultPlayers);
+                }
+            });
+        }
+
+        /**
+         * Reads the room size a text client asks for with "ROOM" and the number of players
+         *
+         * @param line the message
+         */
+        @Override
+        public void onLine(String line) {
+            int players = 0;
+            StringTokenizer tokens = new StringTokenizer(line);
+            if (tokens.countTokens() == 2 && tokens.nextToken().equals("ROOM")) {
+                try {
+                    players = Integer.parseInt(tokens.nextToken());
+                } catch (NumberFormatException e) {
+                    //not a number, use the default
+                }
+            }
+
+            requested(players);
+        }
+
+        /**
+         * Reads the handshake from a binary client, with its protocol version and the room size it asks for. From
+         * version 4, the client also says which dictionary it has, and is sent the server's if it is not the same.
+         *
+         * @param type    the message type
+         * @param payload the message
+         */
+        @Override
+        public void onFrame(int type, ByteBuffer payload) {
+            if (request == null) {
+                return;
+            }
+            if (type == BoggleProtocol.WATCH) {
+                watch(payload);
+                return;
+            }
+            if (type != BoggleProtocol.HELLO) {
+                return;
+            }
+
+            int version = payload.get() & 0xFF;
+            int players = payload.getShort() & 0xFFFF;
+            if (version < 1) {
+                refuse("Unsupported protocol version " + version);
+                return;
+            }
+
+            connection.setVersion(Math.min(version, BoggleProtocol.VERSION));
+            ByteBuffer message = connection.startFrame(BoggleProtocol.WELCOME, 1 + BoggleProtocol.HASH_SIZE + 4);
+            message.put((byte) connection.getVersion());
+            if (connection.getVersion() >= 4) {
+                message.put(dictionary.getHash());
+                message.putInt(dictionary.getSize());
+            }
+            connection.endFrame();
+
+            //sent before the room can start, so the client has it before its first round
+            if (connection.getVersion() >= 4 && payload.remaining() >= BoggleProtocol.HASH_SIZE) {
+                byte[] cached = new byte[BoggleProtocol.HASH_SIZE];
+                payload.get(cached);
+                if (!Arrays.equals(cached, dictionary.getHash())) {
+                    dictionary.send(connection);
+                }
+            }
+
+            requested(players);
+        }
+
+        /**
+         * Reads a request to watch a room, with the client's protocol version and the id of the game, or 0 for the
+         * newest, and moves the spectator to the loop running the room
+         *
+         * @param payload the message
+         */
+        private void watch(ByteBuffer payload) {
+            int version = payload.get() & 0xFF;
+            long game = payload.getLong();
+            if (version < 5) {
+                refuse("Spectators need protocol version 5");
+                return;
+            }
+            final BoggleThread room;
+            if (game == 0) {
+                Map.Entry<Long, BoggleThread> newest = rooms.lastEntry();
+                room = newest == null ? null : newest.getValue();
+            } else {
+                room = rooms.get(game);
+            }
+            if (room == null) {
+                refuse("No such room");
+                return;
+            }
+
+            request.cancel();
+            request = null;
+            matched = true; //the room handles it now
+            handshakeOver();
+            ServerMetrics.get().handshake(connected);
+            connection.setVersion(Math.min(version, BoggleProtocol.VERSION));
+            connection.detach();
+            final EventLoop roomLoop = room.getLoop();
+            roomLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        roomLoop.adopt(connection);
+                    } catch (IOException e) {
+                        connection.close(); //the spectator left on the way
+                    }
+                    if (!connection.isClosed()) {
+                        room.watch(connection);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Tells a binary client why it can't be served, and disconnects it. Nothing more it sends is read, and it is
+         * never put in a room.
+         *
+         * @param reason the reason
+         */
+        private void refuse(String reason) {
+            request.cancel();
+            request = null;
+            handshakeLoop.schedule(REQUEST_TIMEOUT, new Runnable() {
+                @Override
+                public void run() {
+                    connection.close(); //the client never read the error
+                }
+            });
+
+            ByteBuffer message = connection.startFrame(BoggleProtocol.ERROR, BoggleProtocol.MAX_STRING + 1);
+            BoggleProtocol.putString(message, reason);
+            connection.endFrame();
+            connection.finish();
+        }
+
+        /**
+         * Queues the player for the room size they asked for
+         *
+         * @param players the number of players, or anything out of range for the default
+         */
+        private void requested(int players) {
+            if (request == null || matched) { //already queued
+                return;
+            }
+            request.cancel();
+            request = null;
+            ServerMetrics.get().handshake(connected);
+            join(players);
+        }
+
+        /**
+         * Moves the player from the loop running their handshake to the lobby's loop, and queues them there
+         *
+         * @param players the number of players, or anything out of range for the default
+         */
+        private void join(int players) {
+            final int size = players <= 0 || players > MAX_ROOM_SIZE ? defaultPlayers : players;
+            connection.detach();
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loop.adopt(connection);
+                    } catch (IOException e) {
+                        connection.close(); //the player left on the way
+                    }
+                    if (!closed) {
+                        enqueue(Waiting.this, size);
+                    }
+                    handshakeOver(); //after it is queued, if it was
+                }
+            });
+        }
+
+        /**
+         * Stops counting the player as handshaking, once they are queued, watching, or gone
+         */
+        private void handshakeOver() {
+            if (!handshaken) {
+                handshaken = true;
+                handshaking.decrementAndGet();
+            }
+        }
+
+        /**
+         * Takes the player out of the queue if they leave before their room starts
+         */
+        @Override
+        public void onClose() {
+            handshakeOver();
+            if (matched) { //the game handles it now
+                return;
+            }
+            closed = true;
+            if (request != null) {
+                request.cancel();
+            }
+            if (queue != null) {
+                queue.depth--;
+                queued.decrementAndGet();
+                if (queue.depth == 0) { //only players who left are in the queue
+                    queue.waiting.clear();
+                    if (queue.fill != null) {
+                        queue.fill.cancel();
+                        queue.fill = null;
+                    }
+                }
+            }
+        }
+    }
+}
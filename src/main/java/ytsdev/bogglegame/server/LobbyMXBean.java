@@ -0,0 +1,22 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The LobbyMXBean interface. What the lobby shows through JMX, under ytsdev.bogglegame:type=Lobby: how many players
+ * are still handshaking or waiting for a room, and how long the ones placed waited.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface LobbyMXBean {
+    int getHandshakingPlayers();
+
+    int getQueuedPlayers();
+
+    long getPlayersMatched();
+
+    long getRoomsStarted();
+
+    double getAverageWaitMillis();
+
+    long getMaxWaitMillis();
+}
@@ -0,0 +1,177 @@
+package ytsdev.bogglegame.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The Pipe class. Passes everything a player and their backend send on to the other, for a {@link Router}, without
+ * looking at it. Each way has a buffer of its own, and when one side can't take any more, reading from the other side
+ * stops until it has caught up, so a slow player never makes the router hold more than a buffer for them. When either
+ * side closes, what it sent last is passed on and then both are closed.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class Pipe {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Side client;
+    private final Side backend;
+    private final Runnable onClose;
+    private boolean closed;
+
+    /**
+     * Creates a pipe between a player and the backend their room is on
+     *
+     * @param client     the player's socket
+     * @param backend    the backend's socket, connected
+     * @param fromClient what the player has sent already, ready to be passed on
+     * @param onClose    run once when the pipe closes
+     */
+    Pipe(SocketChannel client, SocketChannel backend, ByteBuffer fromClient, Runnable onClose) {
+        this.client = new Side(client, fromClient);
+        this.backend = new Side(backend, ByteBuffer.allocate(BUFFER_SIZE));
+        this.client.other = this.backend;
+        this.backend.other = this.client;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Starts passing data through. Must be called on the loop's thread.
+     *
+     * @param loop the event loop to serve the pipe
+     */
+    void start(EventLoop loop) {
+        try {
+            client.key = loop.watch(client.channel, 0, client);
+            backend.key = loop.watch(backend.channel, 0, backend);
+            update();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Waits to read from a side while it has room to put what it reads, and to write to it while the other side has
+     * sent something, or closes the pipe once a side has closed and everything it sent has been passed on
+     */
+    private void update() {
+        if (closed) {
+            return;
+        }
+        if (client.finished() || backend.finished()) {
+            close();
+            return;
+        }
+        client.watch();
+        backend.watch();
+    }
+
+    /**
+     * Closes both sides. Closing more than once does nothing.
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        client.shut();
+        backend.shut();
+        onClose.run();
+    }
+
+    /**
+     * One of the sockets, with what has been read from it and not passed on yet
+     */
+    private class Side implements EventLoop.Endpoint {
+        private final SocketChannel channel;
+        private final ByteBuffer received; //ready to be filled, holding what is waiting to be passed on
+        private SelectionKey key;
+        private Side other;
+        private boolean ended; //the other end closed the socket
+
+        Side(SocketChannel channel, ByteBuffer received) {
+            this.channel = channel;
+            this.received = received;
+        }
+
+        /**
+         * Reads what has arrived and passes it on, and passes on what the other side sent if this side can take it
+         *
+         * @param key the socket's registration
+         */
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    other.forward();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    if (channel.read(received) == -1) {
+                        ended = true;
+                    }
+                    forward();
+                }
+            } catch (IOException e) {
+                Pipe.this.close();
+                return;
+            }
+            update();
+        }
+
+        /**
+         * Writes as much of what this side sent as the other side will take
+         *
+         * @throws java.io.IOException
+         */
+        void forward() throws IOException {
+            received.flip();
+            other.channel.write(received);
+            received.compact();
+        }
+
+        /**
+         * Gets whether this side has closed and all it sent has been passed on
+         *
+         * @return true if the pipe is finished with
+         */
+        boolean finished() {
+            return ended && received.position() == 0;
+        }
+
+        /**
+         * Asks to be told when there is something to do on this side
+         */
+        void watch() {
+            int ops = 0;
+            if (!ended && received.hasRemaining()) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (other.received.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Closes the socket
+         */
+        void shut() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void close() {
+            Pipe.this.close();
+        }
+    }
+}
@@ -1,199 +1,341 @@
 package ytsdev.bogglegame.server;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
+import ytsdev.bogglegame.SolutionCache;
+
 import java.util.*;
 
 /**
  * The Player class is used for the server to represent and interact with a boggle player.
+ * Messages from the client arrive on the game's event loop through the codec for the client's protocol, and each is
+ * handled according to what the game is waiting for from this player.
  *
  * @author Y. Stitzer
  *         version 6/2/2013
  */
 public class Player {
-    private Scanner in;
-    private PrintWriter out;
+    /**
+     * What the game is waiting for from the player
+     */
+    enum Phase {
+        NAME, //the player's name
+        IDLE, //nothing
+        WORDS, //the words found this round
+        SUBMIT, //the words not sent yet, after the time is up
+        CONFIRM, //whether to play another round
+        DONE //nothing, the game is over
+    }
+
+    private Connection connection;
+    private PlayerCodec codec;
+    private BoggleThread game;
+    private Phase phase;
 
-    private Set<String> words;
-    private ArrayList<String> removed;
+    private SolutionCache.Solution solution; //the words on this round's board
+    private long[] found; //a bit for each word on the board the player has found
+    private List<String> removed;
     private String name;
 
     private int points;
+    private int roundPoints; //the points earned this round
+    private boolean inRound; //the player was sent this round's board
 
     /**
-     * Constructs a Player object with the socket to interact with
+     * Constructs a Player object with the connection to interact with
      *
-     * @param socket the player's socket
-     * @throws java.io.IOException
+     * @param game       the game the player is in
+     * @param connection the player's connection
      */
-    public Player(Socket socket, int players) throws IOException {
-        in = new Scanner(socket.getInputStream());
-        out = new PrintWriter(socket.getOutputStream());
-
-        out.println(players);
-        out.flush();
-
-        name = in.nextLine();
+    public Player(BoggleThread game, Connection connection) {
+        this.game = game;
+        this.connection = connection;
 
+        name = "";
         points = 0;
-        words = new HashSet<String>();
+        found = new long[0];
         removed = new ArrayList<String>();
+
+        phase = Phase.NAME;
+        codec = PlayerCodec.create(this, connection);
+        connection.joinedRoom();
     }
 
     /**
-     * Gets the name of the player
+     * Tells the client how many players are in the game and waits for the player's name
      *
-     * @return the name
+     * @param players the number of players in the game
      */
-    public String getName() {
-        return name;
+    public void start(int players) {
+        if (connection.isClosed()) {
+            onClose();
+            return;
+        }
+        codec.sendPlayers(players);
     }
 
     /**
-     * Gets the points earned by the player so far
+     * Gets what the game is waiting for from the player
      *
-     * @return the points
+     * @return the phase
      */
-    public int getPoints() {
-        return points;
+    Phase expecting() {
+        return phase;
     }
 
     /**
-     * Tells the player client to start a new round with a given board
+     * Handles the player's name
      *
-     * @param board the boggle board to use
+     * @param name the name
      */
-    public void newRound(String board) {
-        words.clear();
-        removed.clear();
+    void onName(String name) {
+        if (phase != Phase.NAME) {
+            return;
+        }
+        //names are sent between spaces in the text protocol
+        this.name = name.isEmpty() ? "?" : name.replace(' ', '_');
+        phase = Phase.IDLE;
+        game.playerJoined(this);
+    }
 
-        String command = "";
-        command = "AGAIN " + board;
-        out.println(command);
-        out.flush();
+    /**
+     * Handles a word the player found during the round, which is checked as soon as it arrives
+     *
+     * @param word the word
+     */
+    void onWord(String word) {
+        if (phase != Phase.WORDS) {
+            return;
+        }
+        addWord(word);
     }
 
     /**
-     * Gets the words from the client
+     * Handles the rest of the words the player found, which ends the player's round
+     *
+     * @param found the words not sent yet
      */
-    public void retrieveWords() {
-        int size = in.nextInt();
-        for (int i = 0; i < size; i++) {
-            words.add(in.next());
+    void onWords(List<String> found) {
+        if (phase != Phase.WORDS && phase != Phase.SUBMIT) {
+            return;
+        }
+        for (String word : found) {
+            addWord(word);
         }
+        phase = Phase.IDLE;
+        game.wordsReceived(this);
     }
 
     /**
-     * Removes a word from this Player
+     * Keeps a word if it is valid on this round's board, by setting its bit
      *
-     * @param word the word to remove if this player has it
-     * @return true if this player had it and it was removed, false if the player doesn't have it
+     * @param word the word
      */
-    public boolean remove(String word) {
-        if (words.remove(word)) {
-            removed.add(word);
-            return true;
-        } else {
-            return false;
+    private void addWord(String word) {
+        int id = solution.getId(word.toLowerCase());
+        ServerMetrics.get().wordSubmitted(id >= 0);
+        if (id >= 0) {
+            found[id >>> 6] |= 1L << id;
         }
     }
 
     /**
-     * Sends the results of the games to the player
+     * Handles whether the player would like a new round
      *
-     * @param results the names and points of the other players
+     * @param again true if this player wants to play again, false if not
+     */
+    void onConfirm(boolean again) {
+        if (phase != Phase.CONFIRM) {
+            return;
+        }
+        phase = Phase.IDLE;
+        game.confirmed(this, again);
+    }
+
+    /**
+     * Handles the client leaving. The game carries on as though the player found no words and doesn't want to play
+     * again.
      */
-    public void sendResults(String results) {
-        String message = "";
+    void onClose() {
+        Phase left = phase;
+        phase = Phase.DONE;
+        switch (left) {
+            case NAME:
+                name = "?"; //the other players still need a name to show for this player's score
+                game.playerJoined(this);
+                break;
+            case WORDS:
+            case SUBMIT:
+                game.wordsReceived(this);
+                break;
+            case CONFIRM:
+                game.confirmed(this, false);
+                break;
+            default:
+                break;
+        }
+    }
 
-        message += removed.size();
+    /**
+     * Determines whether the game is waiting for this player to answer
+     *
+     * @return true if the player owes the game a message
+     */
+    public boolean isAnswering() {
+        return phase == Phase.NAME || phase == Phase.WORDS || phase == Phase.SUBMIT || phase == Phase.CONFIRM;
+    }
 
-        for (String word : removed) {
-            message += " " + word;
+    /**
+     * Tells the player the round's time is up. Words sent one at a time are no longer accepted, only the last batch.
+     */
+    void timeUp() {
+        if (phase != Phase.WORDS) {
+            return;
         }
+        phase = Phase.SUBMIT;
+        codec.sendTimeUp();
+    }
 
-        message += " " + results;
+    /**
+     * Ends the player's round with the words received so far, for a player who hasn't sent the last batch in time
+     */
+    void closeSubmissions() {
+        onWords(Collections.<String>emptyList());
+    }
 
-        out.println(message);
-        out.flush();
+    /**
+     * Disconnects a player who took too long to answer
+     */
+    public void drop() {
+        connection.close();
     }
 
     /**
-     * Calculates how many points should be added to this player for this round, and adds them
+     * Gets the name of the player
+     *
+     * @return the name
      */
-    public void calculatePoints() {
-        final int FIRST_REWARD = 1;
-        final int SECOND_REWARD = 2;
-        final int THIRD_REWARD = 3;
-        final int FOURTH_REWARD = 5;
-        final int FIFTH_REWARD = 11;
+    public String getName() {
+        return name;
+    }
 
-        for (String word : words) {
-            int length = word.length();
-            if (length <= 4) {
-                points += FIRST_REWARD;
-            } else if (length == 5) {
-                points += SECOND_REWARD;
-            } else if (length == 6) {
-                points += THIRD_REWARD;
-            } else if (length == 7) {
-                points += FOURTH_REWARD;
-            } else {
-                points += FIFTH_REWARD;
-            }
-        }
+    /**
+     * Gets the points earned by the player so far
+     *
+     * @return the points
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Gets the points earned by the player in the last round scored
+     *
+     * @return the points
+     */
+    public int getRoundPoints() {
+        return roundPoints;
+    }
 
+    /**
+     * Determines whether the player was still in the game when the round started
+     *
+     * @return true if the player played the round
+     */
+    public boolean playedRound() {
+        return inRound;
     }
 
     /**
-     * See if this player would like a new round
+     * Tells the player client to start a new round with a given board, and waits for the words found on it
      *
-     * @return true if this player wants to play again, false if not
+     * @param size       the number of rows and columns on the board
+     * @param board      the boggle board to use
+     * @param time       how long the round lasts in milliseconds
+     * @param solution   all the words that can be spelled on the board
      */
-    public boolean confirmNew() {
-        String response = in.next();
-        if (response.equals("AGAIN")) {
-            return true;
+    public void newRound(int size, String board, long time, SolutionCache.Solution solution) {
+        int longs = (solution.size() + 63) >>> 6;
+        if (found.length < longs) {
+            found = new long[longs];
         } else {
-            return false;
+            Arrays.fill(found, 0L);
         }
+        removed.clear();
+        this.solution = solution;
+        roundPoints = 0;
+        inRound = false;
+
+        if (connection.isClosed()) { //a player who left has no words
+            game.wordsReceived(this);
+            return;
+        }
+
+        phase = Phase.WORDS;
+        inRound = true;
+        codec.sendRound(size, board, time);
     }
 
     /**
-     * Tell the client no more games to be played
+     * Sends the results of the games to the player, and waits to hear if the player wants another round
+     *
+     * @param standings the names and points of all the players
      */
-    public void gameOver() {
-        out.println("DONE");
-        out.flush();
+    public void sendResults(Standings standings) {
+        if (connection.isClosed()) { //a player who left won't play again
+            game.confirmed(this, false);
+            return;
+        }
 
-        out.close();
-        in.close();
+        phase = Phase.CONFIRM;
+        codec.sendResults(removed, standings);
     }
 
     /**
-     * Takes a set of words for which no players should be awarded points and removes them.
+     * Gets the words the player found this round
      *
-     * @param duplicateWords the words submitted by at least two players
+     * @return a bit for each word on the board, which must not be changed
      */
-    public void removeWords(Set<String> duplicateWords) {
-        for (String word : duplicateWords) {
-            if (words.remove(word)) {
-                removed.add(word);
-            }
-        }
+    long[] getFound() {
+        return found;
     }
 
     /**
-     * Get a copy of the all the words guessed by the user
+     * Gets the words the player found this round that other players also found
      *
-     * @return the guessed words
+     * @return the words, which must not be changed
      */
-    public Set<String> getWords() {
-        Set<String> allWords = new HashSet<>();
-        allWords.addAll(words);
-        allWords.addAll(removed);
+    List<String> getRemoved() {
+        return removed;
+    }
 
-        return allWords;
+    /**
+     * Adds the points for this round to the player: the points for each word no other player found, looked up by its
+     * number. The words others also found are kept to tell the player.
+     *
+     * @param duplicates a bit for each word found by more than one player
+     */
+    public void calculatePoints(long[] duplicates) {
+        for (int i = 0; i < duplicates.length; i++) {
+            long unique = found[i] & ~duplicates[i];
+            while (unique != 0) {
+                roundPoints += solution.getPoints((i << 6) + Long.numberOfTrailingZeros(unique));
+                unique &= unique - 1; //the next bit
+            }
+
+            long shared = found[i] & duplicates[i];
+            while (shared != 0) {
+                removed.add(solution.getWord((i << 6) + Long.numberOfTrailingZeros(shared)));
+                shared &= shared - 1;
+            }
+        }
+        points += roundPoints;
+    }
+
+    /**
+     * Tell the client no more games to be played
+     */
+    public void gameOver() {
+        phase = Phase.DONE;
+        codec.sendDone();
+        connection.finish();
     }
 }
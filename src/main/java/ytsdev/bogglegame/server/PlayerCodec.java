@@ -0,0 +1,80 @@
+package ytsdev.bogglegame.server;
+
+import java.util.Collection;
+
+/**
+ * The PlayerCodec class. Turns the messages a player's client sends into calls on the {@link Player}, and the
+ * player's messages into the protocol the client speaks.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+abstract class PlayerCodec implements Connection.Handler {
+    protected final Player player;
+    protected final Connection connection;
+
+    /**
+     * Creates a codec and makes it the handler for the connection
+     *
+     * @param player     the player
+     * @param connection the player's connection
+     */
+    PlayerCodec(Player player, Connection connection) {
+        this.player = player;
+        this.connection = connection;
+        connection.setHandler(this);
+    }
+
+    /**
+     * Creates the codec for the protocol the client speaks
+     *
+     * @param player     the player
+     * @param connection the player's connection
+     * @return the codec
+     */
+    static PlayerCodec create(Player player, Connection connection) {
+        if (connection.isBinary()) {
+            return new BinaryCodec(player, connection);
+        }
+        return new TextCodec(player, connection);
+    }
+
+    /**
+     * Tells the client how many players are in the game
+     *
+     * @param players the number of players
+     */
+    abstract void sendPlayers(int players);
+
+    /**
+     * Tells the client to start a new round
+     *
+     * @param size  the number of rows and columns on the board
+     * @param board the board letters, row by row
+     * @param time  how long the round lasts in milliseconds
+     */
+    abstract void sendRound(int size, String board, long time);
+
+    /**
+     * Tells the client the round is over
+     */
+    abstract void sendTimeUp();
+
+    /**
+     * Sends the results of a round
+     *
+     * @param removed   this player's words that others also found
+     * @param standings everyone's points
+     */
+    abstract void sendResults(Collection<String> removed, Standings standings);
+
+    /**
+     * Tells the client there are no more rounds
+     */
+    abstract void sendDone();
+
+    @Override
+    public void onClose() {
+        player.onClose();
+    }
+}
@@ -0,0 +1,348 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * The RoundJournal class. Records every round played on the server, so any round can be looked at again and replayed
+ * by {@link RoundJournalReader}: the board, the words each player found, the words taken away for being found by more
+ * than one player, the points and the standings sent to the players.
+ * <p>
+ * A game copies its round into a record when it is scored and hands it over on a queue without locks. The records are
+ * written by a thread of the journal's own, as many at a time as have arrived, so a game never waits for the disk.
+ * How often the journal is synced to the disk is up to the server, see {@link Sync}.
+ * <p>
+ * The file starts with a magic number and a version. Each record is its length and a CRC-32 of the rest as ints, then
+ * the game's id as a long, the round number as an int, the time as a long, the board size as a byte and the letters,
+ * the number of players as a short, and for each player their name, a byte saying if they played the round, their
+ * points for the round and for the game as ints, and the number of words they found and the words taken away as
+ * shorts, each followed by the words. Last come the standings as an int length and UTF-8, as the text protocol sends
+ * them. Other strings are written as in {@link BoggleProtocol}.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class RoundJournal {
+    public static final int MAGIC = 0x42474A4E; //"BGJN"
+    public static final int VERSION = 1;
+    public static final int HEADER = 8; //magic, version
+    public static final int RECORD_HEADER = 8; //length, CRC
+
+    private static final int MAX_BATCH = 1024;
+    private static final long SYNC_INTERVAL = 1000;
+
+    /**
+     * When the journal is synced to the disk
+     */
+    public enum Sync {
+        NONE, //left to the operating system, the fastest
+        INTERVAL, //once a second, so at most a second of rounds is lost in a crash
+        BATCH //after every batch of records, so no round is lost once it is written
+    }
+
+    private final FileChannel channel;
+    private final Sync sync;
+    private final ConcurrentLinkedQueue<ByteBuffer> pending;
+    private final AtomicBoolean parked; //the writer is waiting for records
+    private final Thread writer;
+    private volatile boolean closing;
+
+    private final AtomicLong nextGame;
+    private final AtomicLong roundsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Opens a journal, adding to it if it exists, and starts the thread that writes to it. A record cut short or
+     * damaged at the end of the journal is dropped, so the records added after it can be read.
+     *
+     * @param filename the name of the journal file
+     * @param sync     when to sync the journal to the disk
+     * @throws java.io.IOException if the file cannot be written or is not a journal
+     */
+    public RoundJournal(String filename, Sync sync) throws IOException {
+        this.sync = sync;
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } else {
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException(filename + " is not a round journal");
+            }
+        }
+        //a crash can leave the last record cut short, and anything written after it would never be read
+        long end = findEnd(channel);
+        if (end < channel.size()) {
+            channel.truncate(end);
+        }
+        channel.position(end);
+
+        pending = new ConcurrentLinkedQueue<>();
+        parked = new AtomicBoolean();
+        nextGame = new AtomicLong(System.currentTimeMillis() * 1000); //not reused after a restart
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "boggle-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Finds the end of the last whole record in a journal, reading the records the way {@link RoundJournalReader}
+     * does: a record that runs past the end of the file or fails its CRC ends the journal
+     *
+     * @param channel the journal, with a good header
+     * @return the offset just past the last good record
+     * @throws java.io.IOException if the journal cannot be read
+     */
+    private static long findEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long offset = HEADER;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        ByteBuffer body = ByteBuffer.allocate(4096);
+        CRC32 crc = new CRC32();
+        while (size - offset >= RECORD_HEADER) {
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.read(header, offset + header.position());
+            }
+            int length = header.getInt(0);
+            if (length < 0 || length > size - offset - RECORD_HEADER) {
+                break;
+            }
+
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(Math.max(length, body.capacity() * 2));
+            }
+            body.clear();
+            body.limit(length);
+            while (body.hasRemaining()) { //the file is long enough, checked above
+                channel.read(body, offset + RECORD_HEADER + body.position());
+            }
+            body.flip();
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            offset += RECORD_HEADER + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Gives a game an id to tell its rounds apart from other games'
+     *
+     * @return the id
+     */
+    public long nextGame() {
+        return nextGame.incrementAndGet();
+    }
+
+    /**
+     * Copies a round that has been scored into a record and hands it over to be written. Never waits, and can be
+     * called from any thread.
+     *
+     * @param game      the game's id
+     * @param round     the round number, starting at 1
+     * @param board     the board played
+     * @param players   the players in the game
+     * @param standings the standings sent to the players
+     */
+    public void record(long game, int round, BoardSupply.Board board, Player[] players, Standings standings) {
+        SolutionCache.Solution solution = board.getSolution();
+        String text = standings.getText();
+
+        //the most room the record can take
+        int size = RECORD_HEADER + 8 + 4 + 8 + 1 + BoggleProtocol.stringSize(board.getLetters()) + 2
+                + 4 + text.length() * 3;
+        for (Player player : players) {
+            size += BoggleProtocol.stringSize(player.getName()) + 1 + 4 + 4 + 2 + 2;
+            long[] found = player.getFound();
+            for (int i = 0; i < found.length; i++) {
+                long bits = found[i];
+                while (bits != 0) {
+                    size += BoggleProtocol.stringSize(solution.getWord((i << 6) + Long.numberOfTrailingZeros(bits)));
+                    bits &= bits - 1;
+                }
+            }
+            for (String word : player.getRemoved()) {
+                size += BoggleProtocol.stringSize(word);
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.position(RECORD_HEADER); //the length and CRC are filled in by the writer
+        record.putLong(game);
+        record.putInt(round);
+        record.putLong(System.currentTimeMillis());
+        record.put((byte) board.getSize());
+        BoggleProtocol.putString(record, board.getLetters());
+        record.putShort((short) players.length);
+        for (Player player : players) {
+            BoggleProtocol.putString(record, player.getName());
+            record.put((byte) (player.playedRound() ? 1 : 0));
+            record.putInt(player.getRoundPoints());
+            record.putInt(player.getPoints());
+
+            long[] found = player.getFound();
+            int count = 0;
+            for (long bits : found) {
+                count += Long.bitCount(bits);
+            }
+            record.putShort((short) count);
+            for (int i = 0; i < found.length; i++) {
+                long bits = found[i];
+                while (bits != 0) {
+                    BoggleProtocol.putString(record, solution.getWord((i << 6) + Long.numberOfTrailingZeros(bits)));
+                    bits &= bits - 1;
+                }
+            }
+
+            List<String> removed = player.getRemoved();
+            record.putShort((short) removed.size());
+            for (String word : removed) {
+                BoggleProtocol.putString(record, word);
+            }
+        }
+        byte[] standingsText = text.getBytes(StandardCharsets.UTF_8);
+        record.putInt(standingsText.length);
+        record.put(standingsText);
+        record.flip();
+
+        pending.add(record);
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Writes the records as they arrive, a batch at a time, on the journal's own thread
+     */
+    private void write() {
+        ByteBuffer[] batch = new ByteBuffer[MAX_BATCH];
+        CRC32 crc = new CRC32();
+        long lastSync = System.currentTimeMillis();
+        boolean unsynced = false;
+        while (true) {
+            int count = 0;
+            ByteBuffer record;
+            while (count < batch.length && (record = pending.poll()) != null) {
+                //fill in the length and the CRC of the rest
+                int length = record.remaining() - RECORD_HEADER;
+                record.position(RECORD_HEADER);
+                crc.reset();
+                crc.update(record);
+                record.position(0);
+                record.putInt(0, length);
+                record.putInt(4, (int) crc.getValue());
+                batch[count++] = record;
+            }
+
+            try {
+                if (count > 0) {
+                    long remaining = 0;
+                    for (int i = 0; i < count; i++) {
+                        remaining += batch[i].remaining();
+                    }
+                    while (remaining > 0) {
+                        remaining -= channel.write(batch, 0, count); //one write for the whole batch
+                    }
+                    roundsWritten.addAndGet(count);
+                    batches.incrementAndGet();
+                    unsynced = true;
+                }
+
+                long now = System.currentTimeMillis();
+                if (unsynced && (sync == Sync.BATCH || sync == Sync.INTERVAL && now - lastSync >= SYNC_INTERVAL)) {
+                    channel.force(false);
+                    lastSync = now;
+                    unsynced = false;
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); //the batch is lost, but the journal carries on with the next one
+            }
+
+            for (int i = 0; i < count; i++) {
+                batch[i] = null;
+            }
+            if (count > 0) {
+                continue;
+            }
+
+            if (closing) {
+                return;
+            }
+            //nothing to write, wait for the next record, or for the next sync if there is something to sync
+            parked.set(true);
+            if (pending.isEmpty() && !closing) {
+                if (unsynced && sync == Sync.INTERVAL) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL));
+                } else {
+                    LockSupport.park();
+                }
+            }
+            parked.set(false);
+        }
+    }
+
+    /**
+     * Writes the records waiting, syncs the journal to the disk and closes it
+     *
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Gets the number of rounds written to the journal
+     *
+     * @return the number of rounds
+     */
+    public long getRoundsWritten() {
+        return roundsWritten.get();
+    }
+
+    /**
+     * Gets the number of batches the rounds were written in
+     *
+     * @return the number of batches
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+}
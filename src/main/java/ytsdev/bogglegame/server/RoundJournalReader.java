@@ -0,0 +1,285 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.BoggleProtocol;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a journal written by {@link RoundJournal} and replays every round in it: the board is solved again, the words
+ * each player found are scored again, and the words taken away, the points and the standings are checked against what
+ * the server sent. Since scoring only depends on the board, the dictionary and the words found, a round replays the
+ * same every time, and any difference means the dictionary has changed or the server got it wrong.
+ * <p>
+ * With just the journal, a summary of the whole journal is printed. Given a game's id, each of its rounds is printed
+ * in full, or only one round if its number is given too.
+ * Run from the directory with BoggleWords.dawg, like the server.
+ * Usage: RoundJournalReader [journal file] [game id] [round]
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class RoundJournalReader {
+    /**
+     * A round read from the journal
+     */
+    private static class Round {
+        long game;
+        int round;
+        long time;
+        int size;
+        String letters;
+        String[] names;
+        boolean[] played;
+        int[] roundPoints;
+        int[] points;
+        String[][] found;
+        String[][] removed;
+        String standings;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: RoundJournalReader [journal file] [game id] [round]");
+            return;
+        }
+        long game = args.length > 1 ? Long.parseLong(args[1]) : -1;
+        int round = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+
+        BoggleDictionary dictionary = BoggleDictionary.map("BoggleWords.dawg");
+        SolutionCache solutions = new SolutionCache(dictionary, 1024);
+
+        long fileLength = new File(args[0]).length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 1 << 16));
+        try {
+            if (in.readInt() != RoundJournal.MAGIC || in.readInt() != RoundJournal.VERSION) {
+                System.out.println(args[0] + " is not a round journal");
+                return;
+            }
+
+            Map<Long, int[]> totals = new HashMap<>(); //each game's points after its last round read
+            long offset = RoundJournal.HEADER;
+            long rounds = 0;
+            long different = 0;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] body;
+                int check;
+                try {
+                    int length = in.readInt();
+                    check = in.readInt();
+                    if (length < 0 || length > fileLength - offset - RoundJournal.RECORD_HEADER) {
+                        throw new EOFException();
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    if (offset != fileLength) {
+                        System.out.println("The last record, at " + offset + ", was cut short");
+                    }
+                    break;
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != check) {
+                    System.out.println("The record at " + offset + " is damaged, stopping");
+                    break;
+                }
+                offset += RoundJournal.RECORD_HEADER + body.length;
+
+                Round read = parse(ByteBuffer.wrap(body));
+                List<String> problems = replay(read, totals.get(read.game), solutions);
+                totals.put(read.game, read.points);
+                rounds++;
+                if (!problems.isEmpty()) {
+                    different++;
+                }
+
+                if (game < 0) {
+                    for (String problem : problems) {
+                        System.out.println("Game " + read.game + " round " + read.round + ": " + problem);
+                    }
+                } else if (read.game == game && (round < 0 || read.round == round)) {
+                    print(read, problems);
+                }
+            }
+
+            System.out.println("Read " + rounds + " rounds of " + totals.size() + " games, " + different
+                    + " replayed differently");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a round from its record
+     *
+     * @param body the record after its length and CRC
+     * @return the round
+     */
+    private static Round parse(ByteBuffer body) {
+        Round round = new Round();
+        round.game = body.getLong();
+        round.round = body.getInt();
+        round.time = body.getLong();
+        round.size = body.get();
+        round.letters = BoggleProtocol.getString(body);
+
+        int players = body.getShort() & 0xFFFF;
+        round.names = new String[players];
+        round.played = new boolean[players];
+        round.roundPoints = new int[players];
+        round.points = new int[players];
+        round.found = new String[players][];
+        round.removed = new String[players][];
+        for (int i = 0; i < players; i++) {
+            round.names[i] = BoggleProtocol.getString(body);
+            round.played[i] = body.get() != 0;
+            round.roundPoints[i] = body.getInt();
+            round.points[i] = body.getInt();
+            round.found[i] = new String[body.getShort() & 0xFFFF];
+            for (int j = 0; j < round.found[i].length; j++) {
+                round.found[i][j] = BoggleProtocol.getString(body);
+            }
+            round.removed[i] = new String[body.getShort() & 0xFFFF];
+            for (int j = 0; j < round.removed[i].length; j++) {
+                round.removed[i][j] = BoggleProtocol.getString(body);
+            }
+        }
+
+        byte[] standings = new byte[body.getInt()];
+        body.get(standings);
+        round.standings = new String(standings, StandardCharsets.UTF_8);
+        return round;
+    }
+
+    /**
+     * Scores a round again the way the server does, and compares it with what the server sent
+     *
+     * @param round     the round
+     * @param previous  the game's points before the round, or null if the round before isn't in the journal
+     * @param solutions the cache to solve the board with
+     * @return what came out differently, or nothing if the replay matched
+     */
+    private static List<String> replay(Round round, int[] previous, SolutionCache solutions) {
+        List<String> problems = new ArrayList<>();
+        BoggleBoard board = new BoggleBoard(round.size);
+        board.setBoard(round.size, round.letters);
+        SolutionCache.Solution solution = solutions.solve(board);
+
+        //how many players found each word
+        int[] finders = new int[solution.size()];
+        int[][] ids = new int[round.names.length][];
+        for (int i = 0; i < round.names.length; i++) {
+            ids[i] = new int[round.found[i].length];
+            for (int j = 0; j < ids[i].length; j++) {
+                ids[i][j] = solution.getId(round.found[i][j]);
+                if (ids[i][j] < 0) {
+                    problems.add(round.names[i] + "'s word " + round.found[i][j] + " is not on the board");
+                } else {
+                    finders[ids[i][j]]++;
+                }
+            }
+        }
+
+        int max = 0;
+        int[] points = new int[round.names.length];
+        for (int i = 0; i < round.names.length; i++) {
+            int roundPoints = 0;
+            List<String> removed = new ArrayList<>();
+            for (int id : ids[i]) {
+                if (id < 0) {
+                    continue;
+                }
+                if (finders[id] == 1) {
+                    roundPoints += solution.getPoints(id);
+                } else {
+                    removed.add(solution.getWord(id));
+                }
+            }
+
+            if (roundPoints != round.roundPoints[i]) {
+                problems.add(round.names[i] + " scored " + roundPoints + " instead of " + round.roundPoints[i]);
+            }
+            //sorted, since the order the words were told in doesn't matter, but a word told twice does
+            List<String> recorded = new ArrayList<>(Arrays.asList(round.removed[i]));
+            Collections.sort(removed);
+            Collections.sort(recorded);
+            if (!removed.equals(recorded)) {
+                problems.add(round.names[i] + " lost " + removed + " instead of "
+                        + Arrays.toString(round.removed[i]));
+            }
+            points[i] = previous == null ? round.points[i] : previous[i] + roundPoints;
+            if (points[i] != round.points[i]) {
+                problems.add(round.names[i] + " has " + points[i] + " points in all instead of " + round.points[i]);
+            }
+            max = Math.max(max, points[i]);
+        }
+
+        //the winners first, then everyone else, as the server announces them
+        StringBuilder winners = new StringBuilder();
+        StringBuilder others = new StringBuilder();
+        int count = 0;
+        for (int i = 0; i < round.names.length; i++) {
+            StringBuilder str = points[i] == max ? winners : others;
+            str.append(' ').append(round.names[i]).append(' ').append(points[i]);
+            if (points[i] == max) {
+                count++;
+            }
+        }
+        String standings = count + winners.toString() + others;
+        if (!standings.equals(round.standings)) {
+            problems.add("the standings were \"" + round.standings + "\" instead of \"" + standings + "\"");
+        }
+        return problems;
+    }
+
+    /**
+     * Prints a round in full
+     *
+     * @param round    the round
+     * @param problems what came out differently when it was replayed
+     */
+    private static void print(Round round, List<String> problems) {
+        System.out.println("Game " + round.game + " round " + round.round + ", " + new Date(round.time));
+        for (int row = 0; row < round.size; row++) {
+            StringBuilder line = new StringBuilder("  ");
+            for (int col = 0; col < round.size; col++) {
+                char letter = round.letters.charAt(row * round.size + col);
+                line.append(letter == 'Q' ? "Qu" : letter + " ").append(' ');
+            }
+            System.out.println(line);
+        }
+
+        for (int i = 0; i < round.names.length; i++) {
+            if (!round.played[i]) {
+                System.out.println(round.names[i] + " had left");
+                continue;
+            }
+            System.out.println(round.names[i] + ": " + round.roundPoints[i] + " points, " + round.points[i]
+                    + " in all");
+            System.out.println("  found " + Arrays.toString(round.found[i]));
+            System.out.println("  also found by others " + Arrays.toString(round.removed[i]));
+        }
+        System.out.println("Standings: " + round.standings);
+        System.out.println(problems.isEmpty() ? "Replayed the same" : "Replayed differently: " + problems);
+        System.out.println();
+    }
+}
@@ -0,0 +1,623 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Router class. Places the players who connect to a {@link BoggleRouter} on the backend servers, and passes their
+ * data through to the backend chosen, so a server can be spread over several processes.
+ * <p>
+ * A player's first message is read before they are placed, to find the room size they ask for, the same way the
+ * lobby finds it. The players for a room must all go to the same backend, so each room size has a backend that is
+ * filling its next room, chosen as the least loaded backend when the room before it was filled. A player is then
+ * passed on with what they have sent, and the backend's lobby handles them as if they had connected to it directly.
+ * <p>
+ * Backends connect to the router's control port and report their load every second, see {@link RouterLink}. A
+ * backend that hasn't reported for a few seconds gets no more players until it reports again. A backend that is
+ * drained gets no more players, starts rooms for the players waiting in its lobby, and leaves once its games are
+ * over; the players already playing on it are not disturbed.
+ * <p>
+ * The backends and rooms are kept on the router's own event loop, so they are never locked. Once a player is placed,
+ * their pipe is moved to one of the pipe loops.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class Router implements RouterMXBean {
+    private static final long REQUEST_TIMEOUT = 2000; //as long as the lobby waits for a room size
+    private static final long HEALTH_INTERVAL = 1000;
+    private static final long HEALTH_TIMEOUT = 3000; //a backend that hasn't reported for this long gets no players
+    private static final int BUFFER_SIZE = 8192;
+
+    private final EventLoop loop;
+    private final EventLoop[] pipeLoops;
+    private final int defaultPlayers;
+
+    private final List<Backend> backends;
+    private final Map<Integer, Filling> filling; //the backend filling the next room of each size
+    private int nextLoop;
+
+    //read by other threads for monitoring
+    private volatile String[] backendStates = new String[0];
+    private final AtomicLong playersRouted = new AtomicLong();
+    private final AtomicLong playersRejected = new AtomicLong();
+    private final AtomicInteger openPipes = new AtomicInteger();
+
+    /**
+     * Creates a router
+     *
+     * @param loop           the event loop for placing players and hearing from backends, which must not also run
+     *                       pipes
+     * @param pipeLoops      the event loops to run the pipes on
+     * @param defaultPlayers the room size for players who don't ask for one, the same as the backends'
+     */
+    public Router(EventLoop loop, EventLoop[] pipeLoops, int defaultPlayers) {
+        this.loop = loop;
+        this.pipeLoops = pipeLoops;
+        this.defaultPlayers = defaultPlayers;
+        this.backends = new ArrayList<>();
+        this.filling = new HashMap<>();
+    }
+
+    /**
+     * Starts taking backends on a control port, and checking that they are still reporting. Can be called from any
+     * thread.
+     *
+     * @param control the control port's socket, bound
+     */
+    public void start(final ServerSocketChannel control) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    control.configureBlocking(false);
+                    loop.watch(control, SelectionKey.OP_ACCEPT, new EventLoop.Endpoint() {
+                        @Override
+                        public void ready(SelectionKey key) {
+                            SocketChannel channel;
+                            try {
+                                while ((channel = control.accept()) != null) {
+                                    channel.configureBlocking(false);
+                                    Connection connection = new Connection(channel);
+                                    new Backend(connection);
+                                    loop.adopt(connection);
+                                }
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                            }
+                        }
+
+                        @Override
+                        public void close() {
+                            //the control port stays open for as long as the router runs
+                        }
+                    });
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                checkHealth();
+            }
+        });
+    }
+
+    /**
+     * Takes a newly connected player, to be placed on a backend. Can be called from any thread.
+     *
+     * @param channel the player's socket
+     */
+    public void accept(final SocketChannel channel) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                Arrival arrival = new Arrival(channel);
+                try {
+                    channel.configureBlocking(false);
+                    arrival.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    arrival.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets each backend's address, whether it is taking players, and its last report
+     *
+     * @return a line for each backend
+     */
+    @Override
+    public String[] getBackends() {
+        return backendStates.clone();
+    }
+
+    /**
+     * Gets the number of players passed on to a backend
+     *
+     * @return the number of players
+     */
+    @Override
+    public long getPlayersRouted() {
+        return playersRouted.get();
+    }
+
+    /**
+     * Gets the number of players turned away because no backend could take them
+     *
+     * @return the number of players
+     */
+    @Override
+    public long getPlayersRejected() {
+        return playersRejected.get();
+    }
+
+    /**
+     * Gets the number of players being passed through to a backend now
+     *
+     * @return the number of pipes
+     */
+    @Override
+    public int getOpenPipes() {
+        return openPipes.get();
+    }
+
+    /**
+     * Takes a backend out: it gets no more players, and leaves once the games on it are over. Can be called from any
+     * thread.
+     *
+     * @param backend the backend's address, as host:port
+     */
+    @Override
+    public void drain(final String backend) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Backend b : backends) {
+                    if (b.getName().equals(backend) && !b.draining) {
+                        b.draining = true;
+                        b.connection.send("DRAIN");
+                    }
+                }
+                publish();
+            }
+        });
+    }
+
+    /**
+     * Publishes the state of the backends every second. A backend's health is judged by when it last reported, at the
+     * time players are placed.
+     */
+    private void checkHealth() {
+        publish();
+        loop.schedule(HEALTH_INTERVAL, new Runnable() {
+            @Override
+            public void run() {
+                checkHealth();
+            }
+        });
+    }
+
+    /**
+     * Copies the state of the backends for monitoring
+     */
+    private void publish() {
+        long now = System.currentTimeMillis();
+        String[] states = new String[backends.size()];
+        for (int i = 0; i < states.length; i++) {
+            Backend b = backends.get(i);
+            states[i] = b.getName() + (b.draining ? " draining" : b.isHealthy(now) ? " up" : " not reporting") + ", "
+                    + b.players + " players, " + b.rooms + " rooms, " + b.queued + " waiting";
+        }
+        backendStates = states;
+    }
+
+    /**
+     * Chooses the backend for a player, the one filling the next room of the size they asked for if there is one
+     *
+     * @param players the room size
+     * @return the backend, or null if none is taking players
+     */
+    private Backend place(int players) {
+        long now = System.currentTimeMillis();
+        Filling room = filling.get(players);
+        if (room != null && room.seats > 0 && room.backend.isTakingPlayers(now)) {
+            room.seats--;
+            room.backend.routed++;
+            return room.backend;
+        }
+
+        Backend best = null;
+        for (Backend b : backends) {
+            if (b.isTakingPlayers(now) && (best == null || b.getLoad() < best.getLoad())) {
+                best = b;
+            }
+        }
+        if (best == null) {
+            filling.remove(players);
+            return null;
+        }
+
+        if (room == null) {
+            room = new Filling();
+            filling.put(players, room);
+        }
+        room.backend = best;
+        room.seats = players - 1;
+        best.routed++;
+        return best;
+    }
+
+    /**
+     * Passes a placed player's pipe to one of the pipe loops
+     *
+     * @param client     the player's socket
+     * @param backend    the backend's socket, connected
+     * @param fromClient what the player has sent already
+     */
+    private void startPipe(final SocketChannel client, final SocketChannel backend, final ByteBuffer fromClient) {
+        playersRouted.incrementAndGet();
+        openPipes.incrementAndGet();
+        final EventLoop pipeLoop = pipeLoops[nextLoop];
+        nextLoop = (nextLoop + 1) % pipeLoops.length;
+        pipeLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                new Pipe(client, backend, fromClient, new Runnable() {
+                    @Override
+                    public void run() {
+                        openPipes.decrementAndGet();
+                    }
+                }).start(pipeLoop);
+            }
+        });
+    }
+
+    /**
+     * The backend filling the next room of a size, and the players it still needs
+     */
+    private static class Filling {
+        private Backend backend;
+        private int seats;
+    }
+
+    /**
+     * A backend server, as it last reported on its control connection
+     */
+    private class Backend implements Connection.Handler {
+        private final Connection connection;
+        private InetSocketAddress address; //where players are sent, once the backend has said
+        private long lastReport;
+        private long players;
+        private long rooms;
+        private long queued;
+        private int routed; //players sent since the last report, which it didn't know about yet
+        private boolean draining;
+
+        Backend(Connection connection) {
+            this.connection = connection;
+            connection.setHandler(this);
+        }
+
+        /**
+         * Gets the backend's address as host:port
+         *
+         * @return the name
+         */
+        String getName() {
+            return address == null ? "?" : address.getAddress().getHostAddress() + ":" + address.getPort();
+        }
+
+        /**
+         * Determines whether the backend has reported lately
+         *
+         * @param now the time now
+         * @return true if it has
+         */
+        boolean isHealthy(long now) {
+            return now - lastReport <= HEALTH_TIMEOUT;
+        }
+
+        /**
+         * Determines whether the backend can be sent players
+         *
+         * @param now the time now
+         * @return true if it can
+         */
+        boolean isTakingPlayers(long now) {
+            return address != null && !draining && !connection.isClosed() && isHealthy(now);
+        }
+
+        /**
+         * Gets how busy the backend is, counting players sent since it last reported
+         *
+         * @return the number of players
+         */
+        long getLoad() {
+            return players + routed;
+        }
+
+        /**
+         * Reads a line from the backend: where to send players, its load, or that it is draining
+         *
+         * @param line the line
+         */
+        @Override
+        public void onLine(String line) {
+            StringTokenizer tokens = new StringTokenizer(line);
+            if (!tokens.hasMoreTokens()) {
+                return;
+            }
+            try {
+                String command = tokens.nextToken();
+                if (command.equals("BACKEND") && address == null) {
+                    InetSocketAddress remote = (InetSocketAddress) connection.getChannel().getRemoteAddress();
+                    address = new InetSocketAddress(remote.getAddress(), Integer.parseInt(tokens.nextToken()));
+                    lastReport = System.currentTimeMillis();
+                    backends.add(this);
+                    System.out.println("Backend " + getName() + " joined");
+                } else if (command.equals("LOAD")) {
+                    players = Long.parseLong(tokens.nextToken());
+                    rooms = Long.parseLong(tokens.nextToken());
+                    queued = Long.parseLong(tokens.nextToken());
+                    routed = 0;
+                    lastReport = System.currentTimeMillis();
+                } else if (command.equals("DRAIN")) {
+                    draining = true;
+                }
+            } catch (IOException | RuntimeException e) {
+                connection.close(); //not a backend
+            }
+        }
+
+        @Override
+        public void onFrame(int type, ByteBuffer payload) {
+            connection.close(); //backends only send lines
+        }
+
+        /**
+         * Forgets the backend once its control connection closes, which a drained backend does when it leaves
+         */
+        @Override
+        public void onClose() {
+            if (backends.remove(this)) {
+                System.out.println("Backend " + getName() + (draining ? " has drained" : " left"));
+                publish();
+            }
+        }
+    }
+
+    /**
+     * A player who has connected, waiting to be placed on a backend. Reads what the player sends until it says the
+     * room size they want, or until they have had as long to ask as the lobby would give them.
+     */
+    private class Arrival implements EventLoop.Endpoint {
+        private final SocketChannel client;
+        private final ByteBuffer received; //everything the player has sent, passed on to the backend
+        private SelectionKey key;
+        private Timeout request;
+        private Backend chosen;
+        private SocketChannel backend;
+        private SelectionKey backendKey;
+        private int players;
+        private int tries; //backends that failed to connect
+
+        Arrival(SocketChannel client) {
+            this.client = client;
+            this.received = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        /**
+         * Starts waiting for the player to ask for a room
+         *
+         * @throws java.io.IOException
+         */
+        void start() throws IOException {
+            key = loop.watch(client, SelectionKey.OP_READ, this);
+            request = loop.schedule(REQUEST_TIMEOUT, new Runnable() {
+                @Override
+                public void run() {
+                    request = null;
+                    route(0);
+                }
+            });
+        }
+
+        /**
+         * Reads from the player until the room size is known, or finishes connecting to the backend. The player is
+         * still read from while the backend is connected to, so a player who leaves meanwhile is noticed.
+         *
+         * @param key the socket's registration
+         */
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                if (key == backendKey) {
+                    if (key.isValid() && key.isConnectable() && backend.finishConnect()) {
+                        connected();
+                    }
+                    return;
+                }
+
+                if (key.isValid() && key.isReadable()) {
+                    if (client.read(received) == -1) {
+                        close();
+                        return;
+                    }
+                    if (chosen != null) { //already placed, so anything more is passed on with the rest
+                        if (!received.hasRemaining()) {
+                            key.interestOps(0); //until the pipe has sent some of it
+                        }
+                        return;
+                    }
+                    int requested = requested();
+                    if (requested >= 0) {
+                        route(requested);
+                    }
+                }
+            } catch (IOException e) {
+                if (key == backendKey) {
+                    retry();
+                } else {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Finds the room size in what the player has sent so far: in the handshake of a binary client, or in a
+         * text client's first line
+         *
+         * @return the room size, 0 for the default, or -1 if not known yet
+         */
+        private int requested() {
+            int length = received.position();
+            if (length == 0) {
+                return -1;
+            }
+
+            if (received.get(0) == BoggleProtocol.MAGIC[0]) {
+                int magic = BoggleProtocol.MAGIC.length;
+                if (length < magic + 4 + 1 + 1 + 2) { //the magic, the frame length, the type, the version, players
+                    return received.hasRemaining() ? -1 : 0;
+                }
+                return received.get(magic + 4) == BoggleProtocol.HELLO ? received.getShort(magic + 4 + 2) & 0xFFFF : 0;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (received.get(i) == '\n') {
+                    String line = new String(received.array(), 0, i, StandardCharsets.UTF_8);
+                    StringTokenizer tokens = new StringTokenizer(line);
+                    if (tokens.countTokens() == 2 && tokens.nextToken().equals("ROOM")) {
+                        try {
+                            return Integer.parseInt(tokens.nextToken());
+                        } catch (NumberFormatException e) {
+                            return 0;
+                        }
+                    }
+                    return 0;
+                }
+            }
+            return received.hasRemaining() ? -1 : 0; //a first line this long isn't a room request
+        }
+
+        /**
+         * Places the player on a backend and starts connecting to it
+         *
+         * @param requested the room size asked for, or anything out of range for the default
+         */
+        private void route(int requested) {
+            if (request != null) {
+                request.cancel();
+                request = null;
+            }
+            if (key.isValid() && !received.hasRemaining()) {
+                key.interestOps(0); //nothing more can be read until the pipe has sent some of it
+            }
+            players = requested <= 0 || requested > Lobby.MAX_ROOM_SIZE ? defaultPlayers : requested;
+            connect();
+        }
+
+        /**
+         * Connects to the backend chosen for the player
+         */
+        private void connect() {
+            chosen = place(players);
+            if (chosen == null) {
+                playersRejected.incrementAndGet();
+                close();
+                return;
+            }
+
+            try {
+                backend = SocketChannel.open();
+                backend.configureBlocking(false);
+                backend.socket().setTcpNoDelay(true);
+                if (backend.connect(chosen.address)) {
+                    connected();
+                } else {
+                    backendKey = loop.watch(backend, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException e) {
+                retry();
+            }
+        }
+
+        /**
+         * Tries another backend when the one chosen can't be reached, which is taken to be down until it reports
+         */
+        private void retry() {
+            closeBackend();
+            chosen.lastReport = 0;
+            filling.remove(players);
+            if (++tries > backends.size()) {
+                playersRejected.incrementAndGet();
+                close();
+            } else {
+                connect();
+            }
+        }
+
+        /**
+         * Hands the player and the backend over to a pipe
+         */
+        private void connected() {
+            key.cancel();
+            if (backendKey != null) {
+                backendKey.cancel();
+            }
+            startPipe(client, backend, received); //becomes the pipe's buffer from the player
+        }
+
+        /**
+         * Closes the socket to the backend, if one was opened
+         */
+        private void closeBackend() {
+            if (backendKey != null) {
+                backendKey.cancel();
+                backendKey = null;
+            }
+            if (backend != null) {
+                try {
+                    backend.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                backend = null;
+            }
+        }
+
+        /**
+         * Drops the player, who left or couldn't be placed
+         */
+        @Override
+        public void close() {
+            if (request != null) {
+                request.cancel();
+                request = null;
+            }
+            closeBackend();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ytsdev.bogglegame.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The RouterLink class. Connects a server running as a backend of a {@link BoggleRouter} to the router's control
+ * port, and keeps the router up to date on the server's load. It talks to the router a line at a time: "BACKEND" and
+ * the port players are sent to, once, then every second "LOAD" with the players connected, the rooms playing and the
+ * players waiting in the lobby. If the link is lost, it connects again, so the router can be restarted.
+ * <p>
+ * When the router says "DRAIN", the server is being taken out: it stops taking players, starts rooms for the ones
+ * waiting in the lobby, and is finished once no player is left in a handshake, in the lobby or in a game. A server
+ * that connects again while draining says "DRAIN" back, so the router knows not to send it players.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class RouterLink implements Runnable {
+    private static final int REPORT_INTERVAL = 1000;
+    private static final int CONNECT_TIMEOUT = 2000;
+    private static final long RETRY_DELAY = 2000;
+
+    private final InetSocketAddress router;
+    private final int port;
+    private final Lobby lobby;
+    private final Runnable stopAccepting;
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private volatile boolean draining;
+
+    /**
+     * Creates a link to a router. It does nothing until it is run by a thread.
+     *
+     * @param router        the router's control address
+     * @param port          the port this server takes players on
+     * @param lobby         the server's lobby
+     * @param stopAccepting stops the server taking players, when the router drains it
+     */
+    public RouterLink(InetSocketAddress router, int port, Lobby lobby, Runnable stopAccepting) {
+        this.router = router;
+        this.port = port;
+        this.lobby = lobby;
+        this.stopAccepting = stopAccepting;
+    }
+
+    /**
+     * Reports to the router until the server has been drained, connecting again whenever the link is lost
+     */
+    @Override
+    public void run() {
+        while (drained.getCount() > 0) {
+            try {
+                Socket socket = new Socket();
+                try {
+                    socket.connect(router, CONNECT_TIMEOUT);
+                    socket.setSoTimeout(REPORT_INTERVAL);
+                    report(socket);
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                System.out.println("Lost the router at " + router + ": " + e.getMessage());
+            }
+
+            if (drained.getCount() > 0) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the load every second, and listens for the router telling the server to drain
+     *
+     * @param socket the socket connected to the router
+     * @throws java.io.IOException if the link is lost
+     */
+    private void report(Socket socket) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+        out.println("BACKEND " + port);
+        if (draining) { //connected again while draining, so the router doesn't send any more players
+            out.println("DRAIN");
+        }
+        long nextReport = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (now >= nextReport) {
+                //read in the order players pass through them, so one moving on is seen in the next
+                int handshaking = lobby.getHandshakingPlayers();
+                int queued = lobby.getQueuedPlayers();
+                ServerMetrics metrics = ServerMetrics.get();
+                long players = metrics.getConnectedPlayers();
+                out.println("LOAD " + players + " " + metrics.getActiveRooms() + " " + queued);
+                if (out.checkError()) {
+                    throw new IOException("the router closed the link");
+                }
+                if (draining && handshaking == 0 && queued == 0 && players <= 0) { //every game has finished
+                    drained.countDown();
+                    return;
+                }
+                nextReport = now + REPORT_INTERVAL;
+            }
+
+            String line;
+            try {
+                line = in.readLine();
+            } catch (SocketTimeoutException e) {
+                continue; //time for the next report
+            }
+            if (line == null) {
+                throw new IOException("the router closed the link");
+            }
+            if (line.equals("DRAIN") && !draining) {
+                System.out.println("Draining for the router");
+                draining = true;
+                stopAccepting.run();
+                lobby.drain();
+            }
+        }
+    }
+
+    /**
+     * Waits until the router has drained the server and every player has left
+     *
+     * @throws InterruptedException
+     */
+    public void awaitDrained() throws InterruptedException {
+        drained.await();
+    }
+}
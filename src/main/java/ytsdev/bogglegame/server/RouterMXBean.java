@@ -0,0 +1,20 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The RouterMXBean interface. What the router shows through JMX, under ytsdev.bogglegame:type=Router, with an
+ * operation to take a backend out. Backends are named by their address, as host:port.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface RouterMXBean {
+    String[] getBackends();
+
+    long getPlayersRouted();
+
+    long getPlayersRejected();
+
+    int getOpenPipes();
+
+    void drain(String backend);
+}
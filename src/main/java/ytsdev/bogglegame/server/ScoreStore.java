@@ -0,0 +1,937 @@
+package ytsdev.bogglegame.server;
+
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ScoreStore class. Keeps every player's totals across games and restarts of the server, and a leaderboard of the
+ * players with the most points.
+ * <p>
+ * Each round's results are appended to a log, which is the record of everything that happened. Each player's totals
+ * are kept in a hash table keyed by name, in a second file that is mapped into memory, so a player is looked up
+ * without reading the log. The table is only trusted if the server closed the store: after a crash it is rebuilt from
+ * the log. Once the log has grown to several times what the totals take, it is compacted to one record of totals for
+ * each player.
+ * <p>
+ * The results are written by a thread of the store's own. The games only hand them over, so a game never waits for
+ * the disk, and all the results that arrive while one batch is being written go in the next batch, with one sync.
+ * The leaderboard is updated as each result is written, and read without locking.
+ * <p>
+ * The log starts with a magic number, a version and an id that changes when the log is compacted. Each record is a
+ * type byte and the player's name as in {@link BoggleProtocol}, then for a round's result the points as an int and
+ * whether the player won the round as a byte, or for a player's totals the rounds and wins as ints, the points as a
+ * long and the best round as an int.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class ScoreStore implements ScoreStoreMXBean {
+    private static final int LOG_MAGIC = 0x4247534C; //"BGSL"
+    private static final int INDEX_MAGIC = 0x42475349; //"BGSI"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER = 16; //magic, version, log id
+    private static final int INDEX_HEADER = 32; //magic, version, log id, log length applied, capacity, count
+    private static final int SLOT = 40; //hash, record offset, rounds, wins, points, best round, unused
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final byte RESULT = 1;
+    private static final byte TOTAL = 2;
+    private static final int RESULT_SIZE = 5; //after the name
+    private static final int TOTAL_SIZE = 20;
+    private static final int AVERAGE_TOTAL = 1 + 1 + 16 + TOTAL_SIZE; //a total record for a 16 letter name
+
+    private static final int MAX_BATCH = 4096;
+    private static final int LEADERS = 100; //the most leaders a query can ask for
+    private static final int BOARD_LEADERS = 10; //the leaders shown through JMX
+    private static final long COMPACT_SIZE = 1 << 20; //smaller logs aren't worth compacting
+    private static final int COMPACT_RATIO = 4; //compact when the log is this many times the size of the totals
+
+    private static final Object COMPACT = new Object(); //queued to ask the writer to compact
+    private static final Object CLOSE = new Object(); //queued to stop the writer
+
+    private final File logFile;
+    private final File indexFile;
+
+    //changed only by the writer thread, and read under the store's lock
+    private FileChannel log;
+    private volatile long logLength;
+    private long logId;
+    private long compactedLength; //the length of the log when it was last compacted
+    private MappedByteBuffer index;
+    private int capacity;
+    private volatile int count;
+
+    private final ByteBuffer nameBuffer = ByteBuffer.allocate(1 + BoggleProtocol.MAX_STRING);
+    private final BlockingQueue<Object> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    //the leaders, kept by the writer thread and published for queries
+    private final TreeSet<Stats> top;
+    private final Map<String, Stats> topByName;
+    private volatile Stats[] leaders;
+
+    private final AtomicLong groupCommits = new AtomicLong();
+    private final AtomicLong resultsWritten = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    /**
+     * A player's totals
+     */
+    public static class Stats {
+        private final String name;
+        private final int rounds;
+        private final int wins;
+        private final long points;
+        private final int best;
+
+        Stats(String name, int rounds, int wins, long points, int best) {
+            this.name = name;
+            this.rounds = rounds;
+            this.wins = wins;
+            this.points = points;
+            this.best = best;
+        }
+
+        /**
+         * Gets the player's name
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of rounds the player has played
+         *
+         * @return the number of rounds
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * Gets the number of rounds the player scored the most in, including ties
+         *
+         * @return the number of rounds
+         */
+        public int getWins() {
+            return wins;
+        }
+
+        /**
+         * Gets the points the player has scored in all their rounds
+         *
+         * @return the points
+         */
+        public long getPoints() {
+            return points;
+        }
+
+        /**
+         * Gets the most points the player has scored in a round
+         *
+         * @return the points
+         */
+        public int getBest() {
+            return best;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + points;
+        }
+    }
+
+    /**
+     * A round's result waiting to be written
+     */
+    private static class Result {
+        final String name;
+        final int points;
+        final boolean won;
+
+        Result(String name, int points, boolean won) {
+            this.name = name;
+            this.points = points;
+            this.won = won;
+        }
+    }
+
+    /**
+     * Orders the leaders by points, most first, and then by name
+     */
+    private static final Comparator<Stats> BY_POINTS = new Comparator<Stats>() {
+        @Override
+        public int compare(Stats a, Stats b) {
+            if (a.points != b.points) {
+                return a.points > b.points ? -1 : 1;
+            }
+            return a.name.compareTo(b.name);
+        }
+    };
+
+    private ScoreStore(File logFile, File indexFile) {
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        top = new TreeSet<>(BY_POINTS);
+        topByName = new HashMap<>();
+        leaders = new Stats[0];
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "boggle-scores");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the store in a pair of files, name.log and name.idx, creating them if they don't exist. If the server
+     * stopped without closing the store, its totals are worked out again from the log.
+     *
+     * @param name the name of the files without the extension
+     * @return the store
+     * @throws java.io.IOException if the files cannot be read or written, or the log is not a score log
+     */
+    public static ScoreStore open(String name) throws IOException {
+        ScoreStore store = new ScoreStore(new File(name + ".log"), new File(name + ".idx"));
+        store.load();
+        store.writer.start();
+        return store;
+    }
+
+    /**
+     * Opens the log and the table, and brings the table up to date with the log
+     *
+     * @throws java.io.IOException
+     */
+    private void load() throws IOException {
+        log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        logLength = log.size();
+        if (logLength == 0) { //a new log
+            logId = ThreadLocalRandom.current().nextLong();
+            writeLogHeader(log, logId);
+            logLength = LOG_HEADER;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+            log.read(header, 0);
+            header.flip();
+            if (header.remaining() < LOG_HEADER || header.getInt() != LOG_MAGIC) {
+                throw new IOException(logFile + " is not a score log");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException(logFile + " has an unsupported version");
+            }
+            logId = header.getLong();
+        }
+
+        long applied = mapIndex();
+        index.putLong(16, 0); //in use, so the table is rebuilt if the server stops without closing it
+        index.force();
+        replay(applied);
+        compactedLength = LOG_HEADER + (long) count * AVERAGE_TOTAL;
+        findLeaders();
+    }
+
+    /**
+     * Maps the table, or makes a new one if it doesn't go with the log
+     *
+     * @return the length of the log the table has the totals for
+     * @throws java.io.IOException
+     */
+    private long mapIndex() throws IOException {
+        if (indexFile.length() >= INDEX_HEADER) {
+            MappedByteBuffer mapped = map(indexFile, indexFile.length());
+            int capacity = mapped.getInt(24);
+            long applied = mapped.getLong(16);
+            if (mapped.getInt(0) == INDEX_MAGIC && mapped.getInt(4) == VERSION && mapped.getLong(8) == logId
+                    && applied >= LOG_HEADER && applied <= logLength && Integer.bitCount(capacity) == 1
+                    && indexFile.length() == INDEX_HEADER + (long) capacity * SLOT) {
+                index = mapped;
+                this.capacity = capacity;
+                count = mapped.getInt(28);
+                return applied;
+            }
+        }
+
+        index = newIndex(indexFile, MIN_CAPACITY);
+        capacity = MIN_CAPACITY;
+        count = 0;
+        return LOG_HEADER;
+    }
+
+    /**
+     * Adds the records in the log after what the table already has. A record cut short by a crash is removed.
+     *
+     * @param from where in the log to start
+     * @throws java.io.IOException
+     */
+    private void replay(long from) throws IOException {
+        if (from < logLength) {
+            ByteBuffer records = log.map(FileChannel.MapMode.READ_ONLY, from, logLength - from);
+            while (records.remaining() > 2) {
+                int start = records.position();
+                byte type = records.get();
+                int length = records.get() & 0xFF;
+                int size = type == RESULT ? RESULT_SIZE : type == TOTAL ? TOTAL_SIZE : -1;
+                if (size < 0 || records.remaining() < length + size) {
+                    records.position(start);
+                    break;
+                }
+                byte[] key = new byte[length];
+                records.get(key);
+                long offset = from + start;
+                if (type == RESULT) {
+                    int points = records.getInt();
+                    boolean won = records.get() != 0;
+                    add(key, offset, 1, won ? 1 : 0, points, points);
+                } else {
+                    int rounds = records.getInt();
+                    int wins = records.getInt();
+                    long points = records.getLong();
+                    int best = records.getInt();
+                    add(key, offset, rounds, wins, points, best);
+                }
+            }
+
+            long end = from + records.position();
+            if (end < logLength) {
+                log.truncate(end);
+                logLength = end;
+            }
+        }
+    }
+
+    /**
+     * Finds the players with the most points, reading the names of only those players and any tied with the last
+     *
+     * @throws java.io.IOException
+     */
+    private void findLeaders() throws IOException {
+        PriorityQueue<Integer> most = new PriorityQueue<>(LEADERS + 1, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(index.getLong(a + 24), index.getLong(b + 24));
+            }
+        });
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = INDEX_HEADER + slot * SLOT;
+            if (index.getLong(position) != 0) {
+                most.add(position);
+                if (most.size() > LEADERS) {
+                    most.poll(); //the fewest points
+                }
+            }
+        }
+
+        for (int position : most) {
+            Stats stats = stats(new String(readName(index.getLong(position + 8)), StandardCharsets.UTF_8), position);
+            top.add(stats);
+            topByName.put(stats.name, stats);
+        }
+
+        if (top.size() == LEADERS) { //the players tied with the last leader go by name, which the queue didn't look at
+            long last = top.last().points;
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = INDEX_HEADER + slot * SLOT;
+                if (index.getLong(position) != 0 && index.getLong(position + 24) == last) {
+                    offerLeader(stats(new String(readName(index.getLong(position + 8)), StandardCharsets.UTF_8),
+                            position));
+                }
+            }
+        }
+        leaders = top.toArray(new Stats[top.size()]);
+    }
+
+    /**
+     * Hands over a player's result for a round to be written. Never waits for the disk, and can be called from any
+     * thread.
+     *
+     * @param name   the player's name
+     * @param points the points the player scored in the round
+     * @param won    true if no one scored more in the round
+     */
+    public void record(String name, int points, boolean won) {
+        pending.add(new Result(name, points, won));
+    }
+
+    /**
+     * Gets a player's totals
+     *
+     * @param name the player's name
+     * @return the totals, or null if the player has no results written yet
+     */
+    public synchronized Stats getStats(String name) {
+        byte[] key = key(name);
+        try {
+            int position = find(key, hash(key));
+            return position < 0 ? null : stats(new String(key, StandardCharsets.UTF_8), position);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Gets the players with the most points, as of the last results written. Can be called from any thread, and
+     * never waits for the writer.
+     *
+     * @param n the number of players, up to 100
+     * @return the players, most points first
+     */
+    public List<Stats> getLeaders(int n) {
+        Stats[] leaders = this.leaders;
+        return Collections.unmodifiableList(Arrays.asList(leaders).subList(0, Math.min(n, leaders.length)));
+    }
+
+    /**
+     * Writes the results waiting, then closes the files. Results recorded after closing are lost.
+     *
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException {
+        pending.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            log.force(true);
+            index.putLong(16, logLength); //the table is up to date with the log
+            index.force();
+            log.close();
+        }
+    }
+
+    /**
+     * Writes the results as they come in, a batch at a time, on the store's own thread
+     */
+    private void write() {
+        List<Object> batch = new ArrayList<>();
+        long[] offsets = new long[MAX_BATCH];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * (AVERAGE_TOTAL + RESULT_SIZE));
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+
+            boolean compact = false;
+            boolean closing = false;
+            buffer.clear();
+            int results = 0;
+            List<Result> written = new ArrayList<>(batch.size());
+            for (Object item : batch) {
+                if (item == COMPACT) {
+                    compact = true;
+                } else if (item == CLOSE) {
+                    closing = true;
+                } else {
+                    Result result = (Result) item;
+                    if (buffer.remaining() < 2 + BoggleProtocol.MAX_STRING + RESULT_SIZE) {
+                        buffer = grow(buffer);
+                    }
+                    offsets[results++] = logLength + buffer.position();
+                    buffer.put(RESULT);
+                    BoggleProtocol.putString(buffer, result.name);
+                    buffer.putInt(result.points);
+                    buffer.put((byte) (result.won ? 1 : 0));
+                    written.add(result);
+                }
+            }
+            batch.clear();
+
+            try {
+                if (results > 0) {
+                    commit(buffer, written, offsets);
+                }
+                long live = Math.max(compactedLength, LOG_HEADER + (long) count * AVERAGE_TOTAL);
+                if (compact || logLength > Math.max(COMPACT_SIZE, COMPACT_RATIO * live)) {
+                    rewrite();
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); //the batch is lost, but the store carries on with the next one
+            }
+
+            if (closing) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of results to the log with one sync, then adds them to the totals and the leaderboard. The table
+     * is made big enough for the whole batch first, so once the results are in the log they are never written over,
+     * and if they can't be added the table is made again from the log.
+     *
+     * @param buffer  the encoded results
+     * @param results the results
+     * @param offsets where each result is in the log
+     * @throws java.io.IOException
+     */
+    private void commit(ByteBuffer buffer, List<Result> results, long[] offsets) throws IOException {
+        synchronized (this) {
+            int needed = capacity;
+            while ((count + results.size()) * 4L > needed * 3L) { //as if every result were a new player
+                needed *= 2;
+            }
+            if (needed != capacity) {
+                resize(needed);
+            }
+        }
+
+        buffer.flip();
+        long end = logLength + buffer.remaining();
+        while (buffer.hasRemaining()) {
+            log.write(buffer, end - buffer.remaining());
+        }
+        log.force(false); //one sync for the whole batch
+
+        boolean changed = false;
+        synchronized (this) {
+            logLength = end; //the next batch goes after this one, whatever happens to the table
+            try {
+                for (int i = 0; i < results.size(); i++) {
+                    Result result = results.get(i);
+                    byte[] key = key(result.name);
+                    int position = add(key, offsets[i], 1, result.won ? 1 : 0, result.points, result.points);
+                    changed |= offerLeader(stats(new String(key, StandardCharsets.UTF_8), position));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                rebuild();
+                changed = true;
+            }
+        }
+        if (changed) {
+            leaders = top.toArray(new Stats[top.size()]);
+        }
+
+        groupCommits.incrementAndGet();
+        resultsWritten.addAndGet(results.size());
+    }
+
+    /**
+     * Makes the table and the leaderboard again from the whole log, when the table may have missed some of it
+     *
+     * @throws java.io.IOException
+     */
+    private void rebuild() throws IOException {
+        index = newIndex(indexFile, capacity);
+        index.putLong(16, 0); //in use
+        count = 0;
+        replay(LOG_HEADER);
+        top.clear();
+        topByName.clear();
+        findLeaders();
+    }
+
+    /**
+     * Puts a player's new totals on the leaderboard if they have made it. A player's points never go down, so a player
+     * who isn't on the board can only make it by passing the last one on it.
+     *
+     * @param stats the player's totals
+     * @return true if the leaderboard changed
+     */
+    private boolean offerLeader(Stats stats) {
+        Stats old = topByName.remove(stats.name);
+        if (old != null) {
+            top.remove(old);
+        } else if (top.size() >= LEADERS) {
+            Stats last = top.last();
+            if (BY_POINTS.compare(stats, last) > 0) {
+                return false;
+            }
+            top.remove(last);
+            topByName.remove(last.name);
+        }
+        top.add(stats);
+        topByName.put(stats.name, stats);
+        return true;
+    }
+
+    /**
+     * Adds to a player's totals in the table, adding the player if they are new
+     *
+     * @param key    the player's name as written in the log
+     * @param offset where in the log the player's record is
+     * @param rounds the rounds to add
+     * @param wins   the wins to add
+     * @param points the points to add
+     * @param best   the best round in the record
+     * @return where the player is in the table
+     * @throws java.io.IOException
+     */
+    private int add(byte[] key, long offset, int rounds, int wins, long points, int best) throws IOException {
+        long hash = hash(key);
+        int position = find(key, hash);
+        if (position < 0) {
+            if ((count + 1) * 4L > capacity * 3L) { //keep the table at most 3/4 full
+                resize(capacity * 2);
+                position = find(key, hash);
+            }
+            position = -position - 1;
+            index.putLong(position, hash);
+            index.putLong(position + 8, offset);
+            count++;
+            index.putInt(28, count);
+        }
+
+        index.putInt(position + 16, index.getInt(position + 16) + rounds);
+        index.putInt(position + 20, index.getInt(position + 20) + wins);
+        index.putLong(position + 24, index.getLong(position + 24) + points);
+        index.putInt(position + 32, Math.max(index.getInt(position + 32), best));
+        return position;
+    }
+
+    /**
+     * Finds a player in the table, by probing from the slot their hash falls in
+     *
+     * @param key  the player's name as written in the log
+     * @param hash the hash of the name
+     * @return where the player is, or if they aren't in the table, -1 minus where to add them
+     * @throws java.io.IOException
+     */
+    private int find(byte[] key, long hash) throws IOException {
+        int slot = (int) (hash & (capacity - 1));
+        while (true) {
+            int position = INDEX_HEADER + slot * SLOT;
+            long found = index.getLong(position);
+            if (found == 0) {
+                return -position - 1;
+            }
+            if (found == hash && Arrays.equals(key, readName(index.getLong(position + 8)))) {
+                return position;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Gets a player's totals from the table
+     *
+     * @param name     the player's name
+     * @param position where the player is in the table
+     * @return the totals
+     */
+    private Stats stats(String name, int position) {
+        return new Stats(name, index.getInt(position + 16), index.getInt(position + 20),
+                index.getLong(position + 24), index.getInt(position + 32));
+    }
+
+    /**
+     * Moves the table to a new file with more slots
+     *
+     * @param capacity the number of slots, a power of two
+     * @throws java.io.IOException
+     */
+    private void resize(int capacity) throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        MappedByteBuffer bigger = newIndex(temp, capacity);
+        for (int slot = 0; slot < this.capacity; slot++) {
+            int position = INDEX_HEADER + slot * SLOT;
+            long hash = index.getLong(position);
+            if (hash != 0) { //the names are all different, so there is no need to compare them
+                int to = (int) (hash & (capacity - 1));
+                while (bigger.getLong(INDEX_HEADER + to * SLOT) != 0) {
+                    to = (to + 1) & (capacity - 1);
+                }
+                for (int i = 0; i < SLOT; i += 8) {
+                    bigger.putLong(INDEX_HEADER + to * SLOT + i, index.getLong(position + i));
+                }
+            }
+        }
+        bigger.putLong(16, 0); //in use
+        bigger.putInt(28, count);
+        bigger.force();
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        index = bigger;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Asks for the log to be compacted to one record of totals for each player, after the results already recorded
+     */
+    @Override
+    public void compact() {
+        pending.add(COMPACT);
+    }
+
+    /**
+     * Writes a new log with one record of totals for each player, and a table to go with it, and puts them in place
+     * of the old ones. The new log is moved into place first, and has a new id, so if the server stops before the
+     * table is moved the old table doesn't match and is rebuilt.
+     *
+     * @throws java.io.IOException
+     */
+    private synchronized void rewrite() throws IOException {
+        File tempLog = new File(logFile.getPath() + ".tmp");
+        File tempIndex = new File(indexFile.getPath() + ".tmp");
+        long id = ThreadLocalRandom.current().nextLong();
+
+        FileChannel compacted = FileChannel.open(tempLog.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer table = newIndex(tempIndex, capacity);
+        try {
+            writeLogHeader(compacted, id);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            long length = LOG_HEADER;
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = INDEX_HEADER + slot * SLOT;
+                if (index.getLong(position) == 0) {
+                    continue;
+                }
+                if (buffer.remaining() < 2 + BoggleProtocol.MAX_STRING + TOTAL_SIZE) {
+                    length += flush(compacted, buffer, length);
+                }
+
+                //the same slot in the new table, pointing to the player's record in the new log
+                for (int i = 0; i < SLOT; i += 8) {
+                    table.putLong(position + i, index.getLong(position + i));
+                }
+                table.putLong(position + 8, length + buffer.position());
+
+                byte[] key = readName(index.getLong(position + 8));
+                buffer.put(TOTAL);
+                buffer.put((byte) key.length);
+                buffer.put(key);
+                buffer.putInt(index.getInt(position + 16));
+                buffer.putInt(index.getInt(position + 20));
+                buffer.putLong(index.getLong(position + 24));
+                buffer.putInt(index.getInt(position + 32));
+            }
+            length += flush(compacted, buffer, length);
+            compacted.force(true);
+
+            table.putLong(8, id);
+            table.putLong(16, 0); //in use
+            table.putInt(28, count);
+            table.force();
+
+            Files.move(tempLog.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndex.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            log.close();
+            log = compacted;
+            logLength = length;
+            compactedLength = length;
+            logId = id;
+            index = table;
+            compactions.incrementAndGet();
+        } catch (IOException e) {
+            compacted.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes what is in a buffer to a file, and empties the buffer
+     *
+     * @param channel  the file
+     * @param buffer   the buffer
+     * @param position where in the file to write
+     * @return the number of bytes written
+     * @throws java.io.IOException
+     */
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + written - buffer.remaining());
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Reads a player's name from their record in the log
+     *
+     * @param offset where the record is
+     * @return the name as written
+     * @throws java.io.IOException
+     */
+    private byte[] readName(long offset) throws IOException {
+        nameBuffer.clear();
+        while (nameBuffer.hasRemaining() && log.read(nameBuffer, offset + 1 + nameBuffer.position()) > 0) {
+            //read the length and as much of the name as there is
+        }
+        nameBuffer.flip();
+        int length = nameBuffer.get() & 0xFF;
+        byte[] name = new byte[length];
+        nameBuffer.get(name);
+        return name;
+    }
+
+    /**
+     * Gets a name as it is written in the log, cut short to the length the protocol allows
+     *
+     * @param name the name
+     * @return the name in UTF-8
+     */
+    private static byte[] key(String name) {
+        ByteBuffer buffer = ByteBuffer.allocate(BoggleProtocol.stringSize(name));
+        BoggleProtocol.putString(buffer, name);
+        return Arrays.copyOfRange(buffer.array(), 1, buffer.position());
+    }
+
+    /**
+     * Hashes a name with 64 bit FNV-1a. 0 marks an empty slot, so it is never returned.
+     *
+     * @param key the name in UTF-8
+     * @return the hash
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Writes the header of a new log
+     *
+     * @param channel the log
+     * @param id      the log's id
+     * @throws java.io.IOException
+     */
+    private static void writeLogHeader(FileChannel channel, long id) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        header.putInt(LOG_MAGIC).putInt(VERSION).putLong(id).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Makes an empty table in a new file, for the current log
+     *
+     * @param file     the file
+     * @param capacity the number of slots, a power of two
+     * @return the table
+     * @throws java.io.IOException
+     */
+    private MappedByteBuffer newIndex(File file, int capacity) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0); //start with every slot empty
+            out.setLength(INDEX_HEADER + (long) capacity * SLOT);
+        } finally {
+            out.close();
+        }
+
+        MappedByteBuffer table = map(file, INDEX_HEADER + (long) capacity * SLOT);
+        table.putInt(0, INDEX_MAGIC);
+        table.putInt(4, VERSION);
+        table.putLong(8, logId);
+        table.putLong(16, LOG_HEADER);
+        table.putInt(24, capacity);
+        table.putInt(28, 0);
+        return table;
+    }
+
+    /**
+     * Maps a file to read and write
+     *
+     * @param file   the file
+     * @param length the number of bytes to map
+     * @return the mapping
+     * @throws java.io.IOException
+     */
+    private static MappedByteBuffer map(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } finally {
+            raf.close(); //the mapping stays valid after the file is closed
+        }
+    }
+
+    /**
+     * Doubles a buffer, keeping what is in it
+     *
+     * @param buffer the buffer
+     * @return the bigger buffer
+     */
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    @Override
+    public int getPlayers() {
+        return count;
+    }
+
+    @Override
+    public int getPendingResults() {
+        return pending.size();
+    }
+
+    @Override
+    public long getLogSize() {
+        return logLength;
+    }
+
+    @Override
+    public long getGroupCommits() {
+        return groupCommits.get();
+    }
+
+    @Override
+    public long getResultsWritten() {
+        return resultsWritten.get();
+    }
+
+    @Override
+    public long getCompactions() {
+        return compactions.get();
+    }
+
+    @Override
+    public String[] getLeaderboard() {
+        List<Stats> leaders = getLeaders(BOARD_LEADERS);
+        String[] board = new String[leaders.size()];
+        for (int i = 0; i < board.length; i++) {
+            board[i] = leaders.get(i).toString();
+        }
+        return board;
+    }
+}
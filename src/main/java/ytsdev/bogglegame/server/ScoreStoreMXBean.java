@@ -0,0 +1,26 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The ScoreStoreMXBean interface. What the score store shows through JMX, under ytsdev.bogglegame:type=ScoreStore,
+ * with the leaderboard and an operation to compact the log.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface ScoreStoreMXBean {
+    int getPlayers();
+
+    int getPendingResults();
+
+    long getLogSize();
+
+    long getGroupCommits();
+
+    long getResultsWritten();
+
+    long getCompactions();
+
+    String[] getLeaderboard();
+
+    void compact();
+}
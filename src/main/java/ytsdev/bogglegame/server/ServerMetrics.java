@@ -0,0 +1,263 @@
+package ytsdev.bogglegame.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The ServerMetrics class. Counts what the server is doing and how long each step of a game takes, and shows it
+ * through JMX so it can be watched with jconsole or any other JMX client.
+ * <p>
+ * The game loops record into striped counters and histograms, which never lock or allocate, so watching the server
+ * doesn't slow it down. The rates are worked out once a second on the lobby's loop instead of when they are recorded.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final long SAMPLE_INTERVAL = 1000;
+    private static final int SAMPLES = 5; //the rates are averaged over this many intervals
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final LongAdder activeRooms = new LongAdder();
+    private final LongAdder connectedPlayers = new LongAdder(); //with a place in a room, which draining waits out
+    private final Rate rounds = new Rate();
+    private final Rate wordsSubmitted = new Rate();
+    private final Rate wordsValidated = new Rate();
+
+    private final LatencyHistogram handshake = new LatencyHistogram();
+    private final LatencyHistogram newRound = new LatencyHistogram();
+    private final LatencyHistogram retrieveWords = new LatencyHistogram();
+    private final LatencyHistogram scoring = new LatencyHistogram();
+    private final LatencyHistogram sendResults = new LatencyHistogram();
+    private final LatencyHistogram confirmNew = new LatencyHistogram();
+
+    /**
+     * A count and how fast it has been going up lately
+     */
+    private static class Rate {
+        private final LongAdder count = new LongAdder();
+        private final long[] samples = new long[SAMPLES + 1]; //only touched by the sampling loop
+        private int next;
+        private int taken;
+        private volatile double perSecond;
+
+        /**
+         * Notes the count, and works out the rate since the oldest count kept
+         */
+        void sample() {
+            long now = count.sum();
+            samples[next] = now;
+            next = (next + 1) % samples.length;
+            if (taken < SAMPLES) {
+                taken++;
+            }
+            long oldest = samples[(next + samples.length - 1 - taken) % samples.length];
+            perSecond = (now - oldest) * 1000.0 / (taken * SAMPLE_INTERVAL);
+        }
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Gets the metrics for this server
+     *
+     * @return the metrics
+     */
+    public static ServerMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Makes the metrics visible through JMX, and starts working out the rates
+     *
+     * @param loop the loop to work out the rates on, which shouldn't be running games
+     * @throws JMException if the metrics can't be registered
+     */
+    public void start(final EventLoop loop) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("ytsdev.bogglegame:type=ServerMetrics"));
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                sample(loop);
+            }
+        });
+    }
+
+    /**
+     * Works out the rates, and schedules the next time
+     *
+     * @param loop the loop doing the sampling
+     */
+    private void sample(final EventLoop loop) {
+        rounds.sample();
+        wordsSubmitted.sample();
+        wordsValidated.sample();
+        loop.schedule(SAMPLE_INTERVAL, new Runnable() {
+            @Override
+            public void run() {
+                sample(loop);
+            }
+        });
+    }
+
+    void roomStarted() {
+        activeRooms.increment();
+    }
+
+    void roomFinished() {
+        activeRooms.decrement();
+    }
+
+    void playerConnected() {
+        connectedPlayers.increment();
+    }
+
+    void playerDisconnected() {
+        connectedPlayers.decrement();
+    }
+
+    void roundCompleted() {
+        rounds.count.increment();
+    }
+
+    /**
+     * Counts a word sent by a player
+     *
+     * @param valid true if the word is on the board
+     */
+    void wordSubmitted(boolean valid) {
+        wordsSubmitted.count.increment();
+        if (valid) {
+            wordsValidated.count.increment();
+        }
+    }
+
+    /**
+     * Records how long a player took from connecting to asking for a room
+     *
+     * @param start when they connected, from {@link System#nanoTime()}
+     */
+    void handshake(long start) {
+        handshake.recordSince(start);
+    }
+
+    /**
+     * Records how long it took to take a board and send it to the players
+     *
+     * @param start when the round started, from {@link System#nanoTime()}
+     */
+    void newRound(long start) {
+        newRound.recordSince(start);
+    }
+
+    /**
+     * Records how long the players took to send all their words, from the board being sent
+     *
+     * @param start when the board was sent, from {@link System#nanoTime()}
+     */
+    void retrieveWords(long start) {
+        retrieveWords.recordSince(start);
+    }
+
+    /**
+     * Records how long it took to remove the duplicate words and score the round
+     *
+     * @param start when scoring started, from {@link System#nanoTime()}
+     */
+    void scoring(long start) {
+        scoring.recordSince(start);
+    }
+
+    /**
+     * Records how long it took to rank the players and send them the results
+     *
+     * @param start when the results started, from {@link System#nanoTime()}
+     */
+    void sendResults(long start) {
+        sendResults.recordSince(start);
+    }
+
+    /**
+     * Records how long the players took to say whether to play again, from the results being sent
+     *
+     * @param start when the results were sent, from {@link System#nanoTime()}
+     */
+    void confirmNew(long start) {
+        confirmNew.recordSince(start);
+    }
+
+    @Override
+    public long getActiveRooms() {
+        return activeRooms.sum();
+    }
+
+    @Override
+    public long getConnectedPlayers() {
+        return connectedPlayers.sum();
+    }
+
+    @Override
+    public long getRoundsCompleted() {
+        return rounds.count.sum();
+    }
+
+    @Override
+    public double getRoundsPerSecond() {
+        return rounds.perSecond;
+    }
+
+    @Override
+    public long getWordsSubmitted() {
+        return wordsSubmitted.count.sum();
+    }
+
+    @Override
+    public double getWordsSubmittedPerSecond() {
+        return wordsSubmitted.perSecond;
+    }
+
+    @Override
+    public long getWordsValidated() {
+        return wordsValidated.count.sum();
+    }
+
+    @Override
+    public double getWordsValidatedPerSecond() {
+        return wordsValidated.perSecond;
+    }
+
+    @Override
+    public LatencySnapshot getHandshake() {
+        return handshake.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getNewRound() {
+        return newRound.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRetrieveWords() {
+        return retrieveWords.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getScoring() {
+        return scoring.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSendResults() {
+        return sendResults.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getConfirmNew() {
+        return confirmNew.snapshot();
+    }
+}
@@ -0,0 +1,38 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The ServerMetricsMXBean interface. What the server shows through JMX, under ytsdev.bogglegame:type=ServerMetrics.
+ * Rates are per second, averaged over the last few seconds.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public interface ServerMetricsMXBean {
+    long getActiveRooms();
+
+    long getConnectedPlayers();
+
+    long getRoundsCompleted();
+
+    double getRoundsPerSecond();
+
+    long getWordsSubmitted();
+
+    double getWordsSubmittedPerSecond();
+
+    long getWordsValidated();
+
+    double getWordsValidatedPerSecond();
+
+    LatencySnapshot getHandshake();
+
+    LatencySnapshot getNewRound();
+
+    LatencySnapshot getRetrieveWords();
+
+    LatencySnapshot getScoring();
+
+    LatencySnapshot getSendResults();
+
+    LatencySnapshot getConfirmNew();
+}
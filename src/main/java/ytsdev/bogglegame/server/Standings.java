@@ -0,0 +1,72 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The Standings class. The players of a game in the order their scores are announced: the winner or winners with the
+ * highest score first, then everyone else.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class Standings {
+    private final Player[] order;
+    private final int winners;
+    private String text;
+
+    /**
+     * Creates the standings
+     *
+     * @param order   the players, winners first
+     * @param winners the number of players with the highest score
+     */
+    Standings(Player[] order, int winners) {
+        this.order = order;
+        this.winners = winners;
+    }
+
+    /**
+     * Gets the number of players with the highest score
+     *
+     * @return the number of winners
+     */
+    public int getWinners() {
+        return winners;
+    }
+
+    /**
+     * Gets the number of players
+     *
+     * @return the number of players
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Gets a player by place
+     *
+     * @param place the place, starting with the winners at 0
+     * @return the player
+     */
+    public Player get(int place) {
+        return order[place];
+    }
+
+    /**
+     * Gets the standings in the format of the text protocol, which is:
+     * number of players with the highest score, name and points of winner(s), names and points of everyone else.
+     * The text is built once and shared by all the players.
+     *
+     * @return the text
+     */
+    public String getText() {
+        if (text == null) {
+            StringBuilder str = new StringBuilder(order.length * 16);
+            str.append(winners);
+            for (Player player : order) {
+                str.append(' ').append(player.getName()).append(' ').append(player.getPoints());
+            }
+            text = str.toString();
+        }
+        return text;
+    }
+}
@@ -0,0 +1,94 @@
+package ytsdev.bogglegame.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * The TextCodec class. Speaks the original line-based text protocol, for clients that use a Scanner and PrintWriter.
+ * A line's meaning depends on what the player has been asked for. During a round, a client may also send "WORD" and a
+ * word as soon as it is found, before the usual line with the count and the rest of the words.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class TextCodec extends PlayerCodec {
+
+    TextCodec(Player player, Connection connection) {
+        super(player, connection);
+    }
+
+    @Override
+    public void onLine(String line) {
+        switch (player.expecting()) {
+            case NAME:
+                player.onName(line.trim());
+                break;
+            case WORDS:
+            case SUBMIT:
+                if (line.startsWith("WORD ")) { //one word found during the round
+                    player.onWord(line.substring(5).trim());
+                    break;
+                }
+                //the format is: number of words, and then the words
+                StringTokenizer tokens = new StringTokenizer(line);
+                List<String> words = new ArrayList<>(Math.max(0, tokens.countTokens() - 1));
+                if (tokens.hasMoreTokens()) {
+                    tokens.nextToken();
+                }
+                while (tokens.hasMoreTokens()) {
+                    words.add(tokens.nextToken());
+                }
+                player.onWords(words);
+                break;
+            case CONFIRM:
+                player.onConfirm(line.trim().equals("AGAIN"));
+                break;
+            default:
+                break; //not expecting anything
+        }
+    }
+
+    @Override
+    public void onFrame(int type, ByteBuffer payload) {
+        //text clients don't send frames
+    }
+
+    @Override
+    void sendPlayers(int players) {
+        connection.send(String.valueOf(players));
+    }
+
+    @Override
+    void sendRound(int size, String board, long time) {
+        //text clients have always read the next token as the board, so the size is told by its number of letters
+        connection.send("AGAIN " + board);
+    }
+
+    @Override
+    void sendTimeUp() {
+        //text clients keep their own time, and send their words when it runs out
+    }
+
+    @Override
+    void sendResults(Collection<String> removed, Standings standings) {
+        StringBuilder message = new StringBuilder();
+
+        message.append(removed.size());
+
+        for (String word : removed) {
+            message.append(' ').append(word);
+        }
+
+        message.append(' ').append(standings.getText());
+
+        connection.send(message.toString());
+    }
+
+    @Override
+    void sendDone() {
+        connection.send("DONE");
+    }
+}
@@ -0,0 +1,45 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The Timeout class. A task scheduled to run on an event loop after a delay, which can be cancelled until it runs.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class Timeout {
+    private final long deadline;
+    private final Runnable task;
+    private boolean cancelled;
+
+    //where the timeout is kept until it runs, managed by the wheel
+    TimerWheel wheel;
+    long tick;
+    Timeout prev;
+    Timeout next;
+
+    Timeout(long deadline, Runnable task) {
+        this.deadline = deadline;
+        this.task = task;
+    }
+
+    /**
+     * Stops the task from running, if it hasn't run yet. Must be called on the event loop's thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (wheel != null) {
+            wheel.remove(this);
+        }
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    void run() {
+        if (!cancelled) {
+            cancelled = true;
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ytsdev.bogglegame.server;
+
+/**
+ * The TimerWheel class. Holds the timeouts of an event loop in a hashed wheel: a ring of slots, one for each tick,
+ * where a timeout goes in the slot for the tick it is due. Adding and cancelling a timeout take the same short time
+ * however many are waiting, so every round, fill timeout and deadline of every room on a loop can share one wheel.
+ * A timeout further away than one turn of the wheel waits in its slot until the turn it is due.
+ * <p>
+ * The wheel is only used by its event loop's thread, so it is never locked.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+class TimerWheel {
+    private final long tick; //milliseconds
+    private final Timeout[] heads; //the first timeout in each slot
+    private final Timeout[] tails; //the last timeout in each slot, so timeouts due together run in order
+    private final int mask;
+    private long current; //the last tick that has been run
+    private int size;
+
+    /**
+     * Creates an empty wheel
+     *
+     * @param tick  how many milliseconds each slot covers
+     * @param slots the number of slots, which must be a power of two
+     * @param now   the current time in milliseconds
+     */
+    TimerWheel(long tick, int slots, long now) {
+        this.tick = tick;
+        this.heads = new Timeout[slots];
+        this.tails = new Timeout[slots];
+        this.mask = slots - 1;
+        this.current = now / tick;
+    }
+
+    /**
+     * Adds a timeout to the slot for its deadline
+     *
+     * @param timeout the timeout
+     */
+    void add(Timeout timeout) {
+        long due = (timeout.getDeadline() + tick - 1) / tick;
+        timeout.tick = Math.max(due, current + 1);
+        timeout.wheel = this;
+
+        int slot = (int) (timeout.tick & mask);
+        timeout.prev = tails[slot];
+        timeout.next = null;
+        if (tails[slot] == null) {
+            heads[slot] = timeout;
+        } else {
+            tails[slot].next = timeout;
+        }
+        tails[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * Takes a timeout out of its slot
+     *
+     * @param timeout the timeout, which must be in this wheel
+     */
+    void remove(Timeout timeout) {
+        int slot = (int) (timeout.tick & mask);
+        if (timeout.prev == null) {
+            heads[slot] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next == null) {
+            tails[slot] = timeout.prev;
+        } else {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.wheel = null;
+        size--;
+    }
+
+    /**
+     * Gets how long until the next tick with a timeout in its slot
+     *
+     * @param now the current time in milliseconds
+     * @return the time in milliseconds, or 0 if the wheel is empty
+     */
+    long untilNext(long now) {
+        if (size == 0) {
+            return 0;
+        }
+        for (int i = 1; i <= heads.length; i++) {
+            if (heads[(int) ((current + i) & mask)] != null) {
+                return Math.max(1, (current + i) * tick - now);
+            }
+        }
+        return 1; //not reached, the wheel isn't empty
+    }
+
+    /**
+     * Runs every timeout that is due by now
+     *
+     * @param now the current time in milliseconds
+     */
+    void expire(long now) {
+        long target = now / tick;
+        if (size == 0) {
+            current = Math.max(current, target);
+            return;
+        }
+        if (target - current > heads.length) { //the loop was busy for more than a turn, one turn covers every slot
+            current = target - heads.length;
+        }
+
+        while (current < target) {
+            current++;
+            int slot = (int) (current & mask);
+            Timeout timeout = heads[slot];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.tick <= target) {
+                    remove(timeout);
+                    try {
+                        timeout.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    if (next != null && next.wheel != this) { //the task cancelled what came next, start the slot again
+                        next = heads[slot];
+                    }
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package ytsdev.bogglegame;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Tests for BoggleBoard's searches. A hand-checked board is looked at word by word, and random boards up to 8x8 are
+ * compared with a brute-force search: every word in the dictionary is looked for on its own, cell by cell. solveAll,
+ * contains and containsAll must all agree with it.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleBoardTest extends TestCase {
+    //  C  A  T  S
+    //  Qu E  D  O
+    //  R  N  I  G
+    //  X  Y  Z  U
+    private static final String HAND_BOARD = "CATSQEDORNIGXYZU";
+    private static final String[] HAND_FOUND = {
+            "cat", "cats", "quad", "dog", "god", "den", "end", "tend", "stead", "zig"
+    };
+    private static final String[] HAND_MISSING = {
+            "act", //C and T don't touch
+            "tat", "queen", "deed", //the same cube twice
+            "ding", "side", "guy", //letters on the board, but not in a path
+            "qad", //the Q cube is always Qu
+    };
+
+    private BoggleDictionary handDictionary() {
+        List<String> words = new ArrayList<>(Arrays.asList(HAND_FOUND));
+        words.addAll(Arrays.asList(HAND_MISSING));
+        words.add("qat"); //a Q without a U can never be on a board
+        return BoggleDictionary.build(words);
+    }
+
+    private BoggleBoard board(String letters) {
+        BoggleBoard board = new BoggleBoard(BoardGrid.ofCells(letters.length()).size);
+        board.setBoard(letters);
+        return board;
+    }
+
+    public void testSolveAllFindsHandCheckedWords() {
+        List<FoundWord> found = board(HAND_BOARD).solveAll(handDictionary());
+        Set<String> words = new TreeSet<>();
+        for (FoundWord word : found) {
+            words.add(word.getWord());
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(HAND_FOUND)), words);
+        assertEquals("each word once", words.size(), found.size());
+    }
+
+    public void testContainsHandCheckedWords() {
+        BoggleBoard board = board(HAND_BOARD);
+        for (String word : HAND_FOUND) {
+            assertTrue(word, board.contains(word));
+            assertTrue(word, board.contains(word.toUpperCase()));
+        }
+        for (String word : HAND_MISSING) {
+            assertFalse(word, board.contains(word));
+        }
+        assertFalse(board.contains("qat"));
+        assertFalse(board.contains("q"));
+        assertFalse(board.contains(""));
+    }
+
+    public void testContainsAllHandCheckedWords() {
+        List<String> asked = new ArrayList<>();
+        asked.add("stead");
+        asked.addAll(Arrays.asList(HAND_MISSING));
+        asked.addAll(Arrays.asList(HAND_FOUND));
+        asked.addAll(Arrays.asList("CAT", "qat", "q", "", "c4t", "it's", "Quad", "cat")); //cases, a word twice, junk
+        List<String> expected = new ArrayList<>(Arrays.asList("stead"));
+        expected.addAll(Arrays.asList(HAND_FOUND));
+        expected.addAll(Arrays.asList("CAT", "Quad", "cat"));
+        assertEquals(expected, board(HAND_BOARD).containsAll(asked));
+    }
+
+    public void testContainsAllOfNothing() {
+        assertTrue(board(HAND_BOARD).containsAll(new ArrayList<String>()).isEmpty());
+        assertTrue(board(HAND_BOARD).containsAll(Arrays.asList("act", "qat", "")).isEmpty());
+    }
+
+    public void testContainsAllOfAWordAndItsPrefixes() {
+        //the search stops following a path once everything through it is found, which mustn't cut a longer word off
+        BoggleBoard board = board(HAND_BOARD);
+        assertEquals(Arrays.asList("cats", "cat"), board.containsAll(Arrays.asList("cats", "cat")));
+        assertEquals(Arrays.asList("cat", "cats"), board.containsAll(Arrays.asList("cat", "cats")));
+        assertEquals(Arrays.asList("te", "ten", "tend"), board.containsAll(Arrays.asList("te", "ten", "tend", "tendx")));
+    }
+
+    public void testFoundPathsSpellTheirWords() {
+        BoggleBoard board = board(HAND_BOARD);
+        for (FoundWord word : board.solveAll(handDictionary())) {
+            assertEquals(word.getWord(), spell(HAND_BOARD, word.getPath()));
+        }
+        assertEquals("[0, 1, 2, 3]", pathOf(board, "cats"));
+        assertEquals("[4, 1, 6]", pathOf(board, "quad"));
+    }
+
+    private String pathOf(BoggleBoard board, String word) {
+        for (FoundWord found : board.solveAll(handDictionary())) {
+            if (found.getWord().equals(word)) {
+                return Arrays.toString(found.getPath());
+            }
+        }
+        return null;
+    }
+
+    public void testFourByFourAgreesWithBruteForce() {
+        checkRandomBoards(4, 50, 1);
+    }
+
+    public void testFiveAndSixAgreeWithBruteForce() {
+        checkRandomBoards(5, 20, 2);
+        checkRandomBoards(6, 10, 3);
+    }
+
+    public void testEightByEightAgreesWithBruteForce() {
+        checkRandomBoards(8, 10, 4);
+    }
+
+    public void testSolveAllAfterRotationFindsTheSameWords() {
+        BoggleDictionary dictionary = handDictionary();
+        BoggleBoard board = board(HAND_BOARD);
+        Set<String> before = words(board.solveAll(dictionary));
+        board.rotateRight();
+        assertEquals(before, words(board.solveAll(dictionary)));
+        board.rotateLeft();
+        board.rotateLeft();
+        assertEquals(before, words(board.solveAll(dictionary)));
+    }
+
+    public void testSetBoardTakesTheSizeFromTheLetters() {
+        BoggleBoard board = new BoggleBoard(4);
+        board.setBoard("ABCDEFGHIJKLMNOPQRSTUVWXY");
+        assertEquals(5, board.getSize());
+        try {
+            board.setBoard("ABCDE");
+            fail("a board must be square");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Makes random boards with Q cubes, and a dictionary of paths walked on them and random strings, and checks that
+     * solveAll and contains find exactly the words the brute-force search does
+     */
+    private void checkRandomBoards(int size, int boards, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int b = 0; b < boards; b++) {
+            char[] letters = new char[size * size];
+            for (int i = 0; i < letters.length; i++) {
+                //plenty of vowels and Qs, so the walks make long words and Qu is well covered
+                letters[i] = random.nextInt(6) == 0 ? "AEIOUQ".charAt(random.nextInt(6))
+                        : (char) ('A' + random.nextInt(26));
+            }
+            String boardLetters = new String(letters);
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                words.add(walk(boardLetters, size, 2 + random.nextInt(size * 2), random));
+                StringBuilder noise = new StringBuilder();
+                for (int j = 2 + random.nextInt(6); j > 0; j--) {
+                    noise.append((char) ('a' + random.nextInt(26)));
+                }
+                words.add(noise.toString());
+            }
+            BoggleDictionary dictionary = BoggleDictionary.build(words);
+            BoggleBoard board = board(boardLetters);
+
+            Set<String> expected = new TreeSet<>();
+            for (String word : dictionaryWords(dictionary)) {
+                boolean spellable = bruteForce(boardLetters, size, word);
+                String text = toText(word);
+                if (spellable) {
+                    expected.add(text);
+                }
+                assertEquals(boardLetters + " " + text, spellable, board.contains(text));
+            }
+
+            //everything at once, with the random strings, some words twice or in capitals, in a random order
+            List<String> asked = new ArrayList<>(words);
+            for (int i = 0; i < 50; i++) {
+                String word = words.get(random.nextInt(words.size()));
+                asked.add(random.nextBoolean() ? word : word.toUpperCase());
+            }
+            for (int i = asked.size() - 1; i > 0; i--) {
+                asked.set(i, asked.set(random.nextInt(i + 1), asked.get(i)));
+            }
+            List<String> spellable = new ArrayList<>();
+            for (String word : asked) {
+                String onBoard = toBoard(word);
+                if (onBoard != null && bruteForce(boardLetters, size, onBoard)) {
+                    spellable.add(word);
+                }
+            }
+            assertEquals(boardLetters, spellable, board.containsAll(asked));
+
+            List<FoundWord> found = board.solveAll(dictionary);
+            assertEquals(boardLetters, expected, words(found));
+            for (FoundWord word : found) {
+                assertEquals(word.getWord(), spell(boardLetters, word.getPath()));
+                assertTrue(word.toString(), isPath(size, word.getPath()));
+            }
+        }
+    }
+
+    private static Set<String> words(List<FoundWord> found) {
+        Set<String> words = new TreeSet<>();
+        for (FoundWord word : found) {
+            words.add(word.getWord());
+        }
+        return words;
+    }
+
+    /**
+     * Walks a random path on a board without going back to a cube, and gets the word it spells
+     */
+    private static String walk(String letters, int size, int length, SplittableRandom random) {
+        boolean[] used = new boolean[letters.length()];
+        int cell = random.nextInt(letters.length());
+        List<Integer> path = new ArrayList<>();
+        while (path.size() < length) {
+            path.add(cell);
+            used[cell] = true;
+            List<Integer> next = new ArrayList<>();
+            for (int other = 0; other < letters.length(); other++) {
+                if (!used[other] && touching(size, cell, other)) {
+                    next.add(other);
+                }
+            }
+            if (next.isEmpty()) {
+                break;
+            }
+            cell = next.get(random.nextInt(next.size()));
+        }
+        int[] cells = new int[path.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = path.get(i);
+        }
+        return spell(letters, cells);
+    }
+
+    /**
+     * Gets every word in a dictionary as board letters, by following every edge from the root
+     */
+    static List<String> dictionaryWords(BoggleDictionary dictionary) {
+        List<String> words = new ArrayList<>();
+        collect(dictionary, dictionary.root(), "", words);
+        return words;
+    }
+
+    private static void collect(BoggleDictionary dictionary, int node, String prefix, List<String> words) {
+        for (char letter = 'A'; letter <= 'Z'; letter++) {
+            int edge = dictionary.find(node, letter);
+            if (edge == -1) {
+                continue;
+            }
+            String word = prefix + letter;
+            if (dictionary.endsWord(edge)) {
+                words.add(word);
+            }
+            if (dictionary.hasChildren(edge)) {
+                collect(dictionary, dictionary.child(edge), word, words);
+            }
+        }
+    }
+
+    /**
+     * Looks for a word in board letters on its own, trying every path from every cube
+     */
+    private static boolean bruteForce(String letters, int size, String word) {
+        boolean[] used = new boolean[letters.length()];
+        for (int cell = 0; cell < letters.length(); cell++) {
+            if (bruteForce(letters, size, word, 0, cell, used)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean bruteForce(String letters, int size, String word, int index, int cell, boolean[] used) {
+        if (used[cell] || letters.charAt(cell) != word.charAt(index)) {
+            return false;
+        }
+        if (index == word.length() - 1) {
+            return true;
+        }
+        used[cell] = true;
+        try {
+            for (int next = 0; next < letters.length(); next++) {
+                if (touching(size, cell, next) && bruteForce(letters, size, word, index + 1, next, used)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            used[cell] = false;
+        }
+    }
+
+    private static boolean touching(int size, int a, int b) {
+        return a != b && Math.abs(a / size - b / size) <= 1 && Math.abs(a % size - b % size) <= 1;
+    }
+
+    private static boolean isPath(int size, int[] path) {
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < path.length; i++) {
+            if (!seen.add(path[i]) || (i > 0 && !touching(size, path[i - 1], path[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String spell(String letters, int[] path) {
+        StringBuilder word = new StringBuilder();
+        for (int cell : path) {
+            word.append(toText(String.valueOf(letters.charAt(cell))));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Turns a word as players write it into board letters, with each QU as a single Q
+     *
+     * @return the letters, or null if the word can never be on a board
+     */
+    private static String toBoard(String word) {
+        String upper = word.toUpperCase();
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < upper.length(); i++) {
+            char letter = upper.charAt(i);
+            if (letter < 'A' || letter > 'Z' || (letter == 'Q' && !upper.startsWith("QU", i))) {
+                return null;
+            }
+            letters.append(letter);
+            if (letter == 'Q') {
+                i++; //the U is on the Q cube
+            }
+        }
+        return letters.length() == 0 ? null : letters.toString();
+    }
+
+    /**
+     * Turns board letters into a word as players write it, with the U after each Q
+     */
+    static String toText(String boardWord) {
+        return boardWord.toLowerCase().replace("q", "qu");
+    }
+}
@@ -0,0 +1,117 @@
+package ytsdev.bogglegame;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for BoggleDictionary: a dictionary written to a file and mapped again has the same words, and a file with a
+ * bad header is refused.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleDictionaryTest extends TestCase {
+    private static final List<String> WORDS = Arrays.asList(
+            "cat", "cats", "catsup", "dog", "dogs", "doing", "going", "sing", "singing", "ring", "rings",
+            "queen", "quiet", "squid", "quip", "Equal", "tea", "TEAS", "a");
+
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("words", ".dawg");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testMappedFileHasTheSameWords() throws IOException {
+        BoggleDictionary built = BoggleDictionary.build(WORDS);
+        built.write(file.getPath());
+        BoggleDictionary mapped = BoggleDictionary.map(file.getPath());
+
+        assertEquals(WORDS.size(), built.size());
+        assertEquals(built.size(), mapped.size());
+        assertEquals(built.edgeCount(), mapped.edgeCount());
+        assertEquals(BoggleBoardTest.dictionaryWords(built), BoggleBoardTest.dictionaryWords(mapped));
+        for (String word : WORDS) {
+            assertTrue(word, mapped.contains(word));
+        }
+        for (String word : new String[]{"ca", "catsu", "dogss", "qeen", "quee", "", "c4t", "singings"}) {
+            assertFalse(word, mapped.contains(word));
+        }
+    }
+
+    public void testWordsAreStoredAsBoardLetters() {
+        BoggleDictionary dictionary = BoggleDictionary.build(Arrays.asList("queen", "qat", "it's", "squid"));
+        assertEquals(Arrays.asList("QEEN", "SQID"), BoggleBoardTest.dictionaryWords(dictionary));
+        assertEquals(2, dictionary.size());
+    }
+
+    public void testCommonEndingsAreShared() {
+        //every word ends in -ING, which is stored once
+        BoggleDictionary dictionary = BoggleDictionary.build(Arrays.asList("sing", "ring", "king", "wing"));
+        assertEquals(1 + 4 + 3, dictionary.edgeCount()); //the unused edge 0, S R K W, then I N G
+    }
+
+    public void testEmptyDictionaryRoundTrip() throws IOException {
+        BoggleDictionary.build(Collections.<String>emptyList()).write(file.getPath());
+        BoggleDictionary mapped = BoggleDictionary.map(file.getPath());
+        assertEquals(0, mapped.size());
+        assertFalse(mapped.contains("cat"));
+    }
+
+    public void testWrongMagicIsRefused() throws IOException {
+        BoggleDictionary.build(WORDS).write(file.getPath());
+        changeInt(0, 0x12345678);
+        assertRefused("not a boggle dictionary file");
+    }
+
+    public void testWrongVersionIsRefused() throws IOException {
+        BoggleDictionary.build(WORDS).write(file.getPath());
+        changeInt(4, 99);
+        assertRefused("unsupported version 99");
+    }
+
+    public void testWrongEdgeCountIsRefused() throws IOException {
+        BoggleDictionary.build(WORDS).write(file.getPath());
+        changeInt(16, 3);
+        assertRefused("truncated");
+    }
+
+    public void testTruncatedFileIsRefused() throws IOException {
+        BoggleDictionary.build(WORDS).write(file.getPath());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 4));
+        assertRefused("truncated");
+    }
+
+    public void testShortHeaderIsRefused() throws IOException {
+        Files.write(file.toPath(), new byte[]{0x42, 0x47, 0x4C, 0x44, 0, 0, 0, 1});
+        assertRefused("not a boggle dictionary file");
+    }
+
+    private void changeInt(int offset, int value) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        Files.write(file.toPath(), bytes);
+    }
+
+    private void assertRefused(String reason) {
+        try {
+            BoggleDictionary.map(file.getPath());
+            fail("mapped a bad file");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(reason));
+        }
+    }
+}
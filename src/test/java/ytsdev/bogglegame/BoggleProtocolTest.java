@@ -0,0 +1,59 @@
+package ytsdev.bogglegame;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for the way BoggleProtocol puts strings in messages: they come back as they went in, or cut short at the end
+ * of a character when they are too long.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleProtocolTest extends TestCase {
+
+    private static String roundTrip(String str) {
+        ByteBuffer buffer = ByteBuffer.allocate(BoggleProtocol.stringSize(str));
+        BoggleProtocol.putString(buffer, str);
+        buffer.flip();
+        String read = BoggleProtocol.getString(buffer);
+        assertFalse("the whole string is read", buffer.hasRemaining());
+        return read;
+    }
+
+    private static String repeat(String str, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(str);
+        }
+        return repeated.toString();
+    }
+
+    public void testShortStrings() {
+        assertEquals("", roundTrip(""));
+        assertEquals("alice", roundTrip("alice"));
+        assertEquals("Zo\u00EB \u65E5\u672C", roundTrip("Zo\u00EB \u65E5\u672C"));
+    }
+
+    public void testLongAsciiIsCut() {
+        String name = repeat("a", BoggleProtocol.MAX_STRING + 10);
+        assertEquals(name.substring(0, BoggleProtocol.MAX_STRING), roundTrip(name));
+    }
+
+    public void testLongUtf8IsCutBetweenCharacters() {
+        //every cut point inside a character of two, three or four bytes
+        for (String letter : new String[]{"\u00E9", "\u65E5", "\uD83D\uDE00"}) {
+            for (int prefix = 0; prefix < 4; prefix++) {
+                String name = repeat("a", prefix) + repeat(letter, BoggleProtocol.MAX_STRING);
+                String read = roundTrip(name);
+                assertTrue(read, name.startsWith(read));
+                assertFalse(read, read.contains("\uFFFD"));
+                int bytes = read.getBytes(StandardCharsets.UTF_8).length;
+                assertTrue(bytes <= BoggleProtocol.MAX_STRING);
+                assertTrue(bytes > BoggleProtocol.MAX_STRING - letter.getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tests for the way BoggleThread scores a round: the words found by more than one player are taken from everyone
+ * who found them, and each player is sent their own. The players are text clients whose connections keep what they
+ * are sent, and the game runs on an event loop that is never run.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class BoggleThreadTest extends TestCase {
+    //  C  A  T
+    //  S  E  D
+    //  O  R  N
+    private static final String LETTERS = "CATSEDORN";
+    private static final int SIZE = 3;
+    private static final String CUBES_FILE = "cubes3x3.txt"; //the supply reads it, though its boards come from here
+
+    private File cubesFile;
+    private File scoresDir;
+    private ScoreStore scores;
+    private RoundJournal journal;
+
+    /**
+     * A connection that keeps the lines sent to it instead of sending them
+     */
+    private static class TextConnection extends Connection {
+        private Connection.Handler handler;
+        private final List<String> sent = new ArrayList<>();
+
+        TextConnection() {
+            super(null);
+        }
+
+        @Override
+        void setHandler(Handler handler) {
+            super.setHandler(handler);
+            this.handler = handler;
+        }
+
+        @Override
+        void send(String message) {
+            sent.add(message);
+        }
+
+        @Override
+        void finish() {
+        }
+
+        @Override
+        void joinedRoom() {
+            //never closed, so not counted as a connected player, which would keep the other tests' servers busy
+        }
+
+        String last() {
+            return sent.get(sent.size() - 1);
+        }
+    }
+
+    /**
+     * A supply that always has the same 3x3 board ready
+     */
+    private static class SameBoard extends BoardSupply {
+        private final Board board;
+
+        SameBoard(String letters, SolutionCache solutions) throws IOException {
+            super(solutions, SIZE, 1, 0, 0);
+            BoggleBoard grid = new BoggleBoard(SIZE);
+            grid.setBoard(letters);
+            board = new Board(grid.getSize(), letters, solutions.solve(grid));
+        }
+
+        @Override
+        public Board take() {
+            return board;
+        }
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        cubesFile = new File(CUBES_FILE);
+        if (cubesFile.exists()) {
+            cubesFile = null; //someone's own cubes, left alone
+        } else {
+            Files.write(cubesFile.toPath(), Arrays.asList("AAAAAA", "BBBBBB", "CCCCCC", "DDDDDD", "EEEEEE", "FFFFFF",
+                    "GGGGGG", "HHHHHH", "IIIIII"));
+        }
+        scoresDir = Files.createTempDirectory("scores").toFile();
+        scores = ScoreStore.open(new File(scoresDir, "scores").getPath());
+        journal = new RoundJournal(new File(scoresDir, "rounds.journal").getPath(), RoundJournal.Sync.NONE);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        scores.close();
+        journal.close();
+        for (File file : scoresDir.listFiles()) {
+            file.delete();
+        }
+        scoresDir.delete();
+        if (cubesFile != null) {
+            cubesFile.delete();
+        }
+    }
+
+    /**
+     * Starts a game on a board, and has every player send their name
+     */
+    private TextConnection[] start(String letters, List<String> words, String... names) throws IOException {
+        SameBoard boards = new SameBoard(letters, new SolutionCache(BoggleDictionary.build(words), 16));
+        TextConnection[] connections = new TextConnection[names.length];
+        for (int i = 0; i < names.length; i++) {
+            connections[i] = new TextConnection();
+        }
+        new BoggleThread(new EventLoop(), connections, boards, scores, journal,
+                new ConcurrentSkipListMap<Long, BoggleThread>());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(String.valueOf(names.length), connections[i].last());
+            connections[i].handler.onLine(names[i]);
+        }
+        for (TextConnection connection : connections) {
+            assertEquals("AGAIN " + letters, connection.last());
+        }
+        return connections;
+    }
+
+    /**
+     * Splits a results line into the removed words, in any order, and the standings
+     */
+    private static Set<String> removed(String results) {
+        String[] tokens = results.split(" ");
+        int count = Integer.parseInt(tokens[0]);
+        Set<String> removed = new TreeSet<>(Arrays.asList(tokens).subList(1, 1 + count));
+        assertEquals("each word once", count, removed.size());
+        return removed;
+    }
+
+    private static String standings(String results) {
+        String[] tokens = results.split(" ");
+        int count = Integer.parseInt(tokens[0]);
+        StringBuilder standings = new StringBuilder();
+        for (int i = 1 + count; i < tokens.length; i++) {
+            standings.append(i > 1 + count ? " " : "").append(tokens[i]);
+        }
+        return standings.toString();
+    }
+
+    private static Set<String> setOf(String... words) {
+        return new TreeSet<>(Arrays.asList(words));
+    }
+
+    public void testSharedWordsAreRemovedFromEveryone() throws IOException {
+        TextConnection[] players = start(LETTERS,
+                Arrays.asList("cat", "cater", "sea", "red", "nerd", "rose", "dog", "tea"),
+                "alice", "bob", "carol");
+        players[0].handler.onLine("4 cater cat sea red");
+        players[1].handler.onLine("4 cat cat red nerd"); //a word sent twice is still found once
+        players[2].handler.onLine("5 SEA rose nerd dog cat"); //any case, and dog isn't on the board
+
+        //cat is found by everyone, and sea, red and nerd by two each: only cater (2) and rose (1) score
+        assertEquals(setOf("cat", "sea", "red"), removed(players[0].last()));
+        assertEquals(setOf("cat", "red", "nerd"), removed(players[1].last()));
+        assertEquals(setOf("cat", "sea", "nerd"), removed(players[2].last()));
+        for (TextConnection player : players) {
+            assertEquals("1 alice 2 bob 0 carol 1", standings(player.last()));
+        }
+
+        //nothing is shared in the next round, and nothing is left over from the last
+        for (TextConnection player : players) {
+            player.handler.onLine("AGAIN");
+        }
+        players[0].handler.onLine("1 cater");
+        players[1].handler.onLine("2 rose tea");
+        players[2].handler.onLine("0");
+        for (TextConnection player : players) {
+            assertEquals(setOf(), removed(player.last()));
+        }
+        assertEquals("1 alice 4 bob 2 carol 1", standings(players[0].last()));
+    }
+
+    public void testTiedWinners() throws IOException {
+        TextConnection[] players = start(LETTERS, Arrays.asList("cat", "sea", "red", "nerd"), "alice", "bob", "carol");
+        players[0].handler.onLine("2 cat sea");
+        players[1].handler.onLine("2 red cat");
+        players[2].handler.onLine("1 cat");
+        //the winners come first, then everyone else in the order they joined
+        assertEquals("2 alice 1 bob 1 carol 0", standings(players[2].last()));
+        assertEquals(setOf("cat"), removed(players[2].last()));
+    }
+
+    public void testEveryWordOnABoardWithManyWords() throws IOException {
+        //every three-letter path on a board of different letters is a word, which is well over 64 of them
+        String letters = "ABCDEFGHI";
+        List<String> words = new ArrayList<>();
+        for (int a = 0; a < 9; a++) {
+            for (int b = 0; b < 9; b++) {
+                for (int c = 0; c < 9; c++) {
+                    if (a != c && touching(a, b) && touching(b, c)) {
+                        words.add("" + letters.charAt(a) + letters.charAt(b) + letters.charAt(c));
+                    }
+                }
+            }
+        }
+        assertEquals(160, words.size());
+
+        //the first finds every word, the second every other one, and the third every third one
+        List<List<String>> found = new ArrayList<>();
+        for (int player = 1; player <= 3; player++) {
+            List<String> own = new ArrayList<>();
+            for (int i = 0; i < words.size(); i += player) {
+                own.add(words.get(i));
+            }
+            found.add(own);
+        }
+        TextConnection[] players = start(letters, words, "alice", "bob", "carol");
+        for (int i = 0; i < players.length; i++) {
+            StringBuilder line = new StringBuilder().append(found.get(i).size());
+            for (String word : found.get(i)) {
+                line.append(' ').append(word);
+            }
+            players[i].handler.onLine(line.toString());
+        }
+
+        //alice found every word, so bob and carol lose all of theirs, and alice the ones either of them found
+        Set<String> shared = new TreeSet<>();
+        shared.addAll(lower(found.get(1)));
+        shared.addAll(lower(found.get(2)));
+        assertEquals(shared, removed(players[0].last()));
+        assertEquals(lower(found.get(1)), removed(players[1].last()));
+        assertEquals(lower(found.get(2)), removed(players[2].last()));
+        //only the words neither bob nor carol found are alice's: 160 less those divisible by 2 or 3
+        int alice = 160 - (80 + 54 - 27);
+        assertEquals("1 alice " + alice + " bob 0 carol 0", standings(players[0].last()));
+    }
+
+    private static Set<String> lower(List<String> words) {
+        Set<String> lower = new TreeSet<>();
+        for (String word : words) {
+            lower.add(word.toLowerCase());
+        }
+        return lower;
+    }
+
+    private static boolean touching(int a, int b) {
+        return a != b && Math.abs(a / 3 - b / 3) <= 1 && Math.abs(a % 3 - b % 3) <= 1;
+    }
+}
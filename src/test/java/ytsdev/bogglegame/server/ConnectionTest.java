@@ -0,0 +1,283 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+import ytsdev.bogglegame.BoggleProtocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the way Connection splits what a client sends into lines and frames, however it is cut up on the way,
+ * and for the frames it sends. A real socket is used, served by an event loop that is never run: the test reads
+ * whenever it has written something, so each write arrives as one read.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class ConnectionTest extends TestCase {
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private Selector ready;
+    private Connection connection;
+    private List<String> received;
+
+    @Override
+    protected void setUp() throws IOException {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(listener.getLocalAddress());
+        SocketChannel server = listener.accept();
+        server.configureBlocking(false);
+        ready = Selector.open();
+        server.register(ready, SelectionKey.OP_READ);
+
+        connection = new Connection(server);
+        new EventLoop().adopt(connection);
+        received = new ArrayList<>();
+        connection.setHandler(new Connection.Handler() {
+            @Override
+            public void onLine(String line) {
+                received.add("line " + line);
+            }
+
+            @Override
+            public void onFrame(int type, ByteBuffer payload) {
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                received.add("frame " + type + " " + new String(bytes, StandardCharsets.ISO_8859_1));
+            }
+
+            @Override
+            public void onClose() {
+                received.add("closed");
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        connection.close();
+        client.close();
+        listener.close();
+        ready.close();
+    }
+
+    /**
+     * Sends bytes from the client, and has the connection read them once they have arrived
+     */
+    private void send(byte[] bytes) throws IOException {
+        client.write(ByteBuffer.wrap(bytes));
+        assertTrue("nothing arrived", ready.select(2000) > 0);
+        ready.selectedKeys().clear();
+        connection.read();
+    }
+
+    private void send(String text) throws IOException {
+        send(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] frame(int type, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer frame = ByteBuffer.allocate(4 + 1 + bytes.length);
+        frame.putInt(1 + bytes.length);
+        frame.put((byte) type);
+        frame.put(bytes);
+        return frame.array();
+    }
+
+    private static byte[] join(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] joined = new byte[length];
+        int at = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, joined, at, part.length);
+            at += part.length;
+        }
+        return joined;
+    }
+
+    /**
+     * Sends bytes in pieces, cut at the given offsets
+     */
+    private void sendCut(byte[] bytes, int... cuts) throws IOException {
+        int from = 0;
+        for (int cut : cuts) {
+            send(Arrays.copyOfRange(bytes, from, cut));
+            from = cut;
+        }
+        send(Arrays.copyOfRange(bytes, from, bytes.length));
+    }
+
+    public void testWholeFrames() throws IOException {
+        send(join(BoggleProtocol.MAGIC, frame(2, "alice"), frame(5, "word"), frame(4, "")));
+        assertTrue(connection.isBinary());
+        assertEquals(Arrays.asList("frame 2 alice", "frame 5 word", "frame 4 "), received);
+    }
+
+    public void testMagicSplitAcrossReads() throws IOException {
+        sendCut(join(BoggleProtocol.MAGIC, frame(2, "alice")), 1, 2);
+        assertEquals(Arrays.asList("frame 2 alice"), received);
+    }
+
+    public void testPartialHeader() throws IOException {
+        byte[] bytes = join(BoggleProtocol.MAGIC, frame(2, "alice"));
+        send(Arrays.copyOf(bytes, 3 + 1));
+        send(Arrays.copyOfRange(bytes, 3 + 1, 3 + 3));
+        assertTrue(received.isEmpty());
+        send(Arrays.copyOfRange(bytes, 3 + 3, bytes.length));
+        assertEquals(Arrays.asList("frame 2 alice"), received);
+    }
+
+    public void testFrameSplitAcrossReads() throws IOException {
+        byte[] bytes = join(BoggleProtocol.MAGIC, frame(3, "cat dog bird"), frame(5, "fish"));
+        //in the header, after the type, in the payload, and across the end of the first frame
+        sendCut(bytes, 5, 8, 12, 20, 22);
+        assertEquals(Arrays.asList("frame 3 cat dog bird", "frame 5 fish"), received);
+    }
+
+    public void testEveryCut() throws IOException {
+        byte[] bytes = join(frame(3, "one"), frame(5, "two"), frame(4, ""));
+        send(BoggleProtocol.MAGIC);
+        for (int cut = 1; cut < bytes.length; cut++) {
+            received.clear();
+            sendCut(bytes, cut);
+            assertEquals("cut at " + cut, Arrays.asList("frame 3 one", "frame 5 two", "frame 4 "), received);
+        }
+    }
+
+    public void testFrameLargerThanAReadBuffer() throws IOException {
+        char[] letters = new char[20000];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + i % 26);
+        }
+        String payload = new String(letters);
+        byte[] bytes = join(BoggleProtocol.MAGIC, frame(3, payload));
+        client.write(ByteBuffer.wrap(bytes));
+        for (int i = 0; i < 100 && received.isEmpty(); i++) {
+            ready.select(2000);
+            ready.selectedKeys().clear();
+            connection.read();
+        }
+        assertEquals(Arrays.asList("frame 3 " + payload), received);
+    }
+
+    public void testOversizedLengthCloses() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4 + 1);
+        header.putInt(BoggleProtocol.MAX_FRAME + 1);
+        header.put((byte) 3);
+        send(join(BoggleProtocol.MAGIC, header.array()));
+        assertEquals(Arrays.asList("closed"), received);
+        assertTrue(connection.isClosed());
+    }
+
+    public void testOversizedLengthSplitAcrossReadsCloses() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(BoggleProtocol.MAX_FRAME + 1);
+        sendCut(join(BoggleProtocol.MAGIC, header.array()), 5);
+        assertEquals(Arrays.asList("closed"), received);
+    }
+
+    public void testEmptyFrameCloses() throws IOException {
+        send(join(BoggleProtocol.MAGIC, new byte[]{0, 0, 0, 0}));
+        assertEquals(Arrays.asList("closed"), received);
+    }
+
+    public void testBadMagicCloses() throws IOException {
+        send(new byte[]{BoggleProtocol.MAGIC[0], 'X', 'G'});
+        assertEquals(Arrays.asList("closed"), received);
+    }
+
+    public void testLinesSplitAndJoined() throws IOException {
+        send("ROOM 4\r\nali");
+        assertFalse(connection.isBinary());
+        send("ce\n3 cat");
+        send(" dog bird\nAGAIN\n");
+        assertEquals(Arrays.asList("line ROOM 4", "line alice", "line 3 cat dog bird", "line AGAIN"), received);
+    }
+
+    public void testEmptyLines() throws IOException {
+        send("\n\r\nx\n");
+        assertEquals(Arrays.asList("line ", "line ", "line x"), received);
+    }
+
+    public void testTextLineOnABinaryConnectionCloses() throws IOException {
+        send(BoggleProtocol.MAGIC);
+        send("ROOM 4\n"); //read as a frame length far over the limit
+        assertEquals(Arrays.asList("closed"), received);
+    }
+
+    public void testMagicInsideATextLineIsText() throws IOException {
+        send(join("ROOM ".getBytes(StandardCharsets.ISO_8859_1), BoggleProtocol.MAGIC,
+                "\n".getBytes(StandardCharsets.ISO_8859_1)));
+        send(frame(2, "x")); //a frame on a text connection is just more of a line
+        send("\n");
+        assertFalse(connection.isBinary());
+        assertEquals(2, received.size());
+        assertTrue(received.get(0).startsWith("line ROOM "));
+        assertTrue(received.get(1).startsWith("line "));
+        assertFalse(connection.isClosed());
+    }
+
+    public void testOverlongLineCloses() throws IOException {
+        char[] line = new char[70000];
+        Arrays.fill(line, 'a');
+        client.write(ByteBuffer.wrap(new String(line).getBytes(StandardCharsets.ISO_8859_1)));
+        for (int i = 0; i < 100 && !connection.isClosed(); i++) {
+            ready.select(2000);
+            ready.selectedKeys().clear();
+            connection.read();
+        }
+        assertEquals(Arrays.asList("closed"), received);
+    }
+
+    public void testOnlyConnectionsInARoomAreCountedAsPlayers() throws IOException {
+        ServerMetrics metrics = ServerMetrics.get();
+        long before = metrics.getConnectedPlayers();
+        Connection handshakeOnly = new Connection(SocketChannel.open());
+        handshakeOnly.close();
+        assertEquals(before, metrics.getConnectedPlayers());
+
+        connection.joinedRoom();
+        connection.joinedRoom(); //counted once
+        assertEquals(before + 1, metrics.getConnectedPlayers());
+        connection.close();
+        connection.close();
+        assertEquals(before, metrics.getConnectedPlayers());
+        connection.joinedRoom(); //closed on the way to the room
+        assertEquals(before, metrics.getConnectedPlayers());
+    }
+
+    public void testFramesAreSentInOrderWithSharedFrames() throws IOException {
+        send(BoggleProtocol.MAGIC);
+        ByteBuffer message = connection.startFrame(12, 3);
+        message.put(new byte[]{1, 2, 3});
+        connection.endFrame();
+        ByteBuffer shared = ByteBuffer.wrap(frame(16, "shared"));
+        connection.sendShared(shared);
+        connection.sendFrame(14);
+        assertEquals(0, connection.getPendingBytes());
+        assertEquals("the shared frame is not used up", 0, shared.position());
+
+        ByteBuffer expected = ByteBuffer.wrap(join(new byte[]{0, 0, 0, 4, 12, 1, 2, 3}, frame(16, "shared"),
+                frame(14, "")));
+        ByteBuffer got = ByteBuffer.allocate(expected.capacity());
+        while (got.hasRemaining()) {
+            client.read(got);
+        }
+        got.flip();
+        assertEquals(expected, got);
+    }
+}
@@ -0,0 +1,141 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+import ytsdev.bogglegame.BoggleBoard;
+import ytsdev.bogglegame.BoggleDictionary;
+import ytsdev.bogglegame.SolutionCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Tests for RoundJournal: a record cut short by a crash is dropped when the journal is opened again, so the rounds
+ * written after it can be read along with the ones before.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class RoundJournalTest extends TestCase {
+    private File dir;
+    private String name;
+    private BoardSupply.Board board;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("rounds").toFile();
+        name = new File(dir, "rounds.journal").getPath();
+        BoggleBoard grid = new BoggleBoard(3);
+        grid.setBoard("CATSEDORN");
+        SolutionCache solutions = new SolutionCache(BoggleDictionary.build(Arrays.asList("cat", "sea", "red")), 16);
+        board = new BoardSupply.Board(grid.getSize(), "CATSEDORN", solutions.solve(grid));
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Records rounds of one game with no players, and closes the journal once they are written
+     */
+    private void write(int from, int to) throws IOException {
+        RoundJournal journal = new RoundJournal(name, RoundJournal.Sync.NONE);
+        try {
+            for (int round = from; round <= to; round++) {
+                journal.record(7, round, board, new Player[0], new Standings(new Player[0], 0));
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Reads the round numbers of the records, checking each one's CRC, and that they fill the file
+     */
+    private List<Integer> rounds() throws IOException {
+        List<Integer> rounds = new ArrayList<>();
+        RandomAccessFile in = new RandomAccessFile(name, "r");
+        try {
+            assertEquals(RoundJournal.MAGIC, in.readInt());
+            assertEquals(RoundJournal.VERSION, in.readInt());
+            CRC32 crc = new CRC32();
+            while (in.getFilePointer() < in.length()) {
+                int length = in.readInt();
+                int check = in.readInt();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body);
+                assertEquals("record at " + rounds.size(), check, (int) crc.getValue());
+                rounds.add(((body[8] & 0xFF) << 24) | ((body[9] & 0xFF) << 16) | ((body[10] & 0xFF) << 8)
+                        | (body[11] & 0xFF)); //after the game's id
+            }
+        } finally {
+            in.close();
+        }
+        return rounds;
+    }
+
+    public void testReopening() throws IOException {
+        write(1, 2);
+        long length = new File(name).length();
+        write(3, 3);
+        assertEquals(Arrays.asList(1, 2, 3), rounds());
+        assertTrue(new File(name).length() > length);
+    }
+
+    public void testRecordCutShortIsDropped() throws IOException {
+        write(1, 3);
+        long whole = new File(name).length();
+        write(4, 4);
+        long last = new File(name).length() - whole;
+
+        //a crash part way through writing the last record, in the header and in the body
+        for (long cut : new long[]{3, last - 1}) {
+            RandomAccessFile file = new RandomAccessFile(name, "rw");
+            try {
+                file.setLength(whole + cut);
+            } finally {
+                file.close();
+            }
+            write(4, 5);
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5), rounds());
+            write(6, 6);
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), rounds());
+
+            //back to the three whole rounds and a torn fourth for the next cut
+            file = new RandomAccessFile(name, "rw");
+            try {
+                file.setLength(whole);
+            } finally {
+                file.close();
+            }
+            write(4, 4);
+        }
+    }
+
+    public void testDamagedRecordIsDropped() throws IOException {
+        write(1, 3);
+
+        RandomAccessFile file = new RandomAccessFile(name, "rw");
+        try {
+            file.seek(file.length() - 1); //the end of the standings
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        } finally {
+            file.close();
+        }
+        write(3, 4);
+        assertEquals(Arrays.asList(1, 2, 3, 4), rounds());
+    }
+}
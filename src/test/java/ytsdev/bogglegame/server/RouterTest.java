@@ -0,0 +1,230 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the way Router places players on its backends, and for draining a backend: the router sends it no more
+ * players, and a server behind a RouterLink only leaves once no player is left in a handshake, its lobby or a game.
+ * The backends are either sockets driven by the test, or a lobby with a link to the router.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class RouterTest extends TestCase {
+    private static final int TIMEOUT = 5000;
+
+    private Router router;
+    private InetSocketAddress control;
+    private ServerSocketChannel entrance; //where players connect to the router
+    private List<FakeBackend> backends;
+
+    /**
+     * A backend that reports the load it is told to, and takes the players sent to it one at a time
+     */
+    private class FakeBackend {
+        private final ServerSocket players;
+        private final Socket link;
+        private final PrintWriter out;
+        private final BufferedReader in;
+
+        FakeBackend(int load) throws IOException {
+            players = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            players.setSoTimeout(TIMEOUT);
+            link = new Socket(control.getAddress(), control.getPort());
+            link.setSoTimeout(TIMEOUT);
+            out = new PrintWriter(new OutputStreamWriter(link.getOutputStream(), StandardCharsets.UTF_8), true);
+            in = new BufferedReader(new InputStreamReader(link.getInputStream(), StandardCharsets.UTF_8));
+            out.println("BACKEND " + players.getLocalPort());
+            out.println("LOAD " + load + " 0 0");
+            backends.add(this);
+        }
+
+        String getName() {
+            return "127.0.0.1:" + players.getLocalPort();
+        }
+
+        /**
+         * Takes the next player sent, and reads the line they sent the router
+         */
+        String takePlayer() throws IOException {
+            Socket player = players.accept();
+            try {
+                player.setSoTimeout(TIMEOUT);
+                return new BufferedReader(new InputStreamReader(player.getInputStream(), StandardCharsets.UTF_8))
+                        .readLine();
+            } finally {
+                player.close();
+            }
+        }
+
+        /**
+         * Checks that no player was sent
+         */
+        void assertNoPlayer() throws IOException {
+            players.setSoTimeout(200);
+            try {
+                players.accept().close();
+                fail(getName() + " was sent a player");
+            } catch (SocketTimeoutException e) {
+                //none
+            }
+        }
+
+        void close() throws IOException {
+            link.close();
+            players.close();
+        }
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        EventLoop routerLoop = new EventLoop();
+        EventLoop pipeLoop = new EventLoop();
+        start(routerLoop, "router");
+        start(pipeLoop, "pipe");
+        router = new Router(routerLoop, new EventLoop[]{pipeLoop}, 2);
+        ServerSocketChannel controlPort = ServerSocketChannel.open();
+        controlPort.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        control = (InetSocketAddress) controlPort.getLocalAddress();
+        router.start(controlPort);
+        entrance = ServerSocketChannel.open();
+        entrance.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        backends = new ArrayList<>();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        for (FakeBackend backend : backends) {
+            backend.close();
+        }
+        entrance.close();
+    }
+
+    private static void start(EventLoop loop, String name) {
+        Thread thread = new Thread(loop, "test-" + name);
+        thread.setDaemon(true); //the loops are left running, with nothing to do
+        thread.start();
+    }
+
+    /**
+     * Waits until the router knows about a number of backends
+     */
+    private void awaitBackends(int count) throws InterruptedException {
+        for (int i = 0; i < TIMEOUT && router.getBackends().length != count; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, router.getBackends().length);
+    }
+
+    /**
+     * Connects a player to the router, sending their first line
+     */
+    private SocketChannel arrive(String line) throws IOException {
+        SocketChannel player = SocketChannel.open(entrance.getLocalAddress());
+        router.accept(entrance.accept());
+        player.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+        return player;
+    }
+
+    public void testPlayersForARoomGoToOneBackend() throws IOException, InterruptedException {
+        FakeBackend busy = new FakeBackend(1);
+        FakeBackend idle = new FakeBackend(0);
+        awaitBackends(2);
+
+        //the least loaded backend fills the room, even once the players sent make it the busier one
+        SocketChannel first = arrive("ROOM 2");
+        assertEquals("ROOM 2", idle.takePlayer());
+        SocketChannel second = arrive("ROOM 2");
+        assertEquals("ROOM 2", idle.takePlayer());
+        busy.assertNoPlayer();
+
+        //the next room goes to the backend that is now less loaded
+        SocketChannel third = arrive("ROOM 2");
+        assertEquals("ROOM 2", busy.takePlayer());
+        idle.assertNoPlayer();
+        first.close();
+        second.close();
+        third.close();
+        assertEquals(3, router.getPlayersRouted());
+    }
+
+    public void testDrainedBackendGetsNoPlayers() throws IOException, InterruptedException {
+        FakeBackend busy = new FakeBackend(5);
+        FakeBackend idle = new FakeBackend(0);
+        awaitBackends(2);
+
+        router.drain(idle.getName());
+        assertEquals("DRAIN", idle.in.readLine());
+        SocketChannel player = arrive("ROOM 3");
+        assertEquals("ROOM 3", busy.takePlayer());
+        idle.assertNoPlayer();
+        player.close();
+
+        //a drained backend leaves by closing its link
+        idle.close();
+        backends.remove(idle);
+        awaitBackends(1);
+        assertTrue(router.getBackends()[0].startsWith(busy.getName() + " up"));
+    }
+
+    public void testBackendDrainsOnceNoPlayerIsLeft() throws IOException, InterruptedException {
+        assertEquals("a player from another test is still counted", 0, ServerMetrics.get().getConnectedPlayers());
+        EventLoop lobbyLoop = new EventLoop();
+        start(lobbyLoop, "lobby");
+        EventLoop handshakeLoop = new EventLoop(); //not started until the player may leave
+        Lobby lobby = new Lobby(lobbyLoop, new EventLoop[]{handshakeLoop}, null, null, null, null, 2, TIMEOUT);
+
+        ServerSocketChannel lobbyPort = ServerSocketChannel.open();
+        lobbyPort.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final RouterLink link = new RouterLink(control, ((InetSocketAddress) lobbyPort.getLocalAddress()).getPort(),
+                lobby, new Runnable() {
+            @Override
+            public void run() {
+                stopped.countDown();
+            }
+        });
+        Thread linkThread = new Thread(link, "test-link");
+        linkThread.setDaemon(true);
+        linkThread.start();
+        awaitBackends(1);
+
+        //a player in their handshake, which can't go on while its loop isn't running
+        SocketChannel player = SocketChannel.open(lobbyPort.getLocalAddress());
+        lobby.accept(lobbyPort.accept());
+        assertEquals(1, lobby.getHandshakingPlayers());
+
+        router.drain(router.getBackends()[0].substring(0, router.getBackends()[0].indexOf(' ')));
+        assertTrue(stopped.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Thread.sleep(1500); //at least one report while draining
+        assertTrue("drained with a player in their handshake", linkThread.isAlive());
+        assertEquals(1, router.getBackends().length);
+
+        player.close();
+        start(handshakeLoop, "handshake");
+        linkThread.join(TIMEOUT);
+        assertFalse(linkThread.isAlive());
+        assertEquals(0, lobby.getHandshakingPlayers());
+        awaitBackends(0);
+        lobbyPort.close();
+    }
+}
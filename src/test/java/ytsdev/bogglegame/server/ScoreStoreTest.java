@@ -0,0 +1,219 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for ScoreStore: the totals come back the same after the store is closed, after a crash cuts the last record
+ * short, and after the log is compacted, and the leaderboard settles ties by name however it was built.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class ScoreStoreTest extends TestCase {
+    private static final int LOG_HEADER = 16;
+
+    private File dir;
+    private String name;
+    private ScoreStore store;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("scores").toFile();
+        name = new File(dir, "scores").getPath();
+        store = ScoreStore.open(name);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Waits for the writer to have written a number of results in all
+     */
+    private void awaitWritten(long results) throws InterruptedException {
+        for (int i = 0; i < 10000 && store.getResultsWritten() < results; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(results, store.getResultsWritten());
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = null; //not closed twice if opening fails
+        store = ScoreStore.open(name);
+    }
+
+    private static int recordSize(String player) {
+        return 1 + 1 + player.length() + 4 + 1; //type, name, points, won
+    }
+
+    private void assertStats(String player, int rounds, int wins, long points, int best) {
+        ScoreStore.Stats stats = store.getStats(player);
+        assertNotNull(player, stats);
+        assertEquals(player, rounds, stats.getRounds());
+        assertEquals(player, wins, stats.getWins());
+        assertEquals(player, points, stats.getPoints());
+        assertEquals(player, best, stats.getBest());
+    }
+
+    public void testTotalsAfterClosing() throws IOException, InterruptedException {
+        store.record("alice", 10, true);
+        store.record("bob", 5, false);
+        store.record("alice", 7, false);
+        awaitWritten(3);
+        assertStats("alice", 2, 1, 17, 10);
+        reopen();
+        assertStats("alice", 2, 1, 17, 10);
+        assertStats("bob", 1, 0, 5, 5);
+        assertNull(store.getStats("carol"));
+        assertEquals(LOG_HEADER + 2 * recordSize("alice") + recordSize("bob"), store.getLogSize());
+    }
+
+    public void testRecordCutShortIsDropped() throws IOException, InterruptedException {
+        store.record("alice", 10, true);
+        store.record("bob", 5, false);
+        store.record("alice", 7, false);
+        store.close();
+        store = null;
+
+        //a crash part way through writing the last record
+        long whole = LOG_HEADER + recordSize("alice") + recordSize("bob");
+        RandomAccessFile log = new RandomAccessFile(name + ".log", "rw");
+        try {
+            assertEquals(whole + recordSize("alice"), log.length());
+            log.setLength(whole + 3);
+        } finally {
+            log.close();
+        }
+
+        store = ScoreStore.open(name);
+        assertEquals(whole, store.getLogSize());
+        assertEquals(whole, new File(name + ".log").length());
+        assertStats("alice", 1, 1, 10, 10);
+        assertStats("bob", 1, 0, 5, 5);
+
+        //what is written next goes where the torn record was
+        store.record("carol", 4, false);
+        awaitWritten(1);
+        reopen();
+        assertEquals(whole + recordSize("carol"), store.getLogSize());
+        assertStats("alice", 1, 1, 10, 10);
+        assertStats("carol", 1, 0, 4, 4);
+    }
+
+    public void testCompactingKeepsTheTotals() throws IOException, InterruptedException {
+        int results = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int player = 0; player < 50; player++) {
+                store.record("player" + player, player + round, player == 49);
+                results++;
+            }
+        }
+        awaitWritten(results);
+        Map<String, String> before = totals(50);
+        long logSize = store.getLogSize();
+        List<ScoreStore.Stats> leaders = store.getLeaders(10);
+
+        store.compact();
+        for (int i = 0; i < 10000 && store.getCompactions() == 0; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, store.getCompactions());
+        assertTrue(store.getLogSize() < logSize);
+        assertEquals(before, totals(50));
+        assertEquals(leaders.toString(), store.getLeaders(10).toString());
+
+        //results after compacting add to the totals, and all of it is there after closing
+        store.record("player0", 100, true);
+        awaitWritten(results + 1);
+        reopen();
+        assertStats("player0", 21, 1, 190 + 100, 100);
+        before.remove("player0");
+        Map<String, String> after = totals(50);
+        after.remove("player0");
+        assertEquals(before, after);
+    }
+
+    private Map<String, String> totals(int players) {
+        Map<String, String> totals = new HashMap<>();
+        for (int player = 0; player < players; player++) {
+            ScoreStore.Stats stats = store.getStats("player" + player);
+            totals.put(stats.getName(), stats.getRounds() + " " + stats.getWins() + " " + stats.getPoints() + " "
+                    + stats.getBest());
+        }
+        return totals;
+    }
+
+    public void testManyNewPlayersInOneBatch() throws IOException, InterruptedException {
+        //far more than the smallest table holds, so it has to grow while results are arriving
+        for (int player = 0; player < 5000; player++) {
+            store.record("player" + player, player, false);
+        }
+        awaitWritten(5000);
+        assertEquals(5000, store.getPlayers());
+        reopen();
+        assertEquals(5000, store.getPlayers());
+        for (int player = 0; player < 5000; player += 7) {
+            assertStats("player" + player, 1, 0, player, player);
+        }
+    }
+
+    public void testTiedLeadersGoByName() throws IOException, InterruptedException {
+        for (int player = 0; player < 150; player++) {
+            store.record(String.format("p%03d", player), 10, false);
+        }
+        awaitWritten(150);
+        assertEquals(names("p", 0, 100), names(store.getLeaders(100)));
+
+        store.record("p120", 0, false); //still tied, and after the last leader by name
+        store.record("o", 10, false); //tied, and first by name, so the last leader drops off
+        awaitWritten(152);
+        List<String> expected = new ArrayList<>();
+        expected.add("o");
+        expected.addAll(names("p", 0, 99));
+        assertEquals(expected, names(store.getLeaders(100)));
+
+        store.record("p149", 1, false); //ahead of everyone
+        awaitWritten(153);
+        expected.add(0, "p149");
+        expected.remove(expected.size() - 1);
+        assertEquals(expected, names(store.getLeaders(100)));
+        assertEquals(expected.subList(0, 5), names(store.getLeaders(5)));
+
+        //found again from the table, which doesn't keep them in order
+        reopen();
+        assertEquals(expected, names(store.getLeaders(100)));
+    }
+
+    private static List<String> names(String prefix, int from, int to) {
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            names.add(String.format(prefix + "%03d", i));
+        }
+        return names;
+    }
+
+    private static List<String> names(List<ScoreStore.Stats> leaders) {
+        List<String> names = new ArrayList<>();
+        for (ScoreStore.Stats stats : leaders) {
+            names.add(stats.getName());
+        }
+        return names;
+    }
+}
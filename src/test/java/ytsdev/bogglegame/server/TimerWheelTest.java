@@ -0,0 +1,224 @@
+package ytsdev.bogglegame.server;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for TimerWheel and Timeout, with the clock given to the wheel instead of read, so every tick is checked.
+ * The wheel is the event loop's size: 1024 slots of 10 milliseconds.
+ *
+ * @author Y. Stitzer
+ *         version 6/2/2013
+ */
+public class TimerWheelTest extends TestCase {
+    private static final long TICK = 10;
+    private static final int SLOTS = 1024;
+    private static final long START = 1000000;
+    private static final long TURN = SLOTS * TICK;
+
+    private TimerWheel wheel;
+    private List<String> ran;
+
+    @Override
+    protected void setUp() {
+        wheel = new TimerWheel(TICK, SLOTS, START);
+        ran = new ArrayList<>();
+    }
+
+    private Timeout add(final String name, long deadline) {
+        return add(deadline, new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        });
+    }
+
+    private Timeout add(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(deadline, task);
+        wheel.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Moves the clock forward a tick at a time, and checks the timeout doesn't run before its deadline and runs by
+     * the end of the tick it is due in
+     */
+    private void stepUntilRun(String name, long deadline) {
+        for (long now = START; now < deadline + TICK; now += TICK) {
+            wheel.expire(now);
+            assertEquals("at " + (now - START), now >= deadline, ran.contains(name));
+        }
+        wheel.expire(deadline + TICK);
+        assertEquals(1, count(name));
+    }
+
+    private int count(String name) {
+        int count = 0;
+        for (String r : ran) {
+            if (r.equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testRunsWhenDue() {
+        add("a", START + 25);
+        wheel.expire(START + 20);
+        wheel.expire(START + 29);
+        assertTrue(ran.isEmpty());
+        wheel.expire(START + 30);
+        assertEquals(Arrays.asList("a"), ran);
+        wheel.expire(START + 1000);
+        assertEquals("runs once", Arrays.asList("a"), ran);
+    }
+
+    public void testDueTogetherRunInOrder() {
+        add("a", START + 50);
+        add("b", START + 50);
+        add("c", START + 41);
+        wheel.expire(START + 50);
+        assertEquals(Arrays.asList("a", "b", "c"), ran);
+    }
+
+    public void testDeadlineInThePastRunsOnTheNextTick() {
+        add("a", START - 500);
+        wheel.expire(START);
+        assertTrue(ran.isEmpty());
+        wheel.expire(START + TICK);
+        assertEquals(Arrays.asList("a"), ran);
+    }
+
+    public void testDeadlinesWrapPastEverySlot() {
+        //the same slot as a timeout due in the first turn, so it is passed over twice before it is due
+        add("soon", START + 5 * TICK);
+        add("later", START + 3 * TURN + 5 * TICK);
+        stepUntilRun("later", START + 3 * TURN + 5 * TICK);
+        assertEquals(Arrays.asList("soon", "later"), ran);
+    }
+
+    public void testDeadlineJustUnderOneTurn() {
+        stepUntilRunAfterAdding("a", START + TURN - TICK);
+        stepUntilRunAfterAdding("b", START + TURN);
+        stepUntilRunAfterAdding("c", START + TURN + TICK);
+    }
+
+    private void stepUntilRunAfterAdding(String name, long deadline) {
+        setUp();
+        add(name, deadline);
+        stepUntilRun(name, deadline);
+    }
+
+    public void testStalledLoopRunsEverythingDueOnce() {
+        for (int i = 0; i < 50; i++) {
+            add("t" + i, START + i * TURN / 20 + 7);
+        }
+        add("future", START + 10 * TURN);
+        wheel.expire(START + 4 * TURN); //the loop was busy for four turns
+        assertEquals(50, ran.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(1, count("t" + i));
+        }
+        wheel.expire(START + 10 * TURN - TICK);
+        assertEquals(50, ran.size());
+        wheel.expire(START + 10 * TURN);
+        assertEquals(1, count("future"));
+    }
+
+    public void testCancelledNeverRuns() {
+        Timeout a = add("a", START + 30);
+        add("b", START + 30);
+        a.cancel();
+        a.cancel(); //more than once does nothing
+        wheel.expire(START + 100);
+        assertEquals(Arrays.asList("b"), ran);
+        assertEquals(0, wheel.untilNext(START + 100));
+    }
+
+    public void testCancelAfterRunningDoesNothing() {
+        Timeout a = add("a", START + 30);
+        wheel.expire(START + 30);
+        a.cancel();
+        add("b", START + 40);
+        wheel.expire(START + 40);
+        assertEquals(Arrays.asList("a", "b"), ran);
+    }
+
+    public void testCancelledWhileFiring() {
+        final Timeout[] self = new Timeout[1];
+        self[0] = add(START + 30, new Runnable() {
+            @Override
+            public void run() {
+                ran.add("a");
+                self[0].cancel();
+            }
+        });
+        add("b", START + 30);
+        wheel.expire(START + 30);
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertEquals(0, wheel.untilNext(START + 30));
+    }
+
+    public void testTaskCancelsTheNextInItsSlot() {
+        final Timeout[] next = new Timeout[1];
+        add(START + 30, new Runnable() {
+            @Override
+            public void run() {
+                ran.add("a");
+                next[0].cancel();
+            }
+        });
+        next[0] = add("b", START + 30);
+        add("c", START + 30);
+        add("d", START + 30 + TURN); //same slot, a turn later
+        wheel.expire(START + 30);
+        assertEquals(Arrays.asList("a", "c"), ran);
+        wheel.expire(START + 30 + TURN);
+        assertEquals(Arrays.asList("a", "c", "d"), ran);
+    }
+
+    public void testScheduledFromInsideACallback() {
+        add(START + 30, new Runnable() {
+            @Override
+            public void run() {
+                ran.add("a");
+                add("now", START + 30); //already due, the slot being run is passed
+                add("same slot next turn", START + 30 + TURN);
+                add(START + 80, new Runnable() {
+                    @Override
+                    public void run() {
+                        ran.add("b");
+                        add("c", START + 80 + 3 * TURN);
+                    }
+                });
+            }
+        });
+        wheel.expire(START + 30);
+        assertEquals(Arrays.asList("a"), ran);
+        wheel.expire(START + 40);
+        assertEquals(Arrays.asList("a", "now"), ran);
+        wheel.expire(START + 80);
+        assertEquals(Arrays.asList("a", "now", "b"), ran);
+        wheel.expire(START + 30 + TURN);
+        assertEquals(Arrays.asList("a", "now", "b", "same slot next turn"), ran);
+        wheel.expire(START + 80 + 3 * TURN - 1);
+        assertEquals(4, ran.size());
+        wheel.expire(START + 80 + 3 * TURN);
+        assertEquals("c", ran.get(4));
+    }
+
+    public void testUntilNext() {
+        assertEquals(0, wheel.untilNext(START));
+        add("a", START + 45);
+        assertEquals(50, wheel.untilNext(START));
+        assertEquals(1, wheel.untilNext(START + 55)); //late, but never 0 while something waits
+        add("b", START + 2 * TURN);
+        wheel.expire(START + 50);
+        //the slot for b comes round before it is due, which only wakes the loop early
+        assertEquals(TURN - 50, wheel.untilNext(START + 50));
+    }
+}